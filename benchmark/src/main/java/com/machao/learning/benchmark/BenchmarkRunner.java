@@ -0,0 +1,50 @@
+package com.machao.learning.benchmark;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar的入口
+ *
+ * 不带参数时：运行一次MapBenchmark，再按1、2、4...直到CPU核数的线程数依次运行ConcurrentMapBenchmark，
+ * 每次运行的结果以JSON格式写入results目录，便于对比不同版本的结果；
+ * 带参数时：直接交给JMH处理，例如 java -jar benchmarks.jar MapBenchmark.getHit -p size=1000 -rf json
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		File dir = new File("results");
+		dir.mkdirs();
+
+		run(MapBenchmark.class, 1, new File(dir, "map.json"));
+		int cpus = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; ; threads <<= 1) {
+			threads = Math.min(threads, cpus);
+			run(ConcurrentMapBenchmark.class, threads,
+					new File(dir, "concurrent-map-t" + threads + ".json"));
+			if (threads == cpus)
+				break;
+		}
+	}
+
+	static void run(Class<?> benchmark, int threads, File result) throws RunnerException {
+		// 完整类名加点号，避免MapBenchmark同时匹配到ConcurrentMapBenchmark
+		Options options = new OptionsBuilder()
+				.include("^" + Pattern.quote(benchmark.getName()) + "\\.")
+				.threads(threads)
+				.resultFormat(ResultFormatType.JSON)
+				.result(result.getPath())
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,105 @@
+package com.machao.learning.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多线程竞争下ConcurrentHashMap拷贝与java.util.concurrent.ConcurrentHashMap的吞吐量对比
+ *
+ * 所有线程共享同一个Map，每个线程有自己的访问序列；
+ * 线程数由BenchmarkRunner按1..N依次设置，也可以通过JMH的-t参数指定
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentMapBenchmark {
+
+	@Param({ "CONCURRENT_HASH_MAP", "JDK_CONCURRENT_HASH_MAP" })
+	MapType type;
+
+	@Param({ "100000", "1000000" })
+	int size;
+
+	@Param({ "UNIFORM", "ZIPFIAN", "COLLIDING" })
+	KeyDistribution distribution;
+
+	// 读写混合测试中写操作所占的百分比
+	@Param({ "10" })
+	int writePercent;
+
+	Object[] keys;
+	Map<Object, Object> map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = distribution.keys(size);
+		map = type.create(0);
+		for (int i = 0; i < size; i++)
+			map.put(keys[i], i);
+	}
+
+	/**
+	 * 每个线程独立的访问序列
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int[] access;
+		int index;
+
+		@Setup(Level.Trial)
+		public void setUp(ConcurrentMapBenchmark b) {
+			access = b.distribution.accessPattern(b.size, MapBenchmark.ACCESS_COUNT,
+					ThreadLocalRandom.current().nextLong());
+		}
+
+		int next() {
+			return access[index++ & (MapBenchmark.ACCESS_COUNT - 1)];
+		}
+	}
+
+	@Benchmark
+	public Object get(Cursor c) {
+		return map.get(keys[c.next()]);
+	}
+
+	@Benchmark
+	public Object put(Cursor c) {
+		int i = c.next();
+		return map.put(keys[i], i);
+	}
+
+	@Benchmark
+	public Object readWrite(Cursor c) {
+		int i = c.next();
+		if ((c.index & 0x7fffffff) % 100 < writePercent)
+			return map.put(keys[i], i);
+		return map.get(keys[i]);
+	}
+
+	@Benchmark
+	public Object computeIfAbsent(Cursor c) {
+		return map.computeIfAbsent(keys[c.next()], k -> 0);
+	}
+
+	@Benchmark
+	public Object merge(Cursor c) {
+		return map.merge(keys[c.next()], 1, (a, b) -> (Integer) a + (Integer) b);
+	}
+}
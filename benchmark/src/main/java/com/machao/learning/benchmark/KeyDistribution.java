@@ -0,0 +1,116 @@
+package com.machao.learning.benchmark;
+
+import java.util.Random;
+
+/**
+ * 测试key的分布
+ *
+ * UNIFORM：key均匀分布，每个key被访问的概率相同
+ * ZIPFIAN：key均匀分布，访问频率服从Zipf分布(s=0.99)，少量热点key占大部分访问
+ * COLLIDING：每COLLISION_FACTOR个key共享同一个hashCode，HashMap中的桶会转换为红黑树
+ */
+public enum KeyDistribution {
+
+	UNIFORM, ZIPFIAN, COLLIDING;
+
+	// COLLIDING分布下共享同一个hashCode的key数量，大于TREEIFY_THRESHOLD(8)
+	static final int COLLISION_FACTOR = 32;
+
+	// Zipf分布的指数
+	static final double ZIPF_EXPONENT = 0.99;
+
+	/**
+	 * 大量hash碰撞的key，实现Comparable以便HashMap的红黑树按key排序
+	 */
+	static final class CollidingKey implements Comparable<CollidingKey> {
+		final int value;
+		final int hash;
+
+		CollidingKey(int value, int buckets) {
+			this.value = value;
+			this.hash = value % buckets;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+		}
+
+		public int compareTo(CollidingKey o) {
+			return Integer.compare(value, o.value);
+		}
+	}
+
+	/**
+	 * 生成size个互不相同的key；
+	 * 乘以奇数常数在int范围内是一一映射，所以mix(i)互不相同，且与mix(size + i)生成的不存在的key也不相同
+	 */
+	public Object[] keys(int size) {
+		return keys(0, size);
+	}
+
+	/**
+	 * 生成size个一定不在keys(size)中的key，用于失败查找
+	 */
+	public Object[] missingKeys(int size) {
+		return keys(size, size);
+	}
+
+	Object[] keys(int from, int size) {
+		Object[] keys = new Object[size];
+		int buckets = Math.max(1, size / COLLISION_FACTOR);
+		for (int i = 0; i < size; i++) {
+			int v = from + i;
+			// 不存在的key与存在的key落在同一组碰撞中
+			keys[i] = (this == COLLIDING) ? new CollidingKey(v, buckets) : Integer.valueOf(mix(v));
+		}
+		return keys;
+	}
+
+	static int mix(int i) {
+		return i * 0x9E3779B9;
+	}
+
+	/**
+	 * 生成count个[0, size)范围内的key下标，作为访问顺序
+	 */
+	public int[] accessPattern(int size, int count, long seed) {
+		Random random = new Random(seed);
+		int[] access = new int[count];
+		if (this != ZIPFIAN) {
+			for (int i = 0; i < count; i++)
+				access[i] = random.nextInt(size);
+			return access;
+		}
+		// 计算Zipf分布的累积概率，按概率二分查找排名
+		double[] cdf = new double[size];
+		double sum = 0;
+		for (int i = 0; i < size; i++)
+			cdf[i] = sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+		// 排名随机映射到key下标，避免热点key在table中聚集
+		int[] permutation = new int[size];
+		for (int i = 0; i < size; i++)
+			permutation[i] = i;
+		for (int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1), t = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = t;
+		}
+		for (int i = 0; i < count; i++) {
+			double u = random.nextDouble() * sum;
+			int lo = 0, hi = size - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cdf[mid] < u)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			access[i] = permutation[lo];
+		}
+		return access;
+	}
+}
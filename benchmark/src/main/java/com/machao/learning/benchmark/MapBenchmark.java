@@ -0,0 +1,117 @@
+package com.machao.learning.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 单线程下各Map实现的基本操作测试
+ *
+ * getHit/getMiss：成功和失败查找，COLLIDING分布下HashMap走红黑树查找
+ * putReplace：替换已存在key的value
+ * removePut：删除一个key再插回，元素数量不变
+ * computeIfAbsentHit/merge：JDK8扩展方法
+ * iterate：遍历entrySet
+ * resize：从空Map开始插入size个key，包含所有扩容(和treeifyBin)的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapBenchmark {
+
+	// 访问序列长度，2的幂次方，循环使用
+	static final int ACCESS_COUNT = 1 << 16;
+
+	@Param({ "HASH_MAP", "JDK_HASH_MAP", "SWISS_HASH_MAP", "CONCURRENT_HASH_MAP", "JDK_CONCURRENT_HASH_MAP" })
+	MapType type;
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	@Param({ "UNIFORM", "ZIPFIAN", "COLLIDING" })
+	KeyDistribution distribution;
+
+	Object[] keys;
+	Object[] missingKeys;
+	int[] access;
+	int cursor;
+	Map<Object, Object> map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = distribution.keys(size);
+		missingKeys = distribution.missingKeys(size);
+		access = distribution.accessPattern(size, ACCESS_COUNT, 42);
+		map = type.create(0);
+		for (int i = 0; i < size; i++)
+			map.put(keys[i], i);
+	}
+
+	int next() {
+		return access[cursor++ & (ACCESS_COUNT - 1)];
+	}
+
+	@Benchmark
+	public Object getHit() {
+		return map.get(keys[next()]);
+	}
+
+	@Benchmark
+	public Object getMiss() {
+		return map.get(missingKeys[next()]);
+	}
+
+	@Benchmark
+	public Object putReplace() {
+		int i = next();
+		return map.put(keys[i], i);
+	}
+
+	@Benchmark
+	public Object removePut() {
+		int i = next();
+		Object key = keys[i];
+		return map.put(key, map.remove(key));
+	}
+
+	@Benchmark
+	public Object computeIfAbsentHit() {
+		return map.computeIfAbsent(keys[next()], k -> 0);
+	}
+
+	@Benchmark
+	public Object merge() {
+		return map.merge(keys[next()], 1, (a, b) -> (Integer) a + (Integer) b);
+	}
+
+	@Benchmark
+	public void iterate(Blackhole bh) {
+		for (Map.Entry<Object, Object> e : map.entrySet())
+			bh.consume(e.getValue());
+	}
+
+	@Benchmark
+	public Map<Object, Object> resize() {
+		Map<Object, Object> m = type.create(0);
+		Object[] ks = keys;
+		for (int i = 0; i < ks.length; i++)
+			m.put(ks[i], i);
+		return m;
+	}
+}
@@ -0,0 +1,42 @@
+package com.machao.learning.benchmark;
+
+import java.util.Map;
+
+import com.machao.learning.collection.HashMap.SwissHashMap;
+
+/**
+ * 参与测试的Map实现，项目中的拷贝实现与java.util中的实现对比
+ */
+public enum MapType {
+
+	HASH_MAP {
+		Map<Object, Object> create(int initialCapacity) {
+			return new com.machao.learning.collection.HashMap.HashMap<>(initialCapacity);
+		}
+	},
+	JDK_HASH_MAP {
+		Map<Object, Object> create(int initialCapacity) {
+			return new java.util.HashMap<>(initialCapacity);
+		}
+	},
+	SWISS_HASH_MAP {
+		Map<Object, Object> create(int initialCapacity) {
+			return new SwissHashMap<>(initialCapacity);
+		}
+	},
+	CONCURRENT_HASH_MAP {
+		Map<Object, Object> create(int initialCapacity) {
+			return new com.machao.learning.concurrent.concurrentHashMap.ConcurrentHashMap<>(initialCapacity);
+		}
+	},
+	JDK_CONCURRENT_HASH_MAP {
+		Map<Object, Object> create(int initialCapacity) {
+			return new java.util.concurrent.ConcurrentHashMap<>(initialCapacity);
+		}
+	};
+
+	/**
+	 * 创建指定初始容量的空Map，initialCapacity为0时不预分配，插入过程中逐步扩容
+	 */
+	abstract Map<Object, Object> create(int initialCapacity);
+}
@@ -39,7 +39,10 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.RandomAccess;
 import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 
@@ -62,7 +65,7 @@ public class ArrayList<E> extends AbstractList<E>
     /**
      * 默认的初始化容量
      */
-    private static final int DEFAULT_CAPACITY = 10;
+    static final int DEFAULT_CAPACITY = 10;
 
     /**
      * 空的共享数组实例.
@@ -198,15 +201,21 @@ public class ArrayList<E> extends AbstractList<E>
      * 每次扩容将原数组中的元素复制到一个新的数组中
      */
     private void grow(int minCapacity) {
-        int oldCapacity = elementData.length;// 原容量
+        // minCapacity is usually close to size, so this is a win:
+        // 使用Arrays.copyOf方法创建一个新的容量的数组，并将原数组中的元素复制给新数组
+        elementData = Arrays.copyOf(elementData, newCapacity(elementData.length, minCapacity));
+    }
+
+    /**
+     * 计算扩容后的容量，IntArrayList等基本类型列表共用此扩容策略
+     */
+    static int newCapacity(int oldCapacity, int minCapacity) {
         int newCapacity = oldCapacity + (oldCapacity >> 1); //新容量为原容量的1.5倍
         if (newCapacity - minCapacity < 0)// 如果新容量小于最小容量则新容量等于最小容量
             newCapacity = minCapacity;
         if (newCapacity - MAX_ARRAY_SIZE > 0)// 如果新容量大于ArrayList的元素数最大限制则新容量为Integer.MAX_VALUE
             newCapacity = hugeCapacity(minCapacity);
-        // minCapacity is usually close to size, so this is a win:
-        // 使用Arrays.copyOf方法创建一个新的容量的数组，并将原数组中的元素复制给新数组
-        elementData = Arrays.copyOf(elementData, newCapacity);
+        return newCapacity;
     }
 
     private static int hugeCapacity(int minCapacity) {
@@ -1371,4 +1380,161 @@ public class ArrayList<E> extends AbstractList<E>
         }
         modCount++;
     }
+
+    /* ---------------- 并行批量操作 -------------- */
+
+    /**
+     * 元素数量小于此值时并行方法直接调用对应的串行方法
+     */
+    static final int MIN_PARALLEL_SIZE = 1 << 13;
+
+    /**
+     * 每个并行分片的最少元素数量
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    /**
+     * 并行排序，使用Arrays.parallelSort()在公共ForkJoinPool中归并排序，c为null时按自然顺序排序
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelSort(Comparator<? super E> c) {
+        if (size < MIN_PARALLEL_SIZE) {
+            sort(c);
+            return;
+        }
+        final int expectedModCount = modCount;
+        Arrays.parallelSort((E[]) elementData, 0, size, c);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+    }
+
+    /**
+     * 并行的replaceAll()，按ArrayListSpliterator拆分出的分片在公共ForkJoinPool中执行operator
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelReplaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        if (size < MIN_PARALLEL_SIZE) {
+            replaceAll(operator);
+            return;
+        }
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        final int[] bounds = parallelChunks(expectedModCount);
+        ParallelChunkTask.forEach(bounds.length - 1, k -> {
+            for (int i = bounds[k], hi = bounds[k + 1]; modCount == expectedModCount && i < hi; i++)
+                elementData[i] = operator.apply((E) elementData[i]);
+        });
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+    }
+
+    /**
+     * 并行的removeIf()
+     * 1. 每个分片并行执行filter，用分片自己的BitSet记录要删除的元素，统计保留的元素数
+     * 2. 对各分片保留的元素数求前缀和，得到每个分片在结果中的起始位置
+     * 3. 每个分片并行把保留的元素复制到新数组的对应位置，分片之间写入的区间互不相交
+     * 与removeIf()相同，filter抛出异常时列表不会被修改
+     */
+    @SuppressWarnings("unchecked")
+    public boolean parallelRemoveIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        if (size < MIN_PARALLEL_SIZE)
+            return removeIf(filter);
+        final int expectedModCount = modCount;
+        final Object[] elementData = this.elementData;
+        final int[] bounds = parallelChunks(expectedModCount);
+        final int chunks = bounds.length - 1;
+        final BitSet[] removeSets = new BitSet[chunks];
+        final int[] offsets = new int[chunks + 1];
+        ParallelChunkTask.forEach(chunks, k -> {
+            int lo = bounds[k], hi = bounds[k + 1], removeCount = 0;
+            BitSet removeSet = new BitSet(hi - lo);
+            for (int i = lo; modCount == expectedModCount && i < hi; i++) {
+                if (filter.test((E) elementData[i])) {
+                    removeSet.set(i - lo);
+                    removeCount++;
+                }
+            }
+            removeSets[k] = removeSet;
+            offsets[k + 1] = hi - lo - removeCount;
+        });
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+
+        for (int k = 0; k < chunks; k++)
+            offsets[k + 1] += offsets[k];
+        final int newSize = offsets[chunks];
+        if (newSize == size)
+            return false;
+
+        final Object[] newElementData = new Object[elementData.length];
+        ParallelChunkTask.forEach(chunks, k -> {
+            int lo = bounds[k], hi = bounds[k + 1], j = offsets[k];
+            BitSet removeSet = removeSets[k];
+            for (int i = removeSet.nextClearBit(0); lo + i < hi; i = removeSet.nextClearBit(i + 1))
+                newElementData[j++] = elementData[lo + i];
+        });
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        this.elementData = newElementData;
+        this.size = newSize;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * 用ArrayListSpliterator二分拆分[0, size)，直到每个分片不超过chunkSize个元素，
+     * 返回按下标顺序排列的分片边界，第k个分片为[bounds[k], bounds[k + 1])
+     */
+    private int[] parallelChunks(int expectedModCount) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                                 size / (ForkJoinPool.getCommonPoolParallelism() << 2));
+        IntArrayList bounds = new IntArrayList();
+        splitChunks(new ArrayListSpliterator<>(this, 0, size, expectedModCount), chunkSize, bounds);
+        bounds.add(size);
+        return bounds.toArray();
+    }
+
+    private static void splitChunks(ArrayListSpliterator<?> s, int chunkSize, IntArrayList bounds) {
+        for (ArrayListSpliterator<?> prefix;
+             s.estimateSize() > chunkSize && (prefix = s.trySplit()) != null; )
+            splitChunks(prefix, chunkSize, bounds);
+        bounds.add(s.index);
+    }
+
+    /**
+     * 在公共ForkJoinPool中对[lo, hi)的每个分片执行action，二分拆分任务
+     */
+    static final class ParallelChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int lo, hi;
+        final IntConsumer action;
+
+        ParallelChunkTask(int lo, int hi, IntConsumer action) {
+            this.lo = lo;
+            this.hi = hi;
+            this.action = action;
+        }
+
+        static void forEach(int chunks, IntConsumer action) {
+            ForkJoinPool.commonPool().invoke(new ParallelChunkTask(0, chunks, action));
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ParallelChunkTask(lo, mid, action), new ParallelChunkTask(mid, hi, action));
+            }
+            else if (hi > lo)
+                action.accept(lo);
+        }
+    }
 }
@@ -0,0 +1,363 @@
+package com.machao.learning.collection.ArrayList;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 分段存储的大容量列表；
+ * 元素存放在固定大小(SEGMENT_SIZE)的分段数组中，扩容时只分配新的分段，已有元素不会被复制，
+ * 只有保存分段引用的segments数组按1.5倍扩容(每个分段只占一个引用)，不会出现ArrayList.grow()复制整个数组的停顿和内存峰值；
+ * 下标为long，元素数量可以超过Integer.MAX_VALUE；随机访问通过移位和掩码定位分段，仍然是O(1)；
+ * 只支持在尾部添加和删除元素；
+ * 非线程安全。
+ */
+public class BigArrayList<E> implements Iterable<E> {
+
+    /**
+     * 每个分段的元素数量为2的SEGMENT_SHIFT次方
+     */
+    static final int SEGMENT_SHIFT = 14;
+
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * 分段数量的最大限制，与ArrayList的MAX_ARRAY_SIZE相同
+     */
+    static final int MAX_SEGMENTS = Integer.MAX_VALUE - 8;
+
+    /**
+     * segments数组的初始容量
+     */
+    static final int INITIAL_SEGMENTS = 4;
+
+    /**
+     * 存放元素的分段，已分配的分段都是满长度的数组，未分配的为null
+     */
+    Object[][] segments;
+
+    /**
+     * 已分配的分段数量
+     */
+    int segmentCount;
+
+    /**
+     * 包含的元素数
+     */
+    long size;
+
+    /**
+     * 结构修改计数
+     */
+    transient int modCount;
+
+    public BigArrayList() {
+        segments = new Object[INITIAL_SEGMENTS][];
+    }
+
+    /**
+     * 初始化一个至少能容纳expectedSize个元素的BigArrayList，预先分配分段
+     */
+    public BigArrayList(long expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                                               expectedSize);
+        segments = new Object[Math.max(INITIAL_SEGMENTS, segmentsFor(expectedSize))][];
+        ensureCapacity(expectedSize);
+    }
+
+    /**
+     * 容纳n个元素需要的分段数量
+     */
+    static int segmentsFor(long n) {
+        long s = (n + SEGMENT_MASK) >>> SEGMENT_SHIFT;
+        if (s > MAX_SEGMENTS)
+            throw new OutOfMemoryError("Required segments: " + s);
+        return (int)s;
+    }
+
+    /* ---------------- 容量 -------------- */
+
+    /**
+     * 确保至少能容纳minCapacity个元素，只分配新的分段，不复制已有元素
+     */
+    public void ensureCapacity(long minCapacity) {
+        int need = segmentsFor(minCapacity);
+        if (need > segments.length)
+            segments = Arrays.copyOf(segments, ArrayList.newCapacity(segments.length, need));
+        while (segmentCount < need)
+            segments[segmentCount++] = new Object[SEGMENT_SIZE];
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ---------------- 读写 -------------- */
+
+    @SuppressWarnings("unchecked")
+    public E get(long index) {
+        rangeCheck(index);
+        return (E) segments[(int)(index >>> SEGMENT_SHIFT)][(int)index & SEGMENT_MASK];
+    }
+
+    /**
+     * 替换index位置的元素，返回原来的元素
+     */
+    public E set(long index, E element) {
+        rangeCheck(index);
+        Object[] seg = segments[(int)(index >>> SEGMENT_SHIFT)];
+        int i = (int)index & SEGMENT_MASK;
+        @SuppressWarnings("unchecked") E oldValue = (E) seg[i];
+        seg[i] = element;
+        return oldValue;
+    }
+
+    public boolean add(E e) {
+        long s = size;
+        if ((s & SEGMENT_MASK) == 0 && (s >>> SEGMENT_SHIFT) == segmentCount)
+            ensureCapacity(s + 1);
+        modCount++;
+        segments[(int)(s >>> SEGMENT_SHIFT)][(int)s & SEGMENT_MASK] = e;
+        size = s + 1;
+        return true;
+    }
+
+    /**
+     * 在尾部添加集合c中的全部元素，按分段批量复制
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] a = c.toArray();
+        addAll(a, 0, a.length);
+        return a.length != 0;
+    }
+
+    /**
+     * 在尾部添加other中的全部元素，按分段批量复制
+     */
+    public boolean addAll(BigArrayList<? extends E> other) {
+        long n = other.size;
+        ensureCapacity(size + n);
+        for (int s = 0; n > 0; ++s) {
+            int len = (int)Math.min(n, SEGMENT_SIZE);
+            addAll(other.segments[s], 0, len);
+            n -= len;
+        }
+        return other.size != 0;
+    }
+
+    /**
+     * 把a[from, from + len)复制到尾部
+     */
+    private void addAll(Object[] a, int from, int len) {
+        long s = size;
+        ensureCapacity(s + len);
+        modCount++;
+        while (len > 0) {
+            int off = (int)s & SEGMENT_MASK;
+            int n = Math.min(len, SEGMENT_SIZE - off);
+            System.arraycopy(a, from, segments[(int)(s >>> SEGMENT_SHIFT)], off, n);
+            from += n;
+            len -= n;
+            s += n;
+        }
+        size = s;
+    }
+
+    /**
+     * 删除并返回最后一个元素
+     */
+    public E removeLast() {
+        long s = size - 1;
+        if (s < 0)
+            throw new NoSuchElementException();
+        modCount++;
+        Object[] seg = segments[(int)(s >>> SEGMENT_SHIFT)];
+        int i = (int)s & SEGMENT_MASK;
+        @SuppressWarnings("unchecked") E oldValue = (E) seg[i];
+        seg[i] = null; // clear to let GC do its work
+        size = s;
+        return oldValue;
+    }
+
+    /**
+     * 清空元素并释放所有分段
+     */
+    public void clear() {
+        modCount++;
+        segments = new Object[INITIAL_SEGMENTS][];
+        segmentCount = 0;
+        size = 0;
+    }
+
+    private void rangeCheck(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+
+    /* ---------------- 遍历 -------------- */
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final Object[][] segments = this.segments;
+        long remaining = size;
+        for (int s = 0; remaining > 0 && modCount == expectedModCount; ++s) {
+            Object[] seg = segments[s];
+            int len = (int)Math.min(remaining, SEGMENT_SIZE);
+            for (int i = 0; i < len; i++)
+                action.accept((E) seg[i]);
+            remaining -= len;
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<E> {
+        long cursor;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return cursor != size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            long i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            cursor = i + 1;
+            return (E) segments[(int)(i >>> SEGMENT_SHIFT)][(int)i & SEGMENT_MASK];
+        }
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public Spliterator<E> spliterator() {
+        return new BigArrayListSpliterator<>(this, 0, -1, 0);
+    }
+
+    /**
+     * 按下标拆分的Spliterator，拆分点对齐到分段边界，每个子任务遍历完整的分段数组
+     */
+    static final class BigArrayListSpliterator<E> implements Spliterator<E> {
+        private final BigArrayList<E> list;
+        private long index; // current index, modified on advance/split
+        private long fence; // -1 until used; then one past last index
+        private int expectedModCount; // initialized when fence set
+
+        BigArrayListSpliterator(BigArrayList<E> list, long origin, long fence,
+                                int expectedModCount) {
+            this.list = list;
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private long getFence() { // initialize fence to size on first use
+            long hi;
+            if ((hi = fence) < 0) {
+                expectedModCount = list.modCount;
+                hi = fence = list.size;
+            }
+            return hi;
+        }
+
+        public BigArrayListSpliterator<E> trySplit() {
+            long hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            // 跨越多个分段时在中点附近的分段边界拆分
+            long aligned = mid & ~(long)SEGMENT_MASK;
+            if (aligned > lo)
+                mid = aligned;
+            return (lo >= mid) ? null : // divide range in half unless too small
+                new BigArrayListSpliterator<E>(list, lo, index = mid,
+                                               expectedModCount);
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            long hi = getFence(), i = index;
+            if (i < hi) {
+                index = i + 1;
+                action.accept((E) list.segments[(int)(i >>> SEGMENT_SHIFT)][(int)i & SEGMENT_MASK]);
+                if (list.modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            long i = index, hi = getFence();
+            int mc = expectedModCount;
+            Object[][] segs = list.segments;
+            index = hi;
+            while (i < hi) {
+                Object[] seg = segs[(int)(i >>> SEGMENT_SHIFT)];
+                int from = (int)i & SEGMENT_MASK;
+                int to = (int)Math.min(SEGMENT_SIZE, from + (hi - i));
+                for (int j = from; j < to; j++)
+                    action.accept((E) seg[j]);
+                i += to - from;
+            }
+            if (list.modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    public String toString() {
+        Iterator<E> it = iterator();
+        if (! it.hasNext())
+            return "[]";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (;;) {
+            E e = it.next();
+            sb.append(e == this ? "(this Collection)" : e);
+            if (! it.hasNext())
+                return sb.append(']').toString();
+            sb.append(',').append(' ');
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.machao.learning.collection.ArrayList;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 存放double的ArrayList，元素直接存储在double[]数组中，add/get/set不装箱；
+ * 扩容策略与ArrayList相同：默认构造函数初始化一个空数组，在第一次add操作时容量扩容为10，之后每次扩容1.5倍；
+ * 非线程安全。
+ */
+public class DoubleArrayList implements Cloneable, java.io.Serializable {
+
+    private static final long serialVersionUID = -5281648215627063815L;
+
+    /**
+     * 空的共享数组实例
+     */
+    private static final double[] EMPTY_ELEMENTDATA = {};
+
+    /**
+     * 默认大小的空数组实例，第一次add时扩容为DEFAULT_CAPACITY
+     */
+    private static final double[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    /**
+     * 存储元素的数组
+     */
+    double[] elementData;
+
+    /**
+     * 包含的元素数
+     */
+    int size;
+
+    /**
+     * 结构修改计数，用于spliterator检查并发修改
+     */
+    transient int modCount;
+
+    /**
+     * 初始化一个指定容量的DoubleArrayList
+     */
+    public DoubleArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            this.elementData = new double[initialCapacity];
+        } else if (initialCapacity == 0) {
+            this.elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                                               initialCapacity);
+        }
+    }
+
+    /**
+     * 初始化一个默认容量的DoubleArrayList，第一次add时扩容
+     */
+    public DoubleArrayList() {
+        this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    /**
+     * 初始化一个包含数组a中元素的DoubleArrayList
+     */
+    public DoubleArrayList(double[] a) {
+        elementData = ((size = a.length) == 0) ? EMPTY_ELEMENTDATA : a.clone();
+    }
+
+    /* ---------------- 容量 -------------- */
+
+    /**
+     * 将数组容量缩小为当前元素数
+     */
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0)
+              ? EMPTY_ELEMENTDATA
+              : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    /**
+     * 确保数组容量至少为minCapacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+            ? 0
+            : ArrayList.DEFAULT_CAPACITY;
+
+        if (minCapacity > minExpand) {
+            ensureExplicitCapacity(minCapacity);
+        }
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+            minCapacity = Math.max(ArrayList.DEFAULT_CAPACITY, minCapacity);
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        modCount++;
+        if (minCapacity - elementData.length > 0)
+            grow(minCapacity);
+    }
+
+    /**
+     * 扩容方法，容量计算与ArrayList.grow()相同
+     */
+    private void grow(int minCapacity) {
+        elementData = Arrays.copyOf(elementData, ArrayList.newCapacity(elementData.length, minCapacity));
+    }
+
+    /* ---------------- 读写 -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double get(int index) {
+        rangeCheck(index);
+        return elementData[index];
+    }
+
+    /**
+     * 替换index位置的元素，返回原来的元素
+     */
+    public double set(int index, double element) {
+        rangeCheck(index);
+        double oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    public boolean add(double e) {
+        ensureCapacityInternal(size + 1);  // Increments modCount!!
+        elementData[size++] = e;
+        return true;
+    }
+
+    public void add(int index, double element) {
+        rangeCheckForAdd(index);
+        ensureCapacityInternal(size + 1);  // Increments modCount!!
+        System.arraycopy(elementData, index, elementData, index + 1,
+                         size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    public boolean addAll(double[] a) {
+        int numNew = a.length;
+        ensureCapacityInternal(size + numNew);  // Increments modCount
+        System.arraycopy(a, 0, elementData, size, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * 删除index位置的元素并返回
+     */
+    public double removeAt(int index) {
+        rangeCheck(index);
+        modCount++;
+        double oldValue = elementData[index];
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index+1, elementData, index,
+                             numMoved);
+        --size;
+        return oldValue;
+    }
+
+    /**
+     * 删除[fromIndex, toIndex)范围内的元素
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex +
+                                                ", toIndex: " + toIndex + ", Size: " + size);
+        modCount++;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex,
+                         size - toIndex);
+        size -= toIndex - fromIndex;
+    }
+
+    /**
+     * 清空元素，数组容量保持不变
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    /* ---------------- 查找与排序 -------------- */
+
+    /**
+     * 与Double.equals()相同，按doubleToLongBits()比较，可以找到NaN
+     */
+    public int indexOf(double o) {
+        double[] a = elementData;
+        for (int i = 0; i < size; i++)
+            if (Double.doubleToLongBits(a[i]) == Double.doubleToLongBits(o))
+                return i;
+        return -1;
+    }
+
+    public int lastIndexOf(double o) {
+        double[] a = elementData;
+        for (int i = size-1; i >= 0; i--)
+            if (Double.doubleToLongBits(a[i]) == Double.doubleToLongBits(o))
+                return i;
+        return -1;
+    }
+
+    public boolean contains(double o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 升序排序，顺序与Double.compareTo()相同
+     */
+    public void sort() {
+        Arrays.sort(elementData, 0, size);
+        modCount++;
+    }
+
+    /**
+     * 在升序排列的列表中二分查找key，返回值与Arrays.binarySearch()相同
+     */
+    public int binarySearch(double key) {
+        return Arrays.binarySearch(elementData, 0, size, key);
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    /* ---------------- 遍历 -------------- */
+
+    public void forEach(DoubleConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        final int expectedModCount = modCount;
+        final double[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i=0; modCount == expectedModCount && i < size; i++) {
+            action.accept(elementData[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    public DoubleStream stream() {
+        return StreamSupport.doubleStream(spliterator(), false);
+    }
+
+    public DoubleStream parallelStream() {
+        return StreamSupport.doubleStream(spliterator(), true);
+    }
+
+    public Spliterator.OfDouble spliterator() {
+        return new DoubleArrayListSpliterator(this, 0, -1, 0);
+    }
+
+    /**
+     * 与ArrayListSpliterator相同的按下标二分、延迟绑定的Spliterator
+     */
+    static final class DoubleArrayListSpliterator implements Spliterator.OfDouble {
+        private final DoubleArrayList list;
+        private int index; // current index, modified on advance/split
+        private int fence; // -1 until used; then one past last index
+        private int expectedModCount; // initialized when fence set
+
+        DoubleArrayListSpliterator(DoubleArrayList list, int origin, int fence,
+                                int expectedModCount) {
+            this.list = list;
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() { // initialize fence to size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                expectedModCount = list.modCount;
+                hi = fence = list.size;
+            }
+            return hi;
+        }
+
+        public DoubleArrayListSpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null : // divide range in half unless too small
+                new DoubleArrayListSpliterator(list, lo, index = mid,
+                                            expectedModCount);
+        }
+
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            if (i < hi) {
+                index = i + 1;
+                action.accept(list.elementData[i]);
+                if (list.modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(DoubleConsumer action) {
+            int i, hi, mc; // hoist accesses and checks from loop
+            double[] a;
+            if (action == null)
+                throw new NullPointerException();
+            if ((hi = fence) < 0) {
+                mc = list.modCount;
+                hi = list.size;
+            }
+            else
+                mc = expectedModCount;
+            if ((i = index) >= 0 && (index = hi) <= (a = list.elementData).length) {
+                for (; i < hi; ++i)
+                    action.accept(a[i]);
+                if (list.modCount == mc)
+                    return;
+            }
+            throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            return (long) (getFence() - index);
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    /* ---------------- 其他 -------------- */
+
+    private void rangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: "+index+", Size: "+size;
+    }
+
+    public DoubleArrayList clone() {
+        try {
+            DoubleArrayList v = (DoubleArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof DoubleArrayList))
+            return false;
+        DoubleArrayList other = (DoubleArrayList) o;
+        if (other.size != size)
+            return false;
+        double[] a = elementData, b = other.elementData;
+        for (int i = 0; i < size; i++)
+            if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i]))
+                return false;
+        return true;
+    }
+
+    public int hashCode() {
+        int hashCode = 1;
+        double[] a = elementData;
+        for (int i = 0; i < size; i++)
+            hashCode = 31*hashCode + Double.hashCode(a[i]);
+        return hashCode;
+    }
+
+    public String toString() {
+        if (size == 0)
+            return "[]";
+        StringBuilder sb = new StringBuilder().append('[');
+        for (int i = 0; ; i++) {
+            sb.append(elementData[i]);
+            if (i == size - 1)
+                return sb.append(']').toString();
+            sb.append(", ");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 由HashMap.freeze()创建的不可变Map
+ *
+ * 存储结构：没有Node节点，keys、values、hashes三个平行数组按桶顺序紧凑存放，
+ * offsets[b]到offsets[b + 1]是第b个桶中的元素，桶内按hash值排序；
+ * 桶数量为不小于元素数量的2的幂次方，平均每个桶不超过1个元素，查找时读一次offsets后在连续的数组中比较；
+ * 桶内元素超过LINEAR_SCAN_LIMIT个时(hashCode()分布不好)二分查找hash值，代替HashMap的红黑树；
+ * 与HashMap每个元素一个Node(约32字节)相比，每个元素只占用两个引用和两个int。
+ *
+ * 所有字段都是final，构造完成后可以不加同步地发布给其他线程；修改操作抛出UnsupportedOperationException。
+ */
+public final class FrozenHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * 桶内元素不超过此值时顺序比较，否则二分查找
+     */
+    static final int LINEAR_SCAN_LIMIT = 8;
+
+    /**
+     * 每个桶在数组中的起始下标，长度为桶数量 + 1
+     */
+    final int[] offsets;
+
+    /**
+     * 与HashMap.hash()相同的扰动后的hash值
+     */
+    final int[] hashes;
+
+    final Object[] keys;
+
+    final Object[] values;
+
+    /**
+     * 桶下标掩码
+     */
+    final int mask;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    FrozenHashMap(HashMap<K,V> m) {
+        int n = m.size();
+        int buckets = HashMap.tableSizeFor(Math.max(n, 1));
+        int mask = buckets - 1;
+        int[] offsets = new int[buckets + 1];
+        int[] hashes = new int[n];
+        Object[] keys = new Object[n], values = new Object[n];
+
+        // 先统计每个桶的元素数量，再计算各桶的起始下标
+        int[] counts = new int[buckets];
+        for (Map.Entry<K,V> e : m.entrySet())
+            ++counts[((HashMap.Node<K,V>)e).hash & mask];
+        for (int b = 0, off = 0; b < buckets; ++b) {
+            offsets[b] = off;
+            off += counts[b];
+            counts[b] = offsets[b];
+        }
+        offsets[buckets] = n;
+        for (Map.Entry<K,V> e : m.entrySet()) {
+            int h = ((HashMap.Node<K,V>)e).hash, i = counts[h & mask]++;
+            hashes[i] = h;
+            keys[i] = e.getKey();
+            values[i] = e.getValue();
+        }
+        for (int b = 0; b < buckets; ++b) {
+            if (offsets[b + 1] - offsets[b] > 1)
+                sortBucket(hashes, keys, values, offsets[b], offsets[b + 1]);
+        }
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.keys = keys;
+        this.values = values;
+        this.mask = mask;
+    }
+
+    /**
+     * 按hash值对[from, to)排序，元素少时插入排序，多时打包成long排序后重排
+     */
+    static void sortBucket(int[] hashes, Object[] keys, Object[] values, int from, int to) {
+        int len = to - from;
+        if (len <= LINEAR_SCAN_LIMIT) {
+            for (int i = from + 1; i < to; ++i) {
+                int h = hashes[i]; Object k = keys[i], v = values[i]; int j = i - 1;
+                for (; j >= from && hashes[j] > h; --j) {
+                    hashes[j + 1] = hashes[j];
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                }
+                hashes[j + 1] = h;
+                keys[j + 1] = k;
+                values[j + 1] = v;
+            }
+            return;
+        }
+        // 高32位为hash值，低32位为桶内下标
+        long[] packed = new long[len];
+        for (int i = 0; i < len; ++i)
+            packed[i] = ((long)hashes[from + i] << 32) | i;
+        Arrays.sort(packed);
+        Object[] ks = Arrays.copyOfRange(keys, from, to);
+        Object[] vs = Arrays.copyOfRange(values, from, to);
+        for (int i = 0; i < len; ++i) {
+            int src = (int)packed[i];
+            hashes[from + i] = (int)(packed[i] >>> 32);
+            keys[from + i] = ks[src];
+            values[from + i] = vs[src];
+        }
+    }
+
+    /* ---------------- Lookup -------------- */
+
+    /**
+     * 返回key在数组中的下标，不存在时返回-1
+     */
+    final int indexOf(Object key) {
+        int h = HashMap.hash(key), b = h & mask;
+        int lo = offsets[b], hi = offsets[b + 1];
+        int[] hs = hashes; Object[] ks = keys; Object k;
+        if (hi - lo > LINEAR_SCAN_LIMIT) {
+            // 二分查找第一个hash值不小于h的位置
+            int l = lo, r = hi;
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                if (hs[mid] < h)
+                    l = mid + 1;
+                else
+                    r = mid;
+            }
+            lo = l;
+        }
+        for (int i = lo; i < hi; ++i) {
+            int eh = hs[i];
+            if (eh == h) {
+                if ((k = ks[i]) == key || (key != null && key.equals(k)))
+                    return i;
+            }
+            else if (eh > h)
+                break;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V)values[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : (V)values[i];
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean containsValue(Object value) {
+        for (Object v : values) {
+            if (v == value || (value != null && value.equals(v)))
+                return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        Object[] ks = keys, vs = values;
+        for (int i = 0; i < ks.length; ++i)
+            action.accept((K)ks[i], (V)vs[i]);
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size() {
+            return keys.length;
+        }
+
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            int i = indexOf(e.getKey());
+            Object v = e.getValue();
+            return i >= 0 && (v == values[i] || (v != null && v.equals(values[i])));
+        }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int index;
+
+        public final boolean hasNext() {
+            return index < keys.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Map.Entry<K,V> next() {
+            int i = index;
+            if (i >= keys.length)
+                throw new NoSuchElementException();
+            index = i + 1;
+            return new SimpleImmutableEntry<>((K)keys[i], (V)values[i]);
+        }
+    }
+}
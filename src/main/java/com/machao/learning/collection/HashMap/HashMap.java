@@ -17,6 +17,7 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -60,6 +61,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * 渐进式扩容时，每次get/put/remove操作顺序迁移的旧桶数量
+     */
+    static final int RESIZE_STEP = 4;
+
     /**
      * 储存元素的链表结构
      */
@@ -204,6 +210,26 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * 渐进式扩容时的旧数组，尚未迁移的桶仍保存在这里，迁移完成后为null
+     */
+    transient Node<K,V>[] oldTable;
+
+    /**
+     * 渐进式扩容时下一个要顺序迁移的旧桶下标
+     */
+    transient int transferIndex;
+
+    /**
+     * 是否开启渐进式扩容
+     */
+    transient boolean incrementalResize;
+
+    /**
+     * 统计信息，未开启统计时为null
+     */
+    transient Stats stats;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -250,6 +276,86 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         putMapEntries(m, false);
     }
 
+    /**
+     * 开启或关闭渐进式扩容
+     * 
+     * 开启后，resize()只分配新数组，旧数组中的桶在之后的get/put/remove操作中逐步迁移到新数组，
+     * 每次操作迁移当前key所在的旧桶以及RESIZE_STEP个顺序的旧桶，避免单次put承担整个table的rehash；
+     * 迭代、批量遍历等需要完整table的操作会先完成剩余的迁移。
+     * 关闭时会立即完成正在进行的迁移。
+     */
+    public void setIncrementalResize(boolean incrementalResize) {
+        if (!incrementalResize)
+            finishResize();
+        this.incrementalResize = incrementalResize;
+    }
+
+    /**
+     * 是否开启了渐进式扩容
+     */
+    public boolean isIncrementalResize() {
+        return incrementalResize;
+    }
+
+    /**
+     * 开启统计，已开启时清空之前的统计
+     * 
+     * 扩容次数与耗时、红黑树转换次数在每次发生时记录；getNode()的探测长度每sampleRate次查找采样一次
+     * (向上取2的幂次方)，未采样的查找只多一次计数，可以在生产环境中常开；
+     * 桶中链表长度分布在调用stats()时遍历table计算。
+     */
+    public void enableStats(int sampleRate) {
+        if (sampleRate <= 0)
+            throw new IllegalArgumentException("Illegal sample rate: " + sampleRate);
+        stats = new Stats(sampleRate);
+    }
+
+    /**
+     * 关闭统计
+     */
+    public void disableStats() {
+        stats = null;
+    }
+
+    /**
+     * 返回当前统计信息的快照，未开启统计时只有容量、链表长度分布等根据table计算的信息
+     * 
+     * HashMap非线程安全，从其他线程(例如JMX)读取时快照只保证大致准确。
+     */
+    public HashMapStats stats() {
+        long[] chains = new long[Stats.HISTOGRAM_SIZE];
+        int treeBins = countBins(table, chains) + countBins(oldTable, chains);
+        Stats st = stats;
+        return st == null ?
+            new HashMapStats(size, capacity(), loadFactor, 0L, 0L, 0L, treeBins,
+                             chains, new long[Stats.HISTOGRAM_SIZE], 0L, 0L) :
+            new HashMapStats(size, capacity(), loadFactor, st.resizeCount,
+                             st.resizeNanos, st.treeifyCount, treeBins, chains,
+                             st.probeHistogram.clone(), st.sampledLookups,
+                             st.treeLookups);
+    }
+
+    /**
+     * 统计tab中各链表长度的桶数量，返回红黑树桶的数量
+     */
+    static int countBins(Node<?,?>[] tab, long[] chains) {
+        int treeBins = 0;
+        if (tab != null) {
+            for (int i = 0; i < tab.length; ++i) {
+                Node<?,?> e = tab[i];
+                if (e instanceof TreeNode)
+                    ++treeBins;
+                else {
+                    int len = 0;
+                    for (; e != null; e = e.next)
+                        ++len;
+                    ++chains[Math.min(len, Stats.HISTOGRAM_SIZE - 1)];
+                }
+            }
+        }
+        return treeBins;
+    }
+
     /**
      * Implements Map.putAll and Map constructor
      *
@@ -277,6 +383,78 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
     }
 
+    /**
+     * 创建当前内容的不可变快照，之后对当前map的修改不影响快照
+     *
+     * 快照没有Node节点，使用平行数组存放，占用内存更少，查找更快，可以不加同步地在线程间共享。
+     */
+    public FrozenHashMap<K,V> freeze() {
+        return new FrozenHashMap<>(this);
+    }
+
+    /**
+     * 使用公共ForkJoinPool批量构建HashMap
+     *
+     * @see #bulkLoad(Map.Entry[], ForkJoinPool)
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Map.Entry<? extends K, ? extends V>[] entries) {
+        return bulkLoad(entries, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 批量构建HashMap，用于启动时加载大量数据
+     *
+     * 根据元素数量一次性确定table容量，按桶下标把table分成互不相交的区间，在pool中并行插入各区间，
+     * 插入时不检查扩容阀值；结果与按顺序逐个put()相同，重复的key保留最后一个value。
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Map.Entry<? extends K, ? extends V>[] entries,
+                                              ForkJoinPool pool) {
+        Objects.requireNonNull(pool);
+        return HashMapBulkLoader.load(entries, pool);
+    }
+
+    /**
+     * 使用公共ForkJoinPool批量构建HashMap
+     *
+     * @see #bulkLoad(Iterator, int, ForkJoinPool)
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+                                              int sizeHint) {
+        return bulkLoad(it, sizeHint, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 先按顺序读取it中的全部entry，再并行构建；sizeHint为预计的元素数量，用于预分配缓冲区
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+                                              int sizeHint, ForkJoinPool pool) {
+        if (sizeHint < 0)
+            throw new IllegalArgumentException("Illegal size hint: " + sizeHint);
+        Objects.requireNonNull(pool);
+        return HashMapBulkLoader.load(it, sizeHint, pool);
+    }
+
+    /**
+     * 使用公共ForkJoinPool批量构建HashMap
+     *
+     * @see #bulkLoad(Spliterator, int, ForkJoinPool)
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Spliterator<? extends Map.Entry<? extends K, ? extends V>> s,
+                                              int sizeHint) {
+        return bulkLoad(s, sizeHint, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 先按顺序读取s中的全部entry，再并行构建；s的estimateSize()比sizeHint大时按estimateSize()预分配
+     */
+    public static <K,V> HashMap<K,V> bulkLoad(Spliterator<? extends Map.Entry<? extends K, ? extends V>> s,
+                                              int sizeHint, ForkJoinPool pool) {
+        if (sizeHint < 0)
+            throw new IllegalArgumentException("Illegal size hint: " + sizeHint);
+        Objects.requireNonNull(pool);
+        return HashMapBulkLoader.load(s, sizeHint, pool);
+    }
+
     /**
      * Returns the number of key-value mappings in this map.
      *
@@ -313,8 +491,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * @see #put(Object, Object)
      */
     public V get(Object key) {
-        Node<K,V> e;
-        return (e = getNode(hash(key), key)) == null ? null : e.value;
+        Node<K,V> e; int hash = hash(key);
+        if (oldTable != null)
+            advanceResize(hash);
+        return (e = getNode(hash, key)) == null ? null : e.value;
     }
 
     /**
@@ -325,9 +505,18 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * 3. 如果bucket中只有一个节点，返回null，否则执行步骤4
      * 4. 如果bucket中存储的是红黑树，则调用红黑树的getTreeNode()方法查找并返回，否则执行步骤5
      * 5. bucket中存储的是链表，遍历链表找到key和要查找的key相同(hashCode && equals)的节点并返回
+     * 渐进式扩容进行中时，先在旧数组中尚未迁移的桶里查找，再查找新数组
      */
     final Node<K,V> getNode(int hash, Object key) {
-        Node<K,V>[] tab; Node<K,V> first, e; int n; K k;
+        Node<K,V>[] tab; Node<K,V> first, e; int n; K k; Stats st;
+        // 开启统计时按采样率记录探测长度
+        if ((st = stats) != null && st.sample() && oldTable == null)
+            return getNodeSampled(st, hash, key);
+        // 渐进式扩容进行中，key可能还在旧数组尚未迁移的桶中
+        if ((tab = oldTable) != null &&
+            (first = tab[(tab.length - 1) & hash]) != null &&
+            (e = getBinNode(first, hash, key)) != null)
+            return e;
         //  判断table数组已经初始化，且根据hash值找到的桶(bucket)不为空
         if ((tab = table) != null && (n = tab.length) > 0 &&
             (first = tab[(n - 1) & hash]) != null) {
@@ -351,6 +540,45 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return null;
     }
 
+    /**
+     * 与getNode()相同的查找，同时记录比较过的节点数量
+     */
+    final Node<K,V> getNodeSampled(Stats st, int hash, Object key) {
+        Node<K,V>[] tab; Node<K,V> e; int n, probes = 0; K k;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+            (e = tab[(n - 1) & hash]) != null) {
+            if (e instanceof TreeNode) {
+                st.recordTreeLookup();
+                return ((TreeNode<K,V>)e).getTreeNode(hash, key);
+            }
+            do {
+                ++probes;
+                if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && key.equals(k)))) {
+                    st.recordProbes(probes);
+                    return e;
+                }
+            } while ((e = e.next) != null);
+        }
+        st.recordProbes(probes);
+        return null;
+    }
+
+    /**
+     * 在以first为头节点的桶中查找节点
+     */
+    static <K,V> Node<K,V> getBinNode(Node<K,V> first, int hash, Object key) {
+        K k;
+        if (first instanceof TreeNode)
+            return ((TreeNode<K,V>)first).getTreeNode(hash, key);
+        do {
+            if (first.hash == hash &&
+                ((k = first.key) == key || (key != null && key.equals(k))))
+                return first;
+        } while ((first = first.next) != null);
+        return null;
+    }
+
     /**
      * Returns <tt>true</tt> if this map contains a mapping for the
      * specified key.
@@ -389,6 +617,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         // table未初始化或者长度为0，进行扩容
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
+        // 渐进式扩容进行中，先把key所在的旧桶迁移到新数组
+        if (oldTable != null)
+            advanceResize(hash);
         // 步骤2. 计算index，并对null值做处理
         // (n - 1) & hash 计算出元素需要放在哪个桶中，并赋值给i
         // 获取当前桶并赋值给p
@@ -468,6 +699,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * @return the table
      */
     final Node<K,V>[] resize() {
+        long start = (stats != null) ? System.nanoTime() : 0L;
+        // 上一次渐进式扩容尚未完成时，先完成剩余的迁移
+        if (oldTable != null)
+            finishResize();
         Node<K,V>[] oldTab = table;// 将当前数组赋值给oldTab
         int oldCap = (oldTab == null) ? 0 : oldTab.length;// 将当前数组容量赋值给oldCap
         int oldThr = threshold;// 将当前扩容阀值赋值给oldThr
@@ -502,58 +737,105 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];
         table = newTab;
         if (oldTab != null) {
-        	// 从oldTab[1]开始遍历，因为数组中[0]位置存的是null值
-            for (int j = 0; j < oldCap; ++j) {
-                Node<K,V> e;
-                if ((e = oldTab[j]) != null) {
-                    oldTab[j] = null; // 帮助 GC
-                    if (e.next == null) // 如果是桶中只有一个元素，重新计算桶的位置
-                    	//直接对e的hash值对新的数组长度求模获得存储位置
-                    	newTab[e.hash & (newCap - 1)] = e;
-                    else if (e instanceof TreeNode) // //如果e是红黑树的类型，那么添加到红黑树中
-                        ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
-                    else { // preserve order
-                    	// lo链表，表示移动到扩容后hash桶数组的原位置
-                        Node<K,V> loHead = null, loTail = null;
-                        // hi链表，表示移动到扩容后hash桶数组的原偏移量2倍的位置
-                        Node<K,V> hiHead = null, hiTail = null;
-                        Node<K,V> next;
-                        do {
-                            next = e.next;// 将e.next赋值给next
-                            if ((e.hash & oldCap) == 0) {//如果Node节点的hash值和原hash桶数组的长度做与运算结果为0
-                            	// 封装lo链表
-                                if (loTail == null)
-                                    loHead = e;
-                                else
-                                    loTail.next = e;
-                                loTail = e;
-                            }
-                            else {//如果Node节点的hash值和原hash桶数组的长度做与运算结果不为0
-                            	// 封装hi链表
-                                if (hiTail == null)
-                                    hiHead = e;
-                                else
-                                    hiTail.next = e;
-                                hiTail = e;
-                            }
-                        } while ((e = next) != null);
-                        // 将lo链表移动到原偏移量的桶上
-                        if (loTail != null) {
-                            loTail.next = null;
-                            newTab[j] = loHead;
-                        }
-                        // 将hi链表移动到原偏移量2倍的桶上
-                        if (hiTail != null) {
-                            hiTail.next = null;
-                            newTab[j + oldCap] = hiHead;//
-                        }
+            // 渐进式扩容，旧桶在之后的操作中逐步迁移
+            if (incrementalResize) {
+                oldTable = oldTab;
+                transferIndex = 0;
+            }
+            else {
+                for (int j = 0; j < oldCap; ++j)
+                    transferBin(oldTab, j, newTab);
+            }
+            if (stats != null)
+                stats.recordResize(start);
+        }
+        return newTab;
+    }
+
+    /**
+     * 将旧数组oldTab中下标为j的桶迁移到新数组newTab中
+     * 桶中节点根据hash值与原容量做与运算拆分为lo、hi两部分，lo保持原来的桶位，hi偏移到原桶位+原容量的位置
+     */
+    final void transferBin(Node<K,V>[] oldTab, int j, Node<K,V>[] newTab) {
+        int oldCap = oldTab.length, newCap = newTab.length;
+        Node<K,V> e;
+        if ((e = oldTab[j]) != null) {
+            oldTab[j] = null; // 帮助 GC
+            if (e.next == null) // 如果是桶中只有一个元素，重新计算桶的位置
+            	//直接对e的hash值对新的数组长度求模获得存储位置
+            	newTab[e.hash & (newCap - 1)] = e;
+            else if (e instanceof TreeNode) // //如果e是红黑树的类型，那么添加到红黑树中
+                ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
+            else { // preserve order
+            	// lo链表，表示移动到扩容后hash桶数组的原位置
+                Node<K,V> loHead = null, loTail = null;
+                // hi链表，表示移动到扩容后hash桶数组的原偏移量2倍的位置
+                Node<K,V> hiHead = null, hiTail = null;
+                Node<K,V> next;
+                do {
+                    next = e.next;// 将e.next赋值给next
+                    if ((e.hash & oldCap) == 0) {//如果Node节点的hash值和原hash桶数组的长度做与运算结果为0
+                    	// 封装lo链表
+                        if (loTail == null)
+                            loHead = e;
+                        else
+                            loTail.next = e;
+                        loTail = e;
+                    }
+                    else {//如果Node节点的hash值和原hash桶数组的长度做与运算结果不为0
+                    	// 封装hi链表
+                        if (hiTail == null)
+                            hiHead = e;
+                        else
+                            hiTail.next = e;
+                        hiTail = e;
                     }
+                } while ((e = next) != null);
+                // 将lo链表移动到原偏移量的桶上
+                if (loTail != null) {
+                    loTail.next = null;
+                    newTab[j] = loHead;
+                }
+                // 将hi链表移动到原偏移量2倍的桶上
+                if (hiTail != null) {
+                    hiTail.next = null;
+                    newTab[j + oldCap] = hiHead;//
                 }
             }
         }
-        return newTab;
     }
 
+    /**
+     * 渐进式扩容的单步迁移：先迁移hash所在的旧桶，保证之后对该key的操作只需要访问新数组，
+     * 再顺序迁移RESIZE_STEP个旧桶，旧桶全部迁移后结束本次扩容
+     */
+    final void advanceResize(int hash) {
+        Node<K,V>[] oldTab, newTab;
+        if ((oldTab = oldTable) != null) {
+            int oldCap = oldTab.length;
+            newTab = table;
+            transferBin(oldTab, (oldCap - 1) & hash, newTab);
+            for (int k = 0; k < RESIZE_STEP && transferIndex < oldCap; ++k)
+                transferBin(oldTab, transferIndex++, newTab);
+            if (transferIndex >= oldCap)
+                oldTable = null;
+        }
+    }
+
+    /**
+     * 完成正在进行的渐进式扩容，迁移所有剩余的旧桶
+     */
+    final void finishResize() {
+        Node<K,V>[] oldTab, newTab;
+        if ((oldTab = oldTable) != null) {
+            newTab = table;
+            for (int j = transferIndex; j < oldTab.length; ++j)
+                transferBin(oldTab, j, newTab);
+            oldTable = null;
+        }
+    }
+
+
     /**
      * Replaces all linked nodes in bin at index for given hash unless
      * table is too small, in which case resizes instead.
@@ -564,6 +846,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (tab == null || (n = tab.length) < MIN_TREEIFY_CAPACITY)
             resize();
         else if ((e = tab[index = (n - 1) & hash]) != null) {// 如果table数组容量大于等于64且需要转换的桶位不为空
+            if (stats != null)
+                ++stats.treeifyCount;
             TreeNode<K,V> hd = null, tl = null;
             do {
                 TreeNode<K,V> p = replacementTreeNode(e, null);
@@ -620,6 +904,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     final Node<K,V> removeNode(int hash, Object key, Object value,
                                boolean matchValue, boolean movable) {
         Node<K,V>[] tab; Node<K,V> p; int n, index;
+        if (oldTable != null)
+            advanceResize(hash);
         if ((tab = table) != null && (n = tab.length) > 0 &&
             (p = tab[index = (n - 1) & hash]) != null) {
             Node<K,V> node = null, e; K k; V v;
@@ -665,6 +951,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     public void clear() {
         Node<K,V>[] tab;
         modCount++;
+        oldTable = null;
         if ((tab = table) != null && size > 0) {
             size = 0;
             for (int i = 0; i < tab.length; ++i)
@@ -682,6 +969,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public boolean containsValue(Object value) {
         Node<K,V>[] tab; V v;
+        finishResize();
         if ((tab = table) != null && size > 0) {
             for (int i = 0; i < tab.length; ++i) {
                 for (Node<K,V> e = tab[i]; e != null; e = e.next) {
@@ -733,6 +1021,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -781,6 +1070,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -844,6 +1134,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
                 for (int i = 0; i < tab.length; ++i) {
@@ -911,6 +1202,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (size > threshold || (tab = table) == null ||
             (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceResize(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
@@ -985,6 +1278,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (size > threshold || (tab = table) == null ||
             (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceResize(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
@@ -1040,6 +1335,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (size > threshold || (tab = table) == null ||
             (n = tab.length) == 0)
             n = (tab = resize()).length;
+        if (oldTable != null)
+            advanceResize(hash);
         if ((first = tab[i = (n - 1) & hash]) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
@@ -1089,6 +1386,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V>[] tab;
         if (action == null)
             throw new NullPointerException();
+        finishResize();
         if (size > 0 && (tab = table) != null) {
             int mc = modCount;
             for (int i = 0; i < tab.length; ++i) {
@@ -1105,6 +1403,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         Node<K,V>[] tab;
         if (function == null)
             throw new NullPointerException();
+        finishResize();
         if (size > 0 && (tab = table) != null) {
             int mc = modCount;
             for (int i = 0; i < tab.length; ++i) {
@@ -1229,6 +1528,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         int index;             // current slot
 
         HashIterator() {
+            finishResize();
             expectedModCount = modCount;
             Node<K,V>[] t = table;
             current = next = null;
@@ -1308,6 +1608,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             int hi;
             if ((hi = fence) < 0) {
                 HashMap<K,V> m = map;
+                m.finishResize();
                 est = m.size;
                 expectedModCount = m.modCount;
                 Node<K,V>[] tab = m.table;
@@ -1574,6 +1875,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     void reinitialize() {
         table = null;
+        oldTable = null;
+        transferIndex = 0;
         entrySet = null;
         keySet = null;
         values = null;
@@ -1590,6 +1893,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     // Called only from writeObject, to ensure compatible ordering.
     void internalWriteEntries(java.io.ObjectOutputStream s) throws IOException {
         Node<K,V>[] tab;
+        finishResize();
         if (size > 0 && (tab = table) != null) {
             for (int i = 0; i < tab.length; ++i) {
                 for (Node<K,V> e = tab[i]; e != null; e = e.next) {
@@ -1600,6 +1904,51 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
     }
 
+    /* ------------------------------------------------------------ */
+    // Statistics
+
+    /**
+     * 统计计数器，只在持有map的线程中更新
+     */
+    static final class Stats {
+        /**
+         * 链表长度和探测长度分布的桶数量，最后一个桶统计大于等于TREEIFY_THRESHOLD的情况
+         */
+        static final int HISTOGRAM_SIZE = TREEIFY_THRESHOLD + 1;
+
+        final int sampleMask;
+        int lookups;                // getNode()调用次数，只用于采样
+        long sampledLookups;        // 采样的查找次数
+        long treeLookups;           // 采样的查找中落在红黑树上的次数
+        long resizeCount;           // 扩容次数
+        long resizeNanos;           // resize()累计耗时
+        long treeifyCount;          // 链表转红黑树次数
+        final long[] probeHistogram = new long[HISTOGRAM_SIZE];
+
+        Stats(int sampleRate) {
+            sampleMask = tableSizeFor(sampleRate) - 1;
+        }
+
+        boolean sample() {
+            return (++lookups & sampleMask) == 0;
+        }
+
+        void recordProbes(int probes) {
+            ++sampledLookups;
+            ++probeHistogram[Math.min(probes, HISTOGRAM_SIZE - 1)];
+        }
+
+        void recordTreeLookup() {
+            ++sampledLookups;
+            ++treeLookups;
+        }
+
+        void recordResize(long start) {
+            ++resizeCount;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
     /* ------------------------------------------------------------ */
     // Tree bins
 
@@ -0,0 +1,237 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import com.machao.learning.collection.HashMap.HashMap.Node;
+import com.machao.learning.collection.HashMap.HashMap.TreeNode;
+
+/**
+ * HashMap的批量构建，由HashMap.bulkLoad()调用
+ *
+ * 流程：
+ * 1. 根据元素数量一次性计算table容量，不再逐个检查扩容阀值
+ * 2. 并行计算每个key的hash值
+ * 3. 按桶下标的高位把table分成若干个互不相交的桶区间，计数排序把元素下标按区间分组，组内保持输入顺序
+ * 4. 每个区间由一个任务插入，区间之间没有共享的桶，不需要加锁；重复的key保留最后一个value，与put()一致
+ * 元素数量较少时并行的开销大于收益，直接presize后逐个putVal()。
+ */
+final class HashMapBulkLoader {
+
+    /**
+     * 元素数量小于此值时不并行构建
+     */
+    static final int MIN_PARALLEL_SIZE = 1 << 14;
+
+    /**
+     * 每个任务处理的最少元素数量
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    /**
+     * 每个工作线程对应的桶区间数量，区间多一些可以平衡碰撞严重的区间
+     */
+    static final int PARTITIONS_PER_THREAD = 4;
+
+    private HashMapBulkLoader() {
+    }
+
+    static <K,V> HashMap<K,V> load(Map.Entry<? extends K, ? extends V>[] entries,
+                                   ForkJoinPool pool) {
+        int n = entries.length;
+        Object[] keys = new Object[n], values = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            Map.Entry<? extends K, ? extends V> e = entries[i];
+            keys[i] = e.getKey();
+            values[i] = e.getValue();
+        }
+        return load(keys, values, n, pool);
+    }
+
+    static <K,V> HashMap<K,V> load(Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+                                   int sizeHint, ForkJoinPool pool) {
+        Buffer buf = new Buffer(sizeHint);
+        while (it.hasNext())
+            buf.add(it.next());
+        return load(buf.keys, buf.values, buf.size, pool);
+    }
+
+    static <K,V> HashMap<K,V> load(Spliterator<? extends Map.Entry<? extends K, ? extends V>> s,
+                                   int sizeHint, ForkJoinPool pool) {
+        long est = s.estimateSize();
+        Buffer buf = new Buffer(est > sizeHint && est < Integer.MAX_VALUE ? (int)est : sizeHint);
+        s.forEachRemaining(buf::add);
+        return load(buf.keys, buf.values, buf.size, pool);
+    }
+
+    /**
+     * 用keys[0, n)和values[0, n)构建HashMap
+     */
+    @SuppressWarnings("unchecked")
+    static <K,V> HashMap<K,V> load(Object[] keys, Object[] values, int n, ForkJoinPool pool) {
+        HashMap<K,V> map = new HashMap<>();
+        float ft = ((float)n / map.loadFactor) + 1.0F;
+        int cap = HashMap.tableSizeFor(ft < (float)HashMap.MAXIMUM_CAPACITY ?
+                                       (int)ft : HashMap.MAXIMUM_CAPACITY);
+        if (n < MIN_PARALLEL_SIZE || pool.getParallelism() <= 1) {
+            map.threshold = cap;
+            for (int i = 0; i < n; ++i) {
+                K key = (K)keys[i];
+                map.putVal(HashMap.hash(key), key, (V)values[i], false, false);
+            }
+            return map;
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<K,V>[] tab = (Node<K,V>[])new Node<?,?>[cap];
+        map.table = tab;
+        map.threshold = (cap < HashMap.MAXIMUM_CAPACITY) ?
+            (int)(cap * map.loadFactor) : Integer.MAX_VALUE;
+
+        // 桶区间数量为2的幂次方，区间编号就是桶下标的高位
+        int parts = Math.min(HashMap.tableSizeFor(pool.getParallelism() * PARTITIONS_PER_THREAD), cap);
+        int shift = Integer.numberOfTrailingZeros(cap) - Integer.numberOfTrailingZeros(parts);
+        int chunks = Math.min(parts, (n + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        int chunkSize = (n + chunks - 1) / chunks;
+        int mask = cap - 1;
+
+        // 1. 计算hash值，并统计每个分片中落在各区间的元素数量
+        int[] hashes = new int[n];
+        int[][] counts = new int[chunks][parts];
+        forEach(pool, chunks, c -> {
+            int[] cnt = counts[c];
+            for (int i = c * chunkSize, end = Math.min(i + chunkSize, n); i < end; ++i) {
+                int h = hashes[i] = HashMap.hash(keys[i]);
+                ++cnt[(h & mask) >>> shift];
+            }
+        });
+
+        // 2. 计算每个分片在各区间中的起始位置，分片按输入顺序排列
+        int[] partStart = new int[parts + 1];
+        for (int p = 0, off = 0; p < parts; ++p) {
+            partStart[p] = off;
+            for (int c = 0; c < chunks; ++c) {
+                int cnt = counts[c][p];
+                counts[c][p] = off;
+                off += cnt;
+            }
+        }
+        partStart[parts] = n;
+
+        // 3. 把元素下标分配到所在区间
+        int[] order = new int[n];
+        forEach(pool, chunks, c -> {
+            int[] off = counts[c];
+            for (int i = c * chunkSize, end = Math.min(i + chunkSize, n); i < end; ++i)
+                order[off[(hashes[i] & mask) >>> shift]++] = i;
+        });
+
+        // 4. 每个区间独立插入
+        int[] added = new int[parts];
+        forEach(pool, parts, p -> {
+            int count = 0;
+            for (int j = partStart[p], end = partStart[p + 1]; j < end; ++j) {
+                int i = order[j];
+                if (putBin(map, tab, hashes[i], (K)keys[i], (V)values[i]))
+                    ++count;
+            }
+            added[p] = count;
+        });
+
+        int size = 0;
+        for (int count : added)
+            size += count;
+        map.size = size;
+        ++map.modCount;
+        return map;
+    }
+
+    /**
+     * 不检查扩容阀值的putVal()，返回是否插入了新节点
+     */
+    static <K,V> boolean putBin(HashMap<K,V> map, Node<K,V>[] tab, int hash, K key, V value) {
+        int i = (tab.length - 1) & hash; Node<K,V> p, e; K k;
+        if ((p = tab[i]) == null) {
+            tab[i] = map.newNode(hash, key, value, null);
+            return true;
+        }
+        if (p instanceof TreeNode) {
+            if ((e = ((TreeNode<K,V>)p).putTreeVal(map, tab, hash, key, value)) == null)
+                return true;
+            e.value = value;
+            return false;
+        }
+        for (int binCount = 0; ; ++binCount) {
+            if (p.hash == hash &&
+                ((k = p.key) == key || (key != null && key.equals(k)))) {
+                p.value = value;
+                return false;
+            }
+            if ((e = p.next) == null) {
+                p.next = map.newNode(hash, key, value, null);
+                if (binCount >= HashMap.TREEIFY_THRESHOLD - 1)
+                    map.treeifyBin(tab, hash);
+                return true;
+            }
+            p = e;
+        }
+    }
+
+    /**
+     * 在pool中对[0, n)的每个下标执行action，二分拆分任务
+     */
+    static void forEach(ForkJoinPool pool, int n, IntConsumer action) {
+        pool.invoke(new ForEachTask(0, n, action));
+    }
+
+    static final class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int lo, hi;
+        final IntConsumer action;
+
+        ForEachTask(int lo, int hi, IntConsumer action) {
+            this.lo = lo;
+            this.hi = hi;
+            this.action = action;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ForEachTask(lo, mid, action), new ForEachTask(mid, hi, action));
+            }
+            else if (hi > lo)
+                action.accept(lo);
+        }
+    }
+
+    /**
+     * 从Iterator/Spliterator读取entry的缓冲区，容量不足时扩大1.5倍
+     */
+    static final class Buffer {
+        Object[] keys, values;
+        int size;
+
+        Buffer(int sizeHint) {
+            int cap = Math.max(sizeHint, 16);
+            keys = new Object[cap];
+            values = new Object[cap];
+        }
+
+        void add(Map.Entry<?,?> e) {
+            if (size == keys.length) {
+                int cap = keys.length + (keys.length >> 1);
+                keys = Arrays.copyOf(keys, cap);
+                values = Arrays.copyOf(values, cap);
+            }
+            keys[size] = e.getKey();
+            values[size++] = e.getValue();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.Arrays;
+
+/**
+ * HashMap统计信息的不可变快照，由HashMap.stats()创建
+ *
+ * 链表长度分布chainLengthHistogram[i]表示长度为i的链表桶数量，最后一项为长度大于等于8的链表，红黑树桶单独统计；
+ * 探测长度分布probeLengthHistogram[i]表示采样的getNode()中比较了i个节点的次数，最后一项为大于等于8次，
+ * 落在红黑树上的查找单独统计在treeLookups中；
+ * 链表长度分布集中在较长的链表或红黑树桶较多时，通常说明key的hashCode()分布不好；
+ * 扩容次数较多时，说明初始容量设置过小。
+ */
+public final class HashMapStats {
+
+    private final int size;
+    private final int capacity;
+    private final float loadFactor;
+    private final long resizeCount;
+    private final long resizeNanos;
+    private final long treeifyCount;
+    private final int treeBins;
+    private final long[] chainLengthHistogram;
+    private final long[] probeLengthHistogram;
+    private final long sampledLookups;
+    private final long treeLookups;
+
+    HashMapStats(int size, int capacity, float loadFactor, long resizeCount,
+                 long resizeNanos, long treeifyCount, int treeBins,
+                 long[] chainLengthHistogram, long[] probeLengthHistogram,
+                 long sampledLookups, long treeLookups) {
+        this.size = size;
+        this.capacity = capacity;
+        this.loadFactor = loadFactor;
+        this.resizeCount = resizeCount;
+        this.resizeNanos = resizeNanos;
+        this.treeifyCount = treeifyCount;
+        this.treeBins = treeBins;
+        this.chainLengthHistogram = chainLengthHistogram;
+        this.probeLengthHistogram = probeLengthHistogram;
+        this.sampledLookups = sampledLookups;
+        this.treeLookups = treeLookups;
+    }
+
+    /** 元素数量 */
+    public int getSize() {
+        return size;
+    }
+
+    /** table容量 */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** 构造时指定的加载因子 */
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /** 当前实际负载，元素数量 / table容量 */
+    public double getCurrentLoad() {
+        return capacity == 0 ? 0.0 : (double)size / capacity;
+    }
+
+    /** 扩容次数 */
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    /** resize()累计耗时(纳秒)，渐进式扩容中分摊到各次操作的迁移不计算在内 */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /** 链表转红黑树次数 */
+    public long getTreeifyCount() {
+        return treeifyCount;
+    }
+
+    /** 当前红黑树桶的数量 */
+    public int getTreeBins() {
+        return treeBins;
+    }
+
+    public long[] getChainLengthHistogram() {
+        return chainLengthHistogram.clone();
+    }
+
+    public long[] getProbeLengthHistogram() {
+        return probeLengthHistogram.clone();
+    }
+
+    /** 采样的查找次数 */
+    public long getSampledLookups() {
+        return sampledLookups;
+    }
+
+    /** 采样的查找中落在红黑树上的次数 */
+    public long getTreeLookups() {
+        return treeLookups;
+    }
+
+    /** 采样的链表查找的平均探测长度，大于等于8的按8计算 */
+    public double getMeanProbeLength() {
+        long n = 0, sum = 0;
+        for (int i = 0; i < probeLengthHistogram.length; ++i) {
+            n += probeLengthHistogram[i];
+            sum += i * probeLengthHistogram[i];
+        }
+        return n == 0 ? 0.0 : (double)sum / n;
+    }
+
+    public String toString() {
+        return "HashMapStats{size=" + size +
+            ", capacity=" + capacity +
+            ", loadFactor=" + loadFactor +
+            ", currentLoad=" + getCurrentLoad() +
+            ", resizeCount=" + resizeCount +
+            ", resizeNanos=" + resizeNanos +
+            ", treeifyCount=" + treeifyCount +
+            ", treeBins=" + treeBins +
+            ", chainLengthHistogram=" + Arrays.toString(chainLengthHistogram) +
+            ", probeLengthHistogram=" + Arrays.toString(probeLengthHistogram) +
+            ", sampledLookups=" + sampledLookups +
+            ", treeLookups=" + treeLookups + '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.machao.learning.collection.HashMap;
+
+/**
+ * 通过JMX查看HashMap统计信息的管理接口，由HashMapStatsMonitor实现
+ */
+public interface HashMapStatsMXBean {
+
+    /**
+     * 当前统计信息快照
+     */
+    HashMapStats getStats();
+
+    /**
+     * 清空计数器，重新开始统计
+     */
+    void resetStats();
+}
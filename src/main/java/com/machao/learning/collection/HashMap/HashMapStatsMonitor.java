@@ -0,0 +1,41 @@
+package com.machao.learning.collection.HashMap;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 将HashMap的统计信息注册到平台MBeanServer，可以通过jconsole等工具查看
+ */
+public class HashMapStatsMonitor implements HashMapStatsMXBean {
+
+    private final HashMap<?,?> map;
+    private final int sampleRate;
+
+    public HashMapStatsMonitor(HashMap<?,?> map, int sampleRate) {
+        this.map = map;
+        this.sampleRate = sampleRate;
+        map.enableStats(sampleRate);
+    }
+
+    public HashMapStats getStats() {
+        return map.stats();
+    }
+
+    public void resetStats() {
+        map.enableStats(sampleRate);
+    }
+
+    /**
+     * 开启map的统计并注册为com.machao.learning:type=HashMap,name=name
+     */
+    public static ObjectName register(HashMap<?,?> map, String name, int sampleRate)
+        throws JMException {
+        ObjectName objectName = new ObjectName("com.machao.learning:type=HashMap,name=" +
+                                               ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer()
+            .registerMBean(new HashMapStatsMonitor(map, sampleRate), objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,318 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.Arrays;
+
+/**
+ * 以int为key、int为value的HashMap；
+ * 使用开放寻址法（线性探测）将key和value分别存放在两个平行的int[]数组中，没有Node节点，get/put/remove全程不装箱；
+ * 容量计算复用HashMap.tableSizeFor()，hash扰动与HashMap.hash()相同；
+ * key为0的元素作为空槽位标记，单独存放在containsFreeKey/freeValue中；
+ * 删除元素时使用后移（backward shift）删除，不使用墓碑标记，探测链始终保持紧凑；
+ * 非线程安全。
+ */
+public class IntIntHashMap {
+
+    /**
+     * 空槽位的key
+     */
+    static final int FREE_KEY = 0;
+
+    /**
+     * 储存key的数组，长度总是2的幂次方
+     */
+    int[] keys;
+
+    /**
+     * 储存value的数组，与keys一一对应
+     */
+    int[] values;
+
+    /**
+     * key为0的元素是否存在
+     */
+    boolean containsFreeKey;
+
+    /**
+     * key为0的元素的value
+     */
+    int freeValue;
+
+    /**
+     * 元素数量(包含key为0的元素)
+     */
+    int size;
+
+    /**
+     * 扩容阀值，数组中的元素数量达到此值时扩容
+     */
+    int threshold;
+
+    /**
+     * 数组下标掩码，等于keys.length - 1
+     */
+    int mask;
+
+    /**
+     * 加载因子，开放寻址必须小于1
+     */
+    final float loadFactor;
+
+    /**
+     * 使用指定的初始容量和加载因子构造一个空的 IntIntHashMap
+     */
+    public IntIntHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(capacityFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * 使用指定的初始容量和默认加载因子（0.75）构造一个空的 IntIntHashMap
+     */
+    public IntIntHashMap(int initialCapacity) {
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 使用默认初始容量（16）和默认加载因子（0.75）构造一个空的 IntIntHashMap
+     */
+    public IntIntHashMap() {
+        this(HashMap.DEFAULT_INITIAL_CAPACITY, HashMap.DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 与HashMap.hash()相同的扰动函数，int的hashCode就是其本身
+     */
+    static int hash(int key) {
+        return key ^ (key >>> 16);
+    }
+
+    /**
+     * 计算能容纳expectedSize个元素的最小2次幂容量，至少为2以保证数组中总有空槽位
+     */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        float ft = (float)expectedSize / loadFactor + 1.0F;
+        int cap = HashMap.tableSizeFor(ft < (float)HashMap.MAXIMUM_CAPACITY ?
+                                       (int)ft : HashMap.MAXIMUM_CAPACITY);
+        return Math.max(cap, 2);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回0
+     */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * 返回key对应的value，不存在时返回defaultValue
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == FREE_KEY)
+            return containsFreeKey ? freeValue : defaultValue;
+        int[] ks = keys; int m = mask, k;
+        for (int i = hash(key) & m; ; i = (i + 1) & m) {
+            if ((k = ks[i]) == key)
+                return values[i];
+            if (k == FREE_KEY)
+                return defaultValue;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return key == FREE_KEY ? containsFreeKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 插入或替换key对应的value，返回旧值，不存在旧值时返回0
+     * 流程：
+     * 1. 根据hash值找到起始槽位，向后线性探测
+     * 2. 遇到相同的key则直接覆盖value并返回旧值
+     * 3. 遇到空槽位则插入新元素，数组中的元素数量达到扩容阀值时扩容
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int oldValue = freeValue;
+            if (!containsFreeKey) {
+                containsFreeKey = true;
+                ++size;
+                oldValue = 0;
+            }
+            freeValue = value;
+            return oldValue;
+        }
+        int[] ks = keys; int m = mask, k, i;
+        for (i = hash(key) & m; (k = ks[i]) != FREE_KEY; i = (i + 1) & m) {
+            if (k == key) {
+                int oldValue = values[i];
+                values[i] = value;
+                return oldValue;
+            }
+        }
+        ks[i] = key;
+        values[i] = value;
+        if (++size - (containsFreeKey ? 1 : 0) >= threshold)
+            resize();
+        return 0;
+    }
+
+    /**
+     * 删除key对应的元素，返回旧值，不存在时返回0
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (!containsFreeKey)
+                return 0;
+            int oldValue = freeValue;
+            containsFreeKey = false;
+            freeValue = 0;
+            --size;
+            return oldValue;
+        }
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return 0;
+        int oldValue = values[i];
+        shiftKeys(i);
+        --size;
+        return oldValue;
+    }
+
+    /**
+     * 清空所有元素，数组容量保持不变
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, FREE_KEY);
+            Arrays.fill(values, 0);
+            containsFreeKey = false;
+            freeValue = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * 遍历所有元素，遍历过程中不能修改map
+     */
+    public void forEach(IntIntConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        if (containsFreeKey)
+            action.accept(FREE_KEY, freeValue);
+        int[] ks = keys, vs = values; int k;
+        for (int i = 0; i < ks.length; ++i) {
+            if ((k = ks[i]) != FREE_KEY)
+                action.accept(k, vs[i]);
+        }
+    }
+
+    /**
+     * 接收一对int键值的回调，避免forEach时装箱
+     */
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    /* ---------------- Internals -------------- */
+
+    /**
+     * 返回key在数组中的下标，不存在时返回-1，key不能为FREE_KEY
+     */
+    final int indexOf(int key) {
+        int[] ks = keys; int m = mask, k;
+        for (int i = hash(key) & m; ; i = (i + 1) & m) {
+            if ((k = ks[i]) == key)
+                return i;
+            if (k == FREE_KEY)
+                return -1;
+        }
+    }
+
+    /**
+     * 后移删除：清空pos位置后，把探测链上后面的元素依次前移，
+     * 直到遇到空槽位，保证每个元素都能从它的起始槽位探测到
+     */
+    final void shiftKeys(int pos) {
+        int[] ks = keys, vs = values; int m = mask;
+        for (int last, slot, k;;) {
+            pos = ((last = pos) + 1) & m;
+            for (;;) {
+                if ((k = ks[pos]) == FREE_KEY) {
+                    ks[last] = FREE_KEY;
+                    vs[last] = 0;
+                    return;
+                }
+                slot = hash(k) & m;
+                // 起始槽位不在(last, pos]区间内的元素可以前移到last
+                if (last <= pos ? last >= slot || slot > pos
+                                : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & m;
+            }
+            ks[last] = k;
+            vs[last] = vs[pos];
+        }
+    }
+
+    /**
+     * 分配指定容量的数组并计算扩容阀值，阀值至多为cap - 1，保证数组中总有空槽位
+     */
+    final void allocate(int cap) {
+        keys = new int[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        threshold = Math.min((int)(cap * loadFactor), cap - 1);
+    }
+
+    /**
+     * 扩容为原容量的2倍，并将所有元素重新插入新数组
+     */
+    final void resize() {
+        int[] oldKeys = keys, oldValues = values;
+        int oldCap = oldKeys.length;
+        if (oldCap >= HashMap.MAXIMUM_CAPACITY) {
+            if (threshold >= oldCap - 1)
+                throw new IllegalStateException("IntIntHashMap is full");
+            threshold = oldCap - 1;
+            return;
+        }
+        allocate(oldCap << 1);
+        int[] ks = keys, vs = values; int m = mask, k, i;
+        for (int j = 0; j < oldCap; ++j) {
+            if ((k = oldKeys[j]) != FREE_KEY) {
+                for (i = hash(k) & m; ks[i] != FREE_KEY; i = (i + 1) & m)
+                    ;
+                ks[i] = k;
+                vs[i] = oldValues[j];
+            }
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,469 @@
+package com.machao.learning.collection.HashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 以byte[]为key和value、数据全部存放在堆外内存中的HashMap；
+ * 存储区域是一块ByteBuffer.allocateDirect分配的直接内存，或者一个通过FileChannel.map映射的文件(MappedByteBuffer)，
+ * 堆上只保留存储区域的引用，不会因为元素数量增加给GC带来压力；
+ *
+ * 存储区域布局：
+ * [header][bucket数组][记录区]
+ * header：魔数、bucket数量、元素数量、记录区末尾位置、已删除记录占用的字节数
+ * bucket数组：每个bucket是一个int，保存链表第一条记录在存储区域中的位置，0表示空桶
+ * 记录：[next][hash][key长度][value长度][key][value]，同一个bucket中的记录通过next组成链表，不做红黑树转换
+ *
+ * 删除和变长更新只是把记录从链表中摘除，占用的空间在扩容或compact()时回收；
+ * 元素数量超过扩容阀值或记录区空间不足时，重建一块更大的存储区域并复制所有有效记录；
+ * 文件模式下所有状态都保存在文件中，重新open()同一个文件时只需映射文件、校验header，不需要重建；
+ * 单个存储区域最大为Integer.MAX_VALUE字节，超过此大小需要按hash分片到多个OffHeapHashMap；
+ * 非线程安全。
+ */
+public class OffHeapHashMap implements Closeable {
+
+    /**
+     * 文件魔数，用于校验重新打开的文件
+     */
+    static final int MAGIC = 0x4F484D31; // "OHM1"
+
+    /**
+     * header各字段的位置
+     */
+    static final int MAGIC_OFFSET = 0;
+    static final int CAPACITY_OFFSET = 4;
+    static final int SIZE_OFFSET = 8;
+    static final int DATA_END_OFFSET = 12;
+    static final int GARBAGE_OFFSET = 16;
+
+    /**
+     * header长度，bucket数组紧跟在header之后
+     */
+    static final int HEADER_SIZE = 20;
+
+    /**
+     * 记录头各字段相对记录起始位置的偏移量
+     */
+    static final int NEXT = 0;
+    static final int HASH = 4;
+    static final int KEY_LENGTH = 8;
+    static final int VALUE_LENGTH = 12;
+
+    /**
+     * 记录头长度，key和value紧跟在记录头之后
+     */
+    static final int RECORD_HEADER_SIZE = 16;
+
+    /**
+     * 存储区域的最大长度
+     */
+    static final int MAXIMUM_REGION_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * 存储区域，直接内存或映射文件
+     */
+    ByteBuffer buffer;
+
+    /**
+     * buffer的副本，用于批量读写key和value时设置position，避免修改buffer本身
+     */
+    ByteBuffer view;
+
+    /**
+     * bucket数量，必须是2的幂次方
+     */
+    int capacity;
+
+    /**
+     * 扩容阀值
+     */
+    int threshold;
+
+    /**
+     * 加载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 文件模式下映射的文件，直接内存模式下为null
+     */
+    final Path file;
+
+    /**
+     * 文件模式下映射文件使用的FileChannel
+     */
+    FileChannel channel;
+
+    OffHeapHashMap(Path file, float loadFactor) {
+        this.file = file;
+        this.loadFactor = loadFactor;
+    }
+
+    /**
+     * 使用直接内存创建一个空的OffHeapHashMap
+     *
+     * @param expectedSize 预计的元素数量，用于计算bucket数量
+     * @param expectedBytes 预计所有key和value占用的总字节数，用于计算记录区大小
+     */
+    public static OffHeapHashMap allocateDirect(int expectedSize, int expectedBytes) {
+        OffHeapHashMap m = new OffHeapHashMap(null, HashMap.DEFAULT_LOAD_FACTOR);
+        try {
+            m.init(expectedSize, expectedBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // 直接内存模式不会发生
+        }
+        return m;
+    }
+
+    /**
+     * 打开一个映射文件作为存储区域的OffHeapHashMap；
+     * 文件已存在时直接映射并校验header，元素立即可用；文件不存在时创建一个空的map
+     *
+     * @param file 映射的文件
+     * @param expectedSize 新建文件时预计的元素数量
+     * @param expectedBytes 新建文件时预计所有key和value占用的总字节数
+     */
+    public static OffHeapHashMap open(String file, int expectedSize, int expectedBytes)
+        throws IOException {
+        Path path = Paths.get(file);
+        OffHeapHashMap m = new OffHeapHashMap(path, HashMap.DEFAULT_LOAD_FACTOR);
+        if (Files.exists(path) && Files.size(path) > 0)
+            m.reopen();
+        else
+            m.init(expectedSize, expectedBytes);
+        return m;
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 计算key的hash值，与HashMap.hash()使用相同的扰动
+     */
+    static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 计算能容纳expectedSize个元素的bucket数量
+     */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        float ft = (float)expectedSize / loadFactor + 1.0F;
+        return HashMap.tableSizeFor(ft < (float)HashMap.MAXIMUM_CAPACITY ?
+                                    (int)ft : HashMap.MAXIMUM_CAPACITY);
+    }
+
+    /**
+     * 计算存储区域大小，超过最大长度时抛出IllegalStateException
+     */
+    static int regionSize(int capacity, long dataBytes) {
+        long size = HEADER_SIZE + ((long)capacity << 2) + dataBytes;
+        if (size > MAXIMUM_REGION_SIZE)
+            throw new IllegalStateException("OffHeapHashMap region is full: " + size);
+        return (int)size;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return buffer.getInt(SIZE_OFFSET);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 返回key对应value的拷贝，不存在时返回null
+     */
+    public byte[] get(byte[] key) {
+        int r;
+        if ((r = findRecord(hash(key), key)) == 0)
+            return null;
+        ByteBuffer b = buffer;
+        int kl = b.getInt(r + KEY_LENGTH);
+        byte[] value = new byte[b.getInt(r + VALUE_LENGTH)];
+        ByteBuffer v = view;
+        v.position(r + RECORD_HEADER_SIZE + kl);
+        v.get(value);
+        return value;
+    }
+
+    public boolean containsKey(byte[] key) {
+        return findRecord(hash(key), key) != 0;
+    }
+
+    /**
+     * 插入或替换key对应的value，key已存在时返回true
+     * 流程：
+     * 1. key已存在且新value长度与旧value相同时，直接在原记录上覆盖value
+     * 2. 否则在记录区末尾追加一条新记录插入到bucket链表头部，并摘除旧记录
+     * 3. 元素数量超过扩容阀值时，重建为bucket数量加倍的存储区域
+     */
+    public boolean put(byte[] key, byte[] value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int hash = hash(key);
+        int r = findRecord(hash, key);
+        ByteBuffer b = buffer;
+        if (r != 0 && b.getInt(r + VALUE_LENGTH) == value.length) {
+            ByteBuffer v = view;
+            v.position(r + RECORD_HEADER_SIZE + key.length);
+            v.put(value);
+            return true;
+        }
+        int len = RECORD_HEADER_SIZE + key.length + value.length;
+        if (b.getInt(DATA_END_OFFSET) + (long)len > b.capacity()) {
+            rebuild(capacity, len);
+            r = findRecord(hash, key);
+        }
+        if (r != 0)
+            unlink(hash, r);
+        appendRecord(hash, key, value);
+        if (r == 0 && incrementSize(1) > threshold)
+            rebuild(capacity << 1, 0);
+        return r != 0;
+    }
+
+    /**
+     * 删除key对应的元素，key存在时返回true
+     */
+    public boolean remove(byte[] key) {
+        int hash = hash(key), r;
+        if ((r = findRecord(hash, key)) == 0)
+            return false;
+        unlink(hash, r);
+        incrementSize(-1);
+        return true;
+    }
+
+    /**
+     * 清空所有元素，存储区域大小保持不变
+     */
+    public void clear() {
+        ByteBuffer b = buffer;
+        for (int i = 0; i < capacity; ++i)
+            b.putInt(HEADER_SIZE + (i << 2), 0);
+        b.putInt(SIZE_OFFSET, 0);
+        b.putInt(DATA_END_OFFSET, HEADER_SIZE + (capacity << 2));
+        b.putInt(GARBAGE_OFFSET, 0);
+    }
+
+    /**
+     * 回收已删除记录占用的空间，有效数据超过记录区一半时同时扩大记录区
+     */
+    public void compact() {
+        rebuild(capacity, 0);
+    }
+
+    /**
+     * 文件模式下将存储区域的修改刷新到磁盘
+     */
+    public void force() {
+        if (buffer instanceof MappedByteBuffer)
+            ((MappedByteBuffer)buffer).force();
+    }
+
+    /**
+     * 文件模式下刷新并关闭文件，直接内存由GC回收
+     */
+    public void close() throws IOException {
+        force();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /* ---------------- Internals -------------- */
+
+    /**
+     * 查找key对应的记录位置，不存在时返回0
+     */
+    final int findRecord(int hash, byte[] key) {
+        ByteBuffer b = buffer;
+        int kl = key.length;
+        for (int r = b.getInt(HEADER_SIZE + ((hash & (capacity - 1)) << 2));
+             r != 0; r = b.getInt(r + NEXT)) {
+            if (b.getInt(r + HASH) == hash && b.getInt(r + KEY_LENGTH) == kl &&
+                keyEquals(b, r + RECORD_HEADER_SIZE, key))
+                return r;
+        }
+        return 0;
+    }
+
+    static boolean keyEquals(ByteBuffer b, int pos, byte[] key) {
+        for (int i = 0; i < key.length; ++i) {
+            if (b.get(pos + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将记录r从其所在bucket的链表中摘除，并累计已删除的字节数
+     */
+    final void unlink(int hash, int r) {
+        ByteBuffer b = buffer;
+        int slot = HEADER_SIZE + ((hash & (capacity - 1)) << 2);
+        int next = b.getInt(r + NEXT), p = b.getInt(slot);
+        if (p == r)
+            b.putInt(slot, next);
+        else {
+            int q;
+            while ((q = b.getInt(p + NEXT)) != r)
+                p = q;
+            b.putInt(p + NEXT, next);
+        }
+        b.putInt(GARBAGE_OFFSET, b.getInt(GARBAGE_OFFSET) + RECORD_HEADER_SIZE +
+                 b.getInt(r + KEY_LENGTH) + b.getInt(r + VALUE_LENGTH));
+    }
+
+    /**
+     * 在记录区末尾追加一条记录并插入到bucket链表头部，调用方保证空间足够
+     */
+    final void appendRecord(int hash, byte[] key, byte[] value) {
+        ByteBuffer b = buffer;
+        int r = b.getInt(DATA_END_OFFSET);
+        int slot = HEADER_SIZE + ((hash & (capacity - 1)) << 2);
+        b.putInt(r + NEXT, b.getInt(slot));
+        b.putInt(r + HASH, hash);
+        b.putInt(r + KEY_LENGTH, key.length);
+        b.putInt(r + VALUE_LENGTH, value.length);
+        ByteBuffer v = view;
+        v.position(r + RECORD_HEADER_SIZE);
+        v.put(key);
+        v.put(value);
+        b.putInt(slot, r);
+        b.putInt(DATA_END_OFFSET, r + RECORD_HEADER_SIZE + key.length + value.length);
+    }
+
+    final int incrementSize(int delta) {
+        int s = buffer.getInt(SIZE_OFFSET) + delta;
+        buffer.putInt(SIZE_OFFSET, s);
+        return s;
+    }
+
+    /**
+     * 创建一块空的存储区域
+     */
+    final void init(int expectedSize, int expectedBytes) throws IOException {
+        int cap = capacityFor(Math.max(expectedSize, 0), loadFactor);
+        long dataBytes = Math.max((long)expectedBytes, 0L) +
+            (long)RECORD_HEADER_SIZE * Math.max(expectedSize, 1);
+        ByteBuffer b = allocate(regionSize(cap, dataBytes), file);
+        format(b, cap);
+        attach(b, cap);
+    }
+
+    /**
+     * 映射已存在的文件并校验header
+     */
+    final void reopen() throws IOException {
+        ByteBuffer b = allocate((int)Math.min(Files.size(file), MAXIMUM_REGION_SIZE), file);
+        int cap = b.getInt(CAPACITY_OFFSET);
+        if (b.getInt(MAGIC_OFFSET) != MAGIC || cap <= 0 || (cap & (cap - 1)) != 0 ||
+            b.getInt(DATA_END_OFFSET) > b.capacity()) {
+            channel.close();
+            channel = null;
+            throw new IOException("Not an OffHeapHashMap file: " + file);
+        }
+        attach(b, cap);
+    }
+
+    /**
+     * 分配存储区域：直接内存模式使用allocateDirect，文件模式映射指定文件，原有的FileChannel会被替换
+     */
+    final ByteBuffer allocate(int size, Path target) throws IOException {
+        if (target == null)
+            return ByteBuffer.allocateDirect(size);
+        FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE,
+                                          StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+        MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (channel != null)
+            channel.close();
+        channel = ch;
+        return mb;
+    }
+
+    static void format(ByteBuffer b, int cap) {
+        b.putInt(MAGIC_OFFSET, MAGIC);
+        b.putInt(CAPACITY_OFFSET, cap);
+        b.putInt(SIZE_OFFSET, 0);
+        b.putInt(DATA_END_OFFSET, HEADER_SIZE + (cap << 2));
+        b.putInt(GARBAGE_OFFSET, 0);
+        for (int i = 0; i < cap; ++i)
+            b.putInt(HEADER_SIZE + (i << 2), 0);
+    }
+
+    final void attach(ByteBuffer b, int cap) {
+        buffer = b;
+        view = b.duplicate();
+        capacity = cap;
+        float ft = (float)cap * loadFactor;
+        threshold = (cap < HashMap.MAXIMUM_CAPACITY && ft < (float)HashMap.MAXIMUM_CAPACITY ?
+                     (int)ft : Integer.MAX_VALUE);
+    }
+
+    /**
+     * 重建存储区域：使用newCap个bucket，记录区至少能再容纳extra字节，
+     * 依次把旧区域中的有效记录复制到新区域，同时回收已删除记录的空间；
+     * 文件模式下先写入临时文件，完成后原子替换原文件，中途失败不会破坏原文件
+     */
+    final void rebuild(int newCap, int extra) {
+        ByteBuffer old = buffer;
+        int oldCap = capacity;
+        int oldData = old.getInt(DATA_END_OFFSET) - HEADER_SIZE - (oldCap << 2);
+        long live = (long)oldData - old.getInt(GARBAGE_OFFSET) + extra;
+        // 有效数据超过记录区一半时记录区加倍，否则只做整理
+        long dataBytes = Math.max(live << 1, (long)oldData);
+        if (newCap > HashMap.MAXIMUM_CAPACITY)
+            newCap = HashMap.MAXIMUM_CAPACITY;
+        int size = regionSize(newCap, Math.min(dataBytes,
+            MAXIMUM_REGION_SIZE - HEADER_SIZE - ((long)newCap << 2)));
+        if (live > size - HEADER_SIZE - ((long)newCap << 2))
+            throw new IllegalStateException("OffHeapHashMap region is full");
+        Path tmp = (file == null) ? null : file.resolveSibling(file.getFileName() + ".rebuild");
+        try {
+            ByteBuffer b = allocate(size, tmp);
+            format(b, newCap);
+            ByteBuffer src = old.duplicate(), dst = b.duplicate();
+            int mask = newCap - 1, end = HEADER_SIZE + (newCap << 2), count = 0;
+            for (int i = 0; i < oldCap; ++i) {
+                for (int r = old.getInt(HEADER_SIZE + (i << 2)); r != 0; r = old.getInt(r + NEXT)) {
+                    int hash = old.getInt(r + HASH);
+                    int len = RECORD_HEADER_SIZE + old.getInt(r + KEY_LENGTH) +
+                        old.getInt(r + VALUE_LENGTH);
+                    int slot = HEADER_SIZE + ((hash & mask) << 2);
+                    src.limit(r + len).position(r);
+                    dst.position(end);
+                    dst.put(src);
+                    b.putInt(end + NEXT, b.getInt(slot));
+                    b.putInt(slot, end);
+                    end += len;
+                    ++count;
+                }
+            }
+            b.putInt(SIZE_OFFSET, count);
+            b.putInt(DATA_END_OFFSET, end);
+            if (tmp != null) {
+                ((MappedByteBuffer)b).force();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+            attach(b, newCap);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to rebuild " + file, e);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * SwissTable风格的开放寻址HashMap；
+ * key和value交替存放在同一个table数组中(同一槽位的key和value通常在同一缓存行)，另有一个控制字节数组，每个槽位对应一个控制字节：
+ * 空槽位为EMPTY(0x80)，已删除为DELETED(0xFE)，有元素时保存hash值的低7位(h2)；
+ * 控制字节每8个一组打包在一个long中，查找时用h2一次比较一整组控制字节(SWAR)，
+ * 只有控制字节匹配的槽位才需要比较key，失败查找通常只读一个long就能结束；
+ * hash值的高位(h1)决定起始组，组之间使用三角数探测，组数量为2的幂次方时能遍历所有组；
+ * 元素数量(包括已删除槽位)超过容量的7/8时扩容或原地重建；
+ * 不支持null键，非线程安全。
+ */
+public class SwissHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * 每组槽位数量，一组控制字节正好是一个long
+     */
+    static final int GROUP_WIDTH = 8;
+
+    /**
+     * 空槽位的控制字节
+     */
+    static final byte EMPTY = (byte)0x80;
+
+    /**
+     * 已删除槽位的控制字节
+     */
+    static final byte DELETED = (byte)0xFE;
+
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * 全部为EMPTY的一组控制字节
+     */
+    static final long EMPTY_GROUP = LSBS * (EMPTY & 0xFF);
+
+    /**
+     * 控制字节，ctrl[g]的第j个字节(从低位开始)对应槽位g * 8 + j
+     */
+    long[] ctrl;
+
+    /**
+     * 槽位i的key保存在table[2 * i]，value保存在table[2 * i + 1]
+     */
+    Object[] table;
+
+    /**
+     * 槽位数量
+     */
+    int capacity;
+
+    /**
+     * 元素数量
+     */
+    int size;
+
+    /**
+     * 在需要重建前还能占用的EMPTY槽位数量
+     */
+    int growthLeft;
+
+    /**
+     * 结构性修改计数器
+     */
+    int modCount;
+
+    /**
+     * 使用指定的初始容量构造一个空的 SwissHashMap
+     */
+    public SwissHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        // 最大负载为7/8
+        long slots = (long)initialCapacity * GROUP_WIDTH / (GROUP_WIDTH - 1) + 1;
+        allocate(HashMap.tableSizeFor((int)Math.min(slots, HashMap.MAXIMUM_CAPACITY)));
+    }
+
+    /**
+     * 使用默认初始容量（16）构造一个空的 SwissHashMap
+     */
+    public SwissHashMap() {
+        this(HashMap.DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 在HashMap.hash()的基础上再乘以黄金分割常数，让低7位(h2)和高位(h1)都充分混合
+     */
+    static int hash(Object key) {
+        return HashMap.hash(key) * 0x9E3779B9;
+    }
+
+    static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    static byte h2(int hash) {
+        return (byte)(hash & 0x7F);
+    }
+
+    /**
+     * 返回一组控制字节中等于h2的字节位置掩码(每个匹配字节的最高位为1)，
+     * 极少数情况下会有误报，调用方需要再比较key
+     */
+    static long matchByte(long group, byte h2) {
+        long x = group ^ (LSBS * (h2 & 0xFF));
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * 返回一组控制字节中EMPTY字节的位置掩码，EMPTY的bit1为0而DELETED的bit1为1
+     */
+    static long matchEmpty(long group) {
+        return group & (~group << 6) & MSBS;
+    }
+
+    /**
+     * 返回一组控制字节中EMPTY或DELETED字节的位置掩码，两者最高位都为1
+     */
+    static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    /**
+     * 掩码中最低一个匹配字节在组内的下标
+     */
+    static int lowestLane(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return (i = find(key)) < 0 ? null : (V)table[(i << 1) + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i;
+        return (i = find(key)) < 0 ? defaultValue : (V)table[(i << 1) + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * 插入或替换key对应的value
+     * 流程：
+     * 1. 按探测序列逐组查找，控制字节与h2匹配时比较key，找到相同key则直接覆盖value
+     * 2. 遇到包含EMPTY的组说明key不存在，在探测序列上第一个EMPTY或DELETED槽位插入
+     * 3. 占用EMPTY槽位时如果growthLeft为0，先扩容或原地重建再插入
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (key == null)
+            throw new NullPointerException();
+        int hash = hash(key); byte h2 = h2(hash);
+        long[] c = ctrl; Object[] tab = table;
+        int groupMask = c.length - 1;
+        int firstFree = -1;
+        for (int g = h1(hash) & groupMask, stride = 0; ; g = (g + ++stride) & groupMask) {
+            long group = c[g];
+            for (long m = matchByte(group, h2); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestLane(m);
+                Object k = tab[i << 1];
+                if (k == key || key.equals(k)) {
+                    V oldValue = (V)tab[(i << 1) + 1];
+                    tab[(i << 1) + 1] = value;
+                    return oldValue;
+                }
+            }
+            long free;
+            if (firstFree < 0 && (free = matchEmptyOrDeleted(group)) != 0)
+                firstFree = (g << 3) + lowestLane(free);
+            if (matchEmpty(group) != 0)
+                break;
+        }
+        if (ctrlAt(firstFree) == EMPTY && growthLeft == 0) {
+            rehash();
+            firstFree = findInsertSlot(hash);
+        }
+        insertAt(firstFree, hash, key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i;
+        if ((i = find(key)) < 0)
+            return null;
+        V oldValue = (V)table[(i << 1) + 1];
+        erase(i);
+        return oldValue;
+    }
+
+    public void clear() {
+        if (size > 0 || growthLeft != capacity() - capacity() / GROUP_WIDTH) {
+            Arrays.fill(ctrl, EMPTY_GROUP);
+            Arrays.fill(table, null);
+            size = 0;
+            growthLeft = capacity() - capacity() / GROUP_WIDTH;
+            ++modCount;
+        }
+    }
+
+    /**
+     * 槽位数量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /* ---------------- Internals -------------- */
+
+    /**
+     * 返回key所在的槽位，不存在时返回-1
+     */
+    final int find(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        int hash = hash(key); byte h2 = h2(hash);
+        long[] c = ctrl; Object[] tab = table;
+        int groupMask = c.length - 1;
+        for (int g = h1(hash) & groupMask, stride = 0; ; g = (g + ++stride) & groupMask) {
+            long group = c[g];
+            for (long m = matchByte(group, h2); m != 0; m &= m - 1) {
+                int i = (g << 3) + lowestLane(m);
+                Object k = tab[i << 1];
+                if (k == key || key.equals(k))
+                    return i;
+            }
+            if (matchEmpty(group) != 0)
+                return -1;
+        }
+    }
+
+    /**
+     * 返回探测序列上第一个EMPTY或DELETED槽位，调用方保证key不存在
+     */
+    final int findInsertSlot(int hash) {
+        long[] c = ctrl; long free;
+        int groupMask = c.length - 1;
+        for (int g = h1(hash) & groupMask, stride = 0; ; g = (g + ++stride) & groupMask) {
+            if ((free = matchEmptyOrDeleted(c[g])) != 0)
+                return (g << 3) + lowestLane(free);
+        }
+    }
+
+    final byte ctrlAt(int i) {
+        return (byte)(ctrl[i >>> 3] >>> ((i & 7) << 3));
+    }
+
+    final void setCtrl(int i, byte b) {
+        int shift = (i & 7) << 3;
+        long[] c = ctrl;
+        c[i >>> 3] = (c[i >>> 3] & ~(0xFFL << shift)) | ((b & 0xFFL) << shift);
+    }
+
+    final void insertAt(int i, int hash, K key, V value) {
+        if (ctrlAt(i) == EMPTY)
+            --growthLeft;
+        setCtrl(i, h2(hash));
+        table[i << 1] = key;
+        table[(i << 1) + 1] = value;
+        ++size;
+        ++modCount;
+    }
+
+    /**
+     * 删除槽位i的元素；
+     * 所在组中还有EMPTY槽位时，查找一定会在这一组结束，可以直接标记为EMPTY，否则只能标记为DELETED
+     */
+    final void erase(int i) {
+        if (matchEmpty(ctrl[i >>> 3]) != 0) {
+            setCtrl(i, EMPTY);
+            ++growthLeft;
+        }
+        else
+            setCtrl(i, DELETED);
+        table[i << 1] = null;
+        table[(i << 1) + 1] = null;
+        --size;
+        ++modCount;
+    }
+
+    /**
+     * 分配指定槽位数量的数组，至少一组
+     */
+    final void allocate(int cap) {
+        cap = Math.max(cap, GROUP_WIDTH);
+        long[] c = new long[cap / GROUP_WIDTH];
+        Arrays.fill(c, EMPTY_GROUP);
+        ctrl = c;
+        table = new Object[cap << 1];
+        capacity = cap;
+        growthLeft = cap - cap / GROUP_WIDTH;
+    }
+
+    /**
+     * 没有可用的EMPTY槽位时调用：元素数量超过容量的7/16时扩容一倍，
+     * 否则说明大部分空间被DELETED占用，按原容量重建以清除DELETED
+     */
+    @SuppressWarnings("unchecked")
+    final void rehash() {
+        Object[] oldTab = table;
+        long[] oldCtrl = ctrl;
+        int oldCap = capacity;
+        int newCap = ((long)size << 4) > (long)oldCap * 7 ? oldCap << 1 : oldCap;
+        if (newCap > HashMap.MAXIMUM_CAPACITY)
+            throw new IllegalStateException("SwissHashMap is full");
+        allocate(newCap);
+        for (int i = 0; i < oldCap; ++i) {
+            if ((oldCtrl[i >>> 3] & (0x80L << ((i & 7) << 3))) == 0) {
+                Object k = oldTab[i << 1];
+                int hash = hash(k), j = findInsertSlot(hash);
+                --growthLeft;
+                setCtrl(j, h2(hash));
+                table[j << 1] = k;
+                table[(j << 1) + 1] = oldTab[(i << 1) + 1];
+            }
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        return new EntrySet();
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size()                         { return size; }
+        public void clear()                       { SwissHashMap.this.clear(); }
+        public Iterator<Map.Entry<K,V>> iterator() { return new EntryIterator(); }
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int next = -1;          // 下一个元素的槽位
+        int current = -1;       // 当前元素的槽位
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            advance(0);
+        }
+
+        final void advance(int from) {
+            int cap = capacity;
+            for (next = from; next < cap && (ctrlAt(next) & 0x80) != 0; ++next)
+                ;
+        }
+
+        public boolean hasNext() {
+            return next < capacity;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= capacity)
+                throw new NoSuchElementException();
+            int i = current = next;
+            advance(i + 1);
+            return new AbstractMap.SimpleEntry<K,V>((K)table[i << 1], (V)table[(i << 1) + 1]) {
+                private static final long serialVersionUID = 1L;
+                public V setValue(V value) {
+                    if (modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    table[(i << 1) + 1] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        public void remove() {
+            if (current < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            erase(current);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.machao.learning.collection.HashMap;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * SwissHashMap与HashMap(链表+红黑树)的对比测试
+ *
+ * 场景：
+ * 1. put：插入全部key，HashMap走putVal()，碰撞key会触发treeifyBin()
+ * 2. 成功查找：查找已存在的key，HashMap走getNode()
+ * 3. 失败查找：查找不存在的key
+ * 每个场景分别使用均匀分布的Integer key和大量hash碰撞的CollidingKey，
+ * 先预热再计时，输出每次操作的平均纳秒数
+ */
+public class SwissHashMapBenchmark {
+
+	// 元素数量
+	static final int SIZE = 1 << 20;
+
+	// 碰撞key的不同hash值数量，每个hash值对应SIZE / COLLISION_BUCKETS个key
+	static final int COLLISION_BUCKETS = SIZE >>> 5;
+
+	// 预热轮数与计时轮数
+	static final int WARMUP_ROUNDS = 5;
+	static final int MEASURE_ROUNDS = 5;
+
+	// 防止JIT消除查找结果
+	static int sink;
+
+	/**
+	 * 大量hash碰撞的key，实现Comparable以便HashMap的红黑树按key排序
+	 */
+	static final class CollidingKey implements Comparable<CollidingKey> {
+		final int value;
+
+		CollidingKey(int value) {
+			this.value = value;
+		}
+
+		// 忽略最低位，让不存在的key与存在的key落在同一组碰撞中
+		public int hashCode() {
+			return (value >>> 1) % COLLISION_BUCKETS;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+		}
+
+		public int compareTo(CollidingKey o) {
+			return Integer.compare(value, o.value);
+		}
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		Integer[] hits = new Integer[SIZE];
+		Integer[] misses = new Integer[SIZE];
+		CollidingKey[] collidingHits = new CollidingKey[SIZE];
+		CollidingKey[] collidingMisses = new CollidingKey[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			int v = random.nextInt() & ~1;// 偶数作为存在的key，奇数作为不存在的key
+			hits[i] = v;
+			misses[i] = v | 1;
+			collidingHits[i] = new CollidingKey(i << 1);
+			collidingMisses[i] = new CollidingKey((i << 1) | 1);
+		}
+
+		System.out.println("map\tkeys\tput(ns/op)\thit(ns/op)\tmiss(ns/op)");
+		run("HashMap", "uniform", HashMap::new, hits, misses);
+		run("SwissHashMap", "uniform", SwissHashMap::new, hits, misses);
+		run("HashMap", "colliding", HashMap::new, collidingHits, collidingMisses);
+		run("SwissHashMap", "colliding", SwissHashMap::new, collidingHits, collidingMisses);
+	}
+
+	/**
+	 * 预热后计时，分别测试put、成功查找和失败查找
+	 */
+	static <K> void run(String name, String keys, Supplier<Map<K, Integer>> factory, K[] hits, K[] misses) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			measure(factory, hits, misses);
+		long[] total = new long[3];
+		for (int i = 0; i < MEASURE_ROUNDS; i++) {
+			long[] t = measure(factory, hits, misses);
+			for (int j = 0; j < 3; j++)
+				total[j] += t[j];
+		}
+		double ops = (double) MEASURE_ROUNDS * hits.length;
+		System.out.printf("%s\t%s\t%.1f\t%.1f\t%.1f%n", name, keys, total[0] / ops, total[1] / ops, total[2] / ops);
+	}
+
+	static <K> long[] measure(Supplier<Map<K, Integer>> factory, K[] hits, K[] misses) {
+		Map<K, Integer> map = factory.get();
+		long start = System.nanoTime();
+		for (int i = 0; i < hits.length; i++)
+			map.put(hits[i], i);
+		long put = System.nanoTime() - start;
+
+		int s = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < hits.length; i++)
+			s += map.get(hits[i]);
+		long hit = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < misses.length; i++)
+			if (map.get(misses[i]) != null)
+				s++;
+		long miss = System.nanoTime() - start;
+		sink += s;
+		return new long[] { put, hit, miss };
+	}
+}
@@ -0,0 +1,568 @@
+package com.machao.learning.collection.LinkedList;
+
+import java.util.AbstractSequentialList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 展开链表(unrolled linked list)，实现与LinkedList相同的List和Deque接口；
+ * 每个节点用数组保存最多NODE_CAPACITY个元素，元素存放在items[start, end)中，
+ * 与LinkedList每个元素一个Node相比，节点对象和prev/next指针的数量减少为1/NODE_CAPACITY，遍历时顺序访问数组；
+ * addFirst/addLast/pollFirst/pollLast只修改头尾节点数组的下标，节点满或空时才分配或释放节点，都是O(1)；
+ * 在中间插入元素时节点满了则分裂为两个节点，删除元素后节点为空则从链表中删除；
+ * 按下标访问时按节点跳过，比LinkedList.node(int)少走NODE_CAPACITY倍的节点；
+ * 非线程安全。
+ */
+public class UnrolledLinkedList<E>
+    extends AbstractSequentialList<E>
+    implements List<E>, Deque<E>
+{
+    /**
+     * 每个节点的数组长度
+     */
+    static final int NODE_CAPACITY = 64;
+
+    /**
+     * 包含的元素数
+     */
+    int size;
+
+    /**
+     * 头节点
+     */
+    Node first;
+
+    /**
+     * 尾节点
+     */
+    Node last;
+
+    /**
+     * 构造一个空链表
+     */
+    public UnrolledLinkedList() {
+    }
+
+    /**
+     * 按照集合的迭代器返回的顺序构造一个包含指定集合元素的链表
+     */
+    public UnrolledLinkedList(Collection<? extends E> c) {
+        this();
+        addAll(c);
+    }
+
+    /**
+     * 链表节点，元素存放在items[start, end)中，链表中的节点都不为空
+     */
+    static final class Node {
+        final Object[] items = new Object[NODE_CAPACITY];
+        int start, end;
+        Node prev, next;
+
+        Node(int index) {
+            start = end = index;
+        }
+    }
+
+    /* ---------------- 头尾操作 -------------- */
+
+    /**
+     * 链接e为链表的第一个元素，头节点前面没有空位时在前面链接一个新节点，新节点从数组尾部开始填充
+     */
+    private void linkFirst(E e) {
+        Node f = first;
+        if (f == null || f.start == 0) {
+            Node x = new Node(NODE_CAPACITY);
+            x.next = f;
+            if (f == null)
+                last = x;
+            else
+                f.prev = x;
+            first = f = x;
+        }
+        f.items[--f.start] = e;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * 链接e为链表的最后一个元素，尾节点后面没有空位时在后面链接一个新节点，新节点从数组头部开始填充
+     */
+    private void linkLast(E e) {
+        Node l = last;
+        if (l == null || l.end == NODE_CAPACITY) {
+            Node x = new Node(0);
+            x.prev = l;
+            if (l == null)
+                first = x;
+            else
+                l.next = x;
+            last = l = x;
+        }
+        l.items[l.end++] = e;
+        size++;
+        modCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E unlinkFirst() {
+        Node f = first;
+        int i = f.start;
+        E element = (E) f.items[i];
+        f.items[i] = null; // help GC
+        if ((f.start = i + 1) == f.end)
+            unlinkNode(f);
+        size--;
+        modCount++;
+        return element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E unlinkLast() {
+        Node l = last;
+        int i = l.end - 1;
+        E element = (E) l.items[i];
+        l.items[i] = null; // help GC
+        if ((l.end = i) == l.start)
+            unlinkNode(l);
+        size--;
+        modCount++;
+        return element;
+    }
+
+    /**
+     * 从链表中删除空节点x
+     */
+    private void unlinkNode(Node x) {
+        Node prev = x.prev, next = x.next;
+        if (prev == null)
+            first = next;
+        else
+            prev.next = next;
+        if (next == null)
+            last = prev;
+        else
+            next.prev = prev;
+        x.prev = x.next = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E getFirst() {
+        final Node f = first;
+        if (f == null)
+            throw new NoSuchElementException();
+        return (E) f.items[f.start];
+    }
+
+    @SuppressWarnings("unchecked")
+    public E getLast() {
+        final Node l = last;
+        if (l == null)
+            throw new NoSuchElementException();
+        return (E) l.items[l.end - 1];
+    }
+
+    public E removeFirst() {
+        if (first == null)
+            throw new NoSuchElementException();
+        return unlinkFirst();
+    }
+
+    public E removeLast() {
+        if (last == null)
+            throw new NoSuchElementException();
+        return unlinkLast();
+    }
+
+    public void addFirst(E e) {
+        linkFirst(e);
+    }
+
+    public void addLast(E e) {
+        linkLast(e);
+    }
+
+    public boolean add(E e) {
+        linkLast(e);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 释放所有节点
+     */
+    public void clear() {
+        for (Node x = first; x != null; ) {
+            Node next = x.next;
+            x.prev = x.next = null;
+            x = next;
+        }
+        first = last = null;
+        size = 0;
+        modCount++;
+    }
+
+    /* ---------------- Queue/Deque操作 -------------- */
+
+    public E peek() {
+        return (first == null) ? null : getFirst();
+    }
+
+    public E element() {
+        return getFirst();
+    }
+
+    public E poll() {
+        return (first == null) ? null : unlinkFirst();
+    }
+
+    public E remove() {
+        return removeFirst();
+    }
+
+    public boolean offer(E e) {
+        return add(e);
+    }
+
+    public boolean offerFirst(E e) {
+        addFirst(e);
+        return true;
+    }
+
+    public boolean offerLast(E e) {
+        addLast(e);
+        return true;
+    }
+
+    public E peekFirst() {
+        return (first == null) ? null : getFirst();
+    }
+
+    public E peekLast() {
+        return (last == null) ? null : getLast();
+    }
+
+    public E pollFirst() {
+        return (first == null) ? null : unlinkFirst();
+    }
+
+    public E pollLast() {
+        return (last == null) ? null : unlinkLast();
+    }
+
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    public E pop() {
+        return removeFirst();
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        return remove(o);
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        for (Iterator<E> it = descendingIterator(); it.hasNext(); ) {
+            if (Objects.equals(o, it.next())) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* ---------------- 按下标访问 -------------- */
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkElementIndex(index);
+        ListItr it = new ListItr(index);
+        return (E) it.node.items[it.pos];
+    }
+
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkElementIndex(index);
+        ListItr it = new ListItr(index);
+        E oldVal = (E) it.node.items[it.pos];
+        it.node.items[it.pos] = element;
+        return oldVal;
+    }
+
+    private void checkElementIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        return new ListItr(index);
+    }
+
+    public Iterator<E> descendingIterator() {
+        final ListItr itr = new ListItr(size);
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return itr.hasPrevious();
+            }
+            public E next() {
+                return itr.previous();
+            }
+            public void remove() {
+                itr.remove();
+            }
+        };
+    }
+
+    /**
+     * 游标为(node, pos)，下一个元素是node.items[pos]；pos == node.end时下一个元素在后一个节点中，
+     * 在next()/previous()时再移动到相邻节点；链表为空时node为null
+     */
+    private class ListItr implements ListIterator<E> {
+        Node node;
+        int pos;
+        private Node lastNode;
+        private int lastPos;
+        private boolean lastWasNext;
+        private int nextIndex;
+        private int expectedModCount = modCount;
+
+        /**
+         * 定位到index，从较近的一端按节点跳过
+         */
+        ListItr(int index) {
+            nextIndex = index;
+            if (index < (size >> 1)) {
+                Node x = first; int n;
+                while (index >= (n = x.end - x.start)) {
+                    index -= n;
+                    x = x.next;
+                }
+                node = x;
+                pos = x.start + index;
+            } else if ((node = last) != null) {
+                Node x = last; int back = size - index, n;
+                while (back > (n = x.end - x.start)) {
+                    back -= n;
+                    x = x.prev;
+                }
+                node = x;
+                pos = x.end - back;
+            }
+        }
+
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            checkForComodification();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (pos == node.end) {
+                node = node.next;
+                pos = node.start;
+            }
+            lastNode = node;
+            lastPos = pos++;
+            lastWasNext = true;
+            nextIndex++;
+            return (E) lastNode.items[lastPos];
+        }
+
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E previous() {
+            checkForComodification();
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            if (pos == node.start) {
+                node = node.prev;
+                pos = node.end;
+            }
+            lastNode = node;
+            lastPos = --pos;
+            lastWasNext = false;
+            nextIndex--;
+            return (E) lastNode.items[lastPos];
+        }
+
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        /**
+         * 删除lastNode.items[lastPos]，把后面的元素前移一位；节点为空时从链表中删除并把游标移到相邻节点
+         */
+        public void remove() {
+            checkForComodification();
+            Node x = lastNode;
+            if (x == null)
+                throw new IllegalStateException();
+            int p = lastPos;
+            System.arraycopy(x.items, p + 1, x.items, p, x.end - p - 1);
+            x.items[--x.end] = null; // help GC
+            if (lastWasNext) {
+                // 游标在被删除元素之后
+                nextIndex--;
+                if (node == x)
+                    pos--;
+            }
+            if (x.start == x.end) {
+                Node prev = x.prev, next = x.next;
+                unlinkNode(x);
+                if (node == x) {
+                    if (next != null) {
+                        node = next;
+                        pos = next.start;
+                    } else if ((node = prev) != null)
+                        pos = prev.end;
+                }
+            }
+            size--;
+            modCount++;
+            lastNode = null;
+            expectedModCount++;
+        }
+
+        public void set(E e) {
+            if (lastNode == null)
+                throw new IllegalStateException();
+            checkForComodification();
+            lastNode.items[lastPos] = e;
+        }
+
+        /**
+         * 在游标处插入e：节点数组后面有空位时后移元素，前面有空位时前移元素，都没有时把节点分裂为两半
+         */
+        public void add(E e) {
+            checkForComodification();
+            Node x = node; int p = pos;
+            if (x == null) {
+                linkLast(e);
+                node = last;
+                pos = node.end;
+            } else {
+                if (x.end == NODE_CAPACITY && x.start == 0) {
+                    // 分裂：后一半元素移到新节点
+                    int mid = NODE_CAPACITY >>> 1;
+                    Node y = new Node(0);
+                    System.arraycopy(x.items, mid, y.items, 0, NODE_CAPACITY - mid);
+                    for (int i = mid; i < NODE_CAPACITY; i++)
+                        x.items[i] = null;
+                    y.end = NODE_CAPACITY - mid;
+                    x.end = mid;
+                    y.prev = x;
+                    y.next = x.next;
+                    if (x.next == null)
+                        last = y;
+                    else
+                        x.next.prev = y;
+                    x.next = y;
+                    if (p > mid) {
+                        x = y;
+                        p -= mid;
+                    }
+                }
+                if (x.end < NODE_CAPACITY) {
+                    System.arraycopy(x.items, p, x.items, p + 1, x.end - p);
+                    x.end++;
+                } else {
+                    System.arraycopy(x.items, x.start, x.items, x.start - 1, p - x.start);
+                    x.start--;
+                    p--;
+                }
+                x.items[p] = e;
+                node = x;
+                pos = p + 1;
+                size++;
+                modCount++;
+            }
+            lastNode = null;
+            nextIndex++;
+            expectedModCount++;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int remaining = size - nextIndex;
+            if (remaining <= 0)
+                return;
+            Node x = node; int p = pos;
+            while (remaining > 0 && modCount == expectedModCount) {
+                if (p == x.end) {
+                    x = x.next;
+                    p = x.start;
+                }
+                int n = Math.min(remaining, x.end - p);
+                Object[] items = x.items;
+                for (int i = p; i < p + n; i++)
+                    action.accept((E) items[i]);
+                p += n;
+                remaining -= n;
+                lastNode = x;
+                lastPos = p - 1;
+                lastWasNext = true;
+            }
+            node = x;
+            pos = p;
+            nextIndex = size - remaining;
+            checkForComodification();
+        }
+
+        final void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ---------------- 批量操作 -------------- */
+
+    /**
+     * 按节点顺序遍历数组
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        for (Node x = first; x != null && modCount == expectedModCount; x = x.next) {
+            Object[] items = x.items;
+            for (int i = x.start, end = x.end; i < end; i++)
+                action.accept((E) items[i]);
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    public Object[] toArray() {
+        Object[] result = new Object[size];
+        int i = 0;
+        for (Node x = first; x != null; x = x.next) {
+            int n = x.end - x.start;
+            System.arraycopy(x.items, x.start, result, i, n);
+            i += n;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.machao.learning.collection.LinkedList;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * UnrolledLinkedList与LinkedList的对比测试
+ *
+ * 场景：
+ * 1. fifo：作为队列先offer()再poll()全部元素，LinkedList走linkLast()/unlinkFirst()
+ * 2. iterate：for-each遍历全部元素
+ * 3. get：随机下标的get(int)，LinkedList走node(int)逐个节点查找，元素数量较少以免测试时间过长
+ * 先预热再计时，输出每次操作的平均纳秒数
+ */
+public class UnrolledLinkedListBenchmark {
+
+	// 队列和遍历场景的元素数量
+	static final int SIZE = 1 << 20;
+
+	// 随机访问场景的元素数量与访问次数
+	static final int GET_SIZE = 1 << 14;
+	static final int GET_OPS = 1 << 14;
+
+	// 预热轮数与计时轮数
+	static final int WARMUP_ROUNDS = 5;
+	static final int MEASURE_ROUNDS = 5;
+
+	// 防止JIT消除结果
+	static long sink;
+
+	public static void main(String[] args) {
+		Integer[] values = new Integer[SIZE];
+		for (int i = 0; i < SIZE; i++)
+			values[i] = i;
+		int[] indexes = new int[GET_OPS];
+		Random random = new Random(42);
+		for (int i = 0; i < GET_OPS; i++)
+			indexes[i] = random.nextInt(GET_SIZE);
+
+		System.out.println("list\tfifo(ns/op)\titerate(ns/op)\tget(ns/op)");
+		run("LinkedList", LinkedList::new, values, indexes);
+		run("UnrolledLinkedList", UnrolledLinkedList::new, values, indexes);
+	}
+
+	/**
+	 * 预热后计时，分别测试fifo、遍历和随机访问
+	 */
+	static <L extends List<Integer> & Deque<Integer>> void run(String name, Supplier<L> factory, Integer[] values, int[] indexes) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			measure(factory, values, indexes);
+		long[] total = new long[3];
+		for (int i = 0; i < MEASURE_ROUNDS; i++) {
+			long[] t = measure(factory, values, indexes);
+			for (int j = 0; j < 3; j++)
+				total[j] += t[j];
+		}
+		System.out.printf("%s\t%.1f\t%.1f\t%.1f%n", name,
+				total[0] / ((double) MEASURE_ROUNDS * values.length * 2),
+				total[1] / ((double) MEASURE_ROUNDS * values.length),
+				total[2] / ((double) MEASURE_ROUNDS * indexes.length));
+	}
+
+	static <L extends List<Integer> & Deque<Integer>> long[] measure(Supplier<L> factory, Integer[] values, int[] indexes) {
+		long s = 0;
+		L queue = factory.get();
+		long start = System.nanoTime();
+		for (Integer v : values)
+			queue.offer(v);
+		for (Integer v; (v = queue.poll()) != null;)
+			s += v;
+		long fifo = System.nanoTime() - start;
+
+		L list = factory.get();
+		for (Integer v : values)
+			list.add(v);
+		start = System.nanoTime();
+		for (Integer v : list)
+			s += v;
+		long iterate = System.nanoTime() - start;
+
+		list.clear();
+		for (int i = 0; i < GET_SIZE; i++)
+			list.add(values[i]);
+		start = System.nanoTime();
+		for (int index : indexes)
+			s += list.get(index);
+		long get = System.nanoTime() - start;
+		sink += s;
+		return new long[] { fifo, iterate, get };
+	}
+}
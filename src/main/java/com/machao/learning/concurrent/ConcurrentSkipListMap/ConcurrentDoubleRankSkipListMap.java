@@ -0,0 +1,180 @@
+package com.machao.learning.concurrent.ConcurrentSkipListMap;
+
+import java.util.stream.Stream;
+
+import com.machao.learning.concurrent.ConcurrentSkipListMap.ConcurrentLongRankSkipListMap.LongEntry;
+
+/**
+ * key为double的ConcurrentRankSkipListMap，适合按分数排序的排行榜(Redis有序集合中的score)
+ *
+ * double按IEEE 754的位模式编码成long后保存在ConcurrentLongRankSkipListMap中：
+ * 正数的位模式与数值的大小顺序相同，负数把除符号位外的位取反后顺序也相同，
+ * 编码后按long比较的结果与Double.compare()一致(-0.0 < 0.0，NaN最大)，
+ * 因此查找、排名、范围查询都不需要装箱。
+ * 不允许null值。
+ */
+public class ConcurrentDoubleRankSkipListMap<V> {
+
+    /**
+     * 查询返回的不可变元素
+     */
+    public static final class DoubleEntry<V> {
+        private final double key;
+        private final V value;
+
+        DoubleEntry(double key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public double getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    final ConcurrentLongRankSkipListMap<V> map = new ConcurrentLongRankSkipListMap<>();
+
+    /**
+     * 把double编码成保持顺序的long，编码与解码是同一个运算
+     */
+    static long encode(double key) {
+        long bits = Double.doubleToLongBits(key);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    static double decode(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    static <V> DoubleEntry<V> decode(LongEntry<V> e) {
+        return (e == null) ? null : new DoubleEntry<>(decode(e.getKey()), e.getValue());
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public V get(double key) {
+        return map.get(encode(key));
+    }
+
+    public V getOrDefault(double key, V defaultValue) {
+        return map.getOrDefault(encode(key), defaultValue);
+    }
+
+    public boolean containsKey(double key) {
+        return map.containsKey(encode(key));
+    }
+
+    public V put(double key, V value) {
+        return map.put(encode(key), value);
+    }
+
+    public V putIfAbsent(double key, V value) {
+        return map.putIfAbsent(encode(key), value);
+    }
+
+    public V remove(double key) {
+        return map.remove(encode(key));
+    }
+
+    public boolean remove(double key, Object value) {
+        return map.remove(encode(key), value);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public DoubleEntry<V> firstEntry() {
+        return decode(map.firstEntry());
+    }
+
+    public DoubleEntry<V> lastEntry() {
+        return decode(map.lastEntry());
+    }
+
+    public DoubleEntry<V> floorEntry(double key) {
+        return decode(map.floorEntry(encode(key)));
+    }
+
+    public DoubleEntry<V> lowerEntry(double key) {
+        return decode(map.lowerEntry(encode(key)));
+    }
+
+    public DoubleEntry<V> ceilingEntry(double key) {
+        return decode(map.ceilingEntry(encode(key)));
+    }
+
+    public DoubleEntry<V> higherEntry(double key) {
+        return decode(map.higherEntry(encode(key)));
+    }
+
+    /**
+     * key按从小到大的排名(从0开始)，key不存在时返回-1
+     */
+    public int rank(double key) {
+        return map.rank(encode(key));
+    }
+
+    public DoubleEntry<V> entryAtRank(int index) {
+        return decode(map.entryAtRank(index));
+    }
+
+    /**
+     * key在[from, to]之间的元素个数，fromInclusive/toInclusive为false时不包含边界
+     */
+    public int countRange(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return map.countRange(encode(from), fromInclusive, encode(to), toInclusive);
+    }
+
+    public Stream<DoubleEntry<V>> entriesByRank(int fromIndex, int toIndex) {
+        return map.entriesByRank(fromIndex, toIndex).map(ConcurrentDoubleRankSkipListMap::decode);
+    }
+
+    public Stream<DoubleEntry<V>> subMap(double from, boolean fromInclusive, double to, boolean toInclusive) {
+        return map.subMap(encode(from), fromInclusive, encode(to), toInclusive)
+            .map(ConcurrentDoubleRankSkipListMap::decode);
+    }
+
+    public Stream<DoubleEntry<V>> entries() {
+        return map.entries().map(ConcurrentDoubleRankSkipListMap::decode);
+    }
+
+    /**
+     * 接收double类型的key和value
+     */
+    @FunctionalInterface
+    public interface DoubleObjConsumer<V> {
+        void accept(double key, V value);
+    }
+
+    public void forEach(DoubleObjConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        map.forEach((k, v) -> action.accept(decode(k), v));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,554 @@
+package com.machao.learning.concurrent.ConcurrentSkipListMap;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * key为long的ConcurrentRankSkipListMap
+ *
+ * 结构和并发方式与ConcurrentRankSkipListMap相同，区别：
+ * 1. 节点直接保存long类型的key，比较时不需要Comparator和拆箱，每个元素少一个Long对象
+ * 2. 查询结果用LongEntry返回，key为基本类型
+ * 时间索引(key为时间戳)、按分数排序(key为ConcurrentDoubleRankSkipListMap编码后的double)等场景使用。
+ * 不允许null值。
+ */
+public class ConcurrentLongRankSkipListMap<V> {
+
+    static final int MAX_LEVEL = ConcurrentRankSkipListMap.MAX_LEVEL;
+
+    /**
+     * 跳表节点，head的key没有意义
+     */
+    static final class Node<V> {
+        final long key;
+        volatile V value;
+        final AtomicReferenceArray<Node<V>> next;
+        final int[] span;
+
+        Node(long key, V value, int level) {
+            this.key = key;
+            this.value = value;
+            this.next = new AtomicReferenceArray<Node<V>>(level);
+            this.span = new int[level];
+        }
+    }
+
+    /**
+     * 查询返回的不可变元素
+     */
+    public static final class LongEntry<V> {
+        private final long key;
+        private final V value;
+
+        LongEntry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    final Node<V> head = new Node<>(0L, null, MAX_LEVEL);
+
+    final StampedLock lock = new StampedLock();
+
+    volatile int level = 1;
+
+    volatile int size;
+
+    private final Node<V>[] update;
+    private final int[] rank = new int[MAX_LEVEL];
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongRankSkipListMap() {
+        this.update = (Node<V>[])new Node<?>[MAX_LEVEL];
+    }
+
+    /* ---------------- Utilities -------------- */
+
+    static final <V> Node<V> nextAt(Node<V> x, int i) {
+        return x.next.get(i);
+    }
+
+    static final <V> void setNextAt(Node<V> x, int i, Node<V> v) {
+        x.next.set(i, v);
+    }
+
+    static final int randomLevel() {
+        return ConcurrentRankSkipListMap.randomLevel();
+    }
+
+    /* ---------------- Lock-free traversal -------------- */
+
+    /**
+     * 返回最后一个key小于(inclusive时小于等于)给定key的节点，没有时返回head
+     */
+    final Node<V> findLast(long key, boolean inclusive) {
+        Node<V> x = head, n;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((n = nextAt(x, i)) != null &&
+                   (n.key < key || (inclusive && n.key == key)))
+                x = n;
+        }
+        return x;
+    }
+
+    /**
+     * 返回第一个key大于(inclusive时大于等于)给定key且没有被删除的节点
+     */
+    final Node<V> findFirst(long key, boolean inclusive) {
+        Node<V> n = nextAt(findLast(key, !inclusive), 0);
+        while (n != null && n.value == null)
+            n = nextAt(n, 0);
+        return n;
+    }
+
+    final Node<V> findTail() {
+        for (;;) {
+            Node<V> x = head, n;
+            for (int i = level - 1; i >= 0; --i) {
+                while ((n = nextAt(x, i)) != null)
+                    x = n;
+            }
+            if (x == head || x.value != null)
+                return (x == head) ? null : x;
+        }
+    }
+
+    final LongEntry<V> lastEntryOf(long key, boolean inclusive) {
+        for (;;) {
+            Node<V> x = findLast(key, inclusive);
+            if (x == head)
+                return null;
+            V v = x.value;
+            if (v != null)
+                return new LongEntry<>(x.key, v);
+        }
+    }
+
+    final LongEntry<V> firstEntryOf(Node<V> n) {
+        for (; n != null; n = nextAt(n, 0)) {
+            V v = n.value;
+            if (v != null)
+                return new LongEntry<>(n.key, v);
+        }
+        return null;
+    }
+
+    /* ---------------- Rank (optimistic read) -------------- */
+
+    /**
+     * key小于(inclusive时小于等于)给定key的节点数，需要在读锁或乐观读中调用
+     */
+    final int countLess(long key, boolean inclusive) {
+        Node<V> x = head, n;
+        int r = 0;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((n = nextAt(x, i)) != null &&
+                   (n.key < key || (inclusive && n.key == key))) {
+                r += x.span[i];
+                x = n;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 排名为index(从0开始)的节点，不存在时返回null，需要在读锁或乐观读中调用
+     */
+    final Node<V> nodeAtRank(int index) {
+        Node<V> x = head, n;
+        int traversed = 0, target = index + 1;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((n = nextAt(x, i)) != null && traversed + x.span[i] <= target) {
+                traversed += x.span[i];
+                x = n;
+            }
+            if (traversed == target)
+                return x;
+        }
+        return null;
+    }
+
+    /**
+     * 按排名定位遍历的起点
+     */
+    final Node<V> startAtRank(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        if (toIndex == fromIndex)
+            return null;
+        long stamp = lock.tryOptimisticRead();
+        Node<V> start = nodeAtRank(fromIndex);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                start = nodeAtRank(fromIndex);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return start;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 不加锁，返回key对应的value，不存在时返回null
+     */
+    public V get(long key) {
+        Node<V> n = nextAt(findLast(key, false), 0);
+        return (n != null && n.key == key) ? n.value : null;
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public V put(long key, V value) {
+        return doPut(key, value, false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        return doPut(key, value, true);
+    }
+
+    public V remove(long key) {
+        return doRemove(key, null);
+    }
+
+    public boolean remove(long key, Object value) {
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * 删除所有元素，并发的读线程可能继续看到旧的节点
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < MAX_LEVEL; ++i) {
+                setNextAt(head, i, null);
+                head.span[i] = 0;
+            }
+            level = 1;
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public LongEntry<V> firstEntry() {
+        return firstEntryOf(nextAt(head, 0));
+    }
+
+    public LongEntry<V> lastEntry() {
+        for (;;) {
+            Node<V> x = findTail();
+            if (x == null)
+                return null;
+            V v = x.value;
+            if (v != null)
+                return new LongEntry<>(x.key, v);
+        }
+    }
+
+    public LongEntry<V> floorEntry(long key) {
+        return lastEntryOf(key, true);
+    }
+
+    public LongEntry<V> lowerEntry(long key) {
+        return lastEntryOf(key, false);
+    }
+
+    public LongEntry<V> ceilingEntry(long key) {
+        return firstEntryOf(findFirst(key, true));
+    }
+
+    public LongEntry<V> higherEntry(long key) {
+        return firstEntryOf(findFirst(key, false));
+    }
+
+    /**
+     * key按从小到大的排名(从0开始)，key不存在时返回-1
+     */
+    public int rank(long key) {
+        long stamp = lock.tryOptimisticRead();
+        int r = rankOf(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                r = rankOf(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return r;
+    }
+
+    private int rankOf(long key) {
+        Node<V> n = nextAt(findLast(key, false), 0);
+        if (n == null || n.key != key)
+            return -1;
+        return countLess(key, false);
+    }
+
+    /**
+     * 排名为index(从0开始)的元素，index超出范围时返回null
+     */
+    public LongEntry<V> entryAtRank(int index) {
+        if (index < 0)
+            return null;
+        long stamp = lock.tryOptimisticRead();
+        Node<V> n = nodeAtRank(index);
+        long k = (n == null) ? 0L : n.key;
+        V v = (n == null) ? null : n.value;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                n = nodeAtRank(index);
+                k = (n == null) ? 0L : n.key;
+                v = (n == null) ? null : n.value;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (n == null) ? null : new LongEntry<>(k, v);
+    }
+
+    /**
+     * key在[from, to]之间的元素个数，fromInclusive/toInclusive为false时不包含边界
+     */
+    public int countRange(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        long stamp = lock.tryOptimisticRead();
+        int count = countLess(to, toInclusive) - countLess(from, !fromInclusive);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = countLess(to, toInclusive) - countLess(from, !fromInclusive);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return Math.max(count, 0);
+    }
+
+    /**
+     * 按key从小到大，排名在[fromIndex, toIndex)之间的元素，弱一致
+     */
+    public Stream<LongEntry<V>> entriesByRank(int fromIndex, int toIndex) {
+        return ConcurrentRankSkipListMap.stream(
+            new EntryIterator<>(startAtRank(fromIndex, toIndex), Long.MAX_VALUE, true, toIndex - fromIndex));
+    }
+
+    /**
+     * key在from和to之间的元素，按key从小到大，弱一致
+     */
+    public Stream<LongEntry<V>> subMap(long from, boolean fromInclusive, long to, boolean toInclusive) {
+        return ConcurrentRankSkipListMap.stream(
+            new EntryIterator<>(findFirst(from, fromInclusive), to, toInclusive, Integer.MAX_VALUE));
+    }
+
+    public Stream<LongEntry<V>> entries() {
+        return ConcurrentRankSkipListMap.stream(
+            new EntryIterator<>(nextAt(head, 0), Long.MAX_VALUE, true, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 接收long类型的key和value
+     */
+    @FunctionalInterface
+    public interface LongObjConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    public void forEach(LongObjConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Node<V> n = nextAt(head, 0); n != null; n = nextAt(n, 0)) {
+            V v = n.value;
+            if (v != null)
+                action.accept(n.key, v);
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    /* ---------------- Writes (under write lock) -------------- */
+
+    private Node<V> findUpdate(long key) {
+        Node<V>[] update = this.update;
+        int[] rank = this.rank;
+        Node<V> x = head, n;
+        int lvl = level;
+        for (int i = lvl - 1; i >= 0; --i) {
+            rank[i] = (i == lvl - 1) ? 0 : rank[i + 1];
+            while ((n = x.next.get(i)) != null && n.key < key) {
+                rank[i] += x.span[i];
+                x = n;
+            }
+            update[i] = x;
+        }
+        return x.next.get(0);
+    }
+
+    private V doPut(long key, V value, boolean onlyIfAbsent) {
+        if (value == null)
+            throw new NullPointerException();
+        Node<V>[] update = this.update;
+        int[] rank = this.rank;
+        long stamp = lock.writeLock();
+        try {
+            Node<V> n = findUpdate(key);
+            if (n != null && n.key == key) {
+                V old = n.value;
+                if (!onlyIfAbsent)
+                    n.value = value;
+                return old;
+            }
+            int lvl = randomLevel(), cur = level;
+            if (lvl > cur) {
+                for (int i = cur; i < lvl; ++i) {
+                    rank[i] = 0;
+                    update[i] = head;
+                    head.span[i] = size;
+                }
+            }
+            Node<V> x = new Node<>(key, value, lvl);
+            for (int i = 0; i < lvl; ++i) {
+                x.next.lazySet(i, update[i].next.get(i));
+                x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+                update[i].span[i] = (rank[0] - rank[i]) + 1;
+            }
+            for (int i = 0; i < lvl; ++i)
+                setNextAt(update[i], i, x);
+            for (int i = lvl; i < cur; ++i)
+                update[i].span[i]++;
+            if (lvl > cur)
+                level = lvl;
+            size = size + 1;
+            return null;
+        } finally {
+            for (int i = 0; i < MAX_LEVEL; ++i)
+                update[i] = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private V doRemove(long key, Object value) {
+        Node<V>[] update = this.update;
+        long stamp = lock.writeLock();
+        try {
+            Node<V> x = findUpdate(key);
+            if (x == null || x.key != key)
+                return null;
+            V old = x.value;
+            if (value != null && !value.equals(old))
+                return null;
+            x.value = null;
+            int cur = level;
+            for (int i = 0; i < cur; ++i) {
+                if (update[i].next.get(i) == x) {
+                    update[i].span[i] += x.span[i] - 1;
+                    setNextAt(update[i], i, x.next.get(i));
+                }
+                else
+                    update[i].span[i]--;
+            }
+            while (cur > 1 && head.next.get(cur - 1) == null)
+                cur--;
+            level = cur;
+            size = size - 1;
+            return old;
+        } finally {
+            for (int i = 0; i < MAX_LEVEL; ++i)
+                update[i] = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * 沿最底层遍历，跳过已经删除的节点；到达上界hi或取够limit个元素时结束
+     */
+    static final class EntryIterator<V> implements Iterator<LongEntry<V>> {
+        final long hi;
+        final boolean hiInclusive;
+        int remaining;
+        Node<V> next;
+        V nextValue;
+
+        EntryIterator(Node<V> start, long hi, boolean hiInclusive, int limit) {
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.remaining = limit;
+            advance(start);
+        }
+
+        private void advance(Node<V> n) {
+            for (; n != null && remaining > 0; n = nextAt(n, 0)) {
+                if (n.key > hi || (n.key == hi && !hiInclusive))
+                    break;
+                V v = n.value;
+                if (v != null) {
+                    next = n;
+                    nextValue = v;
+                    remaining--;
+                    return;
+                }
+            }
+            next = null;
+            nextValue = null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public LongEntry<V> next() {
+            Node<V> n = next;
+            if (n == null)
+                throw new NoSuchElementException();
+            LongEntry<V> e = new LongEntry<>(n.key, nextValue);
+            advance(nextAt(n, 0));
+            return e;
+        }
+    }
+}
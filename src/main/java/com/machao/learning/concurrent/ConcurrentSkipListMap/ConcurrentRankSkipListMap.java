@@ -0,0 +1,636 @@
+package com.machao.learning.concurrent.ConcurrentSkipListMap;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 支持按排名查询的并发有序Map(跳表)
+ *
+ * 结构与Redis有序集合的zskiplist相同：每个节点有1~32层forward指针，层数以1/4的概率递增，
+ * 每层指针记录跨过的节点数(span)，查找路径上的span相加就是排名，
+ * 因此rank()、entryAtRank()、countRange()与get()一样是O(log n)；
+ * 并发：
+ * 1. put/remove由StampedLock的写锁串行执行，插入和删除节点时需要同时修改多层指针和span
+ * 2. get/floor/ceiling/范围遍历不加锁：forward指针用volatile读写，新节点先设置好自己的指针再从低层到高层链接，
+ *    删除时先把value置为null再断开，读线程只沿指针前进，不会看到不完整的节点
+ * 3. 排名相关的查询需要span与指针一致，先用乐观读(tryOptimisticRead)计算，期间有写操作时再加读锁重新计算
+ * 范围遍历和按排名遍历是弱一致的，与ConcurrentSkipListMap的迭代器相同。
+ * 不允许null键和null值。
+ */
+public class ConcurrentRankSkipListMap<K,V> {
+
+    /**
+     * 最大层数
+     */
+    static final int MAX_LEVEL = 32;
+
+    /**
+     * 跳表节点，head的key为null
+     */
+    static final class Node<K,V> {
+        final K key;
+        volatile V value;
+        // 每层的后继节点，按volatile读写
+        final AtomicReferenceArray<Node<K,V>> next;
+        // 每层到后继节点跨过的节点数，只在写锁内修改
+        final int[] span;
+
+        Node(K key, V value, int level) {
+            this.key = key;
+            this.value = value;
+            this.next = new AtomicReferenceArray<Node<K,V>>(level);
+            this.span = new int[level];
+        }
+    }
+
+    final Comparator<? super K> comparator;
+
+    final Node<K,V> head = new Node<>(null, null, MAX_LEVEL);
+
+    final StampedLock lock = new StampedLock();
+
+    /**
+     * 当前的最高层数
+     */
+    volatile int level = 1;
+
+    volatile int size;
+
+    // 写锁内查找时使用的数组：每层最后一个小于key的节点，以及该节点的排名
+    private final Node<K,V>[] update;
+    private final int[] rank = new int[MAX_LEVEL];
+
+    public ConcurrentRankSkipListMap() {
+        this(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentRankSkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.update = (Node<K,V>[])new Node<?,?>[MAX_LEVEL];
+    }
+
+    /* ---------------- Utilities -------------- */
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final int cpr(Comparator c, Object x, Object y) {
+        return (c != null) ? c.compare(x, y) : ((Comparable)x).compareTo(y);
+    }
+
+    static final <K,V> Node<K,V> nextAt(Node<K,V> x, int i) {
+        return x.next.get(i);
+    }
+
+    static final <K,V> void setNextAt(Node<K,V> x, int i, Node<K,V> v) {
+        x.next.set(i, v);
+    }
+
+    /**
+     * 随机层数，每层以1/4的概率继续增加
+     */
+    static final int randomLevel() {
+        int r = ThreadLocalRandom.current().nextInt();
+        int level = 1;
+        while ((r & 3) == 0 && level < MAX_LEVEL) {
+            level++;
+            r >>>= 2;
+        }
+        return level;
+    }
+
+    /* ---------------- Lock-free traversal -------------- */
+
+    /**
+     * 返回最后一个key小于(inclusive时小于等于)给定key的节点，没有时返回head；
+     * 返回的节点可能正在被删除(value为null)
+     */
+    final Node<K,V> findLast(Object key, boolean inclusive) {
+        Comparator<? super K> cmp = comparator;
+        Node<K,V> x = head, n;
+        for (int i = level - 1; i >= 0; --i) {
+            int c;
+            while ((n = nextAt(x, i)) != null &&
+                   ((c = cpr(cmp, n.key, key)) < 0 || (inclusive && c == 0)))
+                x = n;
+        }
+        return x;
+    }
+
+    /**
+     * 返回第一个key大于(inclusive时大于等于)给定key且没有被删除的节点
+     */
+    final Node<K,V> findFirst(Object key, boolean inclusive) {
+        Node<K,V> n = nextAt(findLast(key, !inclusive), 0);
+        while (n != null && n.value == null)
+            n = nextAt(n, 0);
+        return n;
+    }
+
+    /**
+     * 返回最后一个没有被删除的节点
+     */
+    final Node<K,V> findTail() {
+        for (;;) {
+            Node<K,V> x = head, n;
+            for (int i = level - 1; i >= 0; --i) {
+                while ((n = nextAt(x, i)) != null)
+                    x = n;
+            }
+            if (x == head || x.value != null)
+                return (x == head) ? null : x;
+            // 最后一个节点正在被删除，重新查找
+        }
+    }
+
+    /**
+     * 向前查找的结果正在被删除时重新查找
+     */
+    final Map.Entry<K,V> lastEntryOf(Object key, boolean inclusive) {
+        for (;;) {
+            Node<K,V> x = findLast(key, inclusive);
+            if (x == head)
+                return null;
+            V v = x.value;
+            if (v != null)
+                return new AbstractMap.SimpleImmutableEntry<>(x.key, v);
+        }
+    }
+
+    final Map.Entry<K,V> firstEntryOf(Node<K,V> n) {
+        for (; n != null; n = nextAt(n, 0)) {
+            V v = n.value;
+            if (v != null)
+                return new AbstractMap.SimpleImmutableEntry<>(n.key, v);
+        }
+        return null;
+    }
+
+    /* ---------------- Rank (optimistic read) -------------- */
+
+    /**
+     * key小于(inclusive时小于等于)给定key的节点数，需要在读锁或乐观读中调用
+     */
+    final int countLess(Object key, boolean inclusive) {
+        Comparator<? super K> cmp = comparator;
+        Node<K,V> x = head, n;
+        int r = 0;
+        for (int i = level - 1; i >= 0; --i) {
+            int c;
+            while ((n = nextAt(x, i)) != null &&
+                   ((c = cpr(cmp, n.key, key)) < 0 || (inclusive && c == 0))) {
+                r += x.span[i];
+                x = n;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 排名为index(从0开始)的节点，不存在时返回null，需要在读锁或乐观读中调用
+     */
+    final Node<K,V> nodeAtRank(int index) {
+        Node<K,V> x = head, n;
+        int traversed = 0, target = index + 1;
+        for (int i = level - 1; i >= 0; --i) {
+            while ((n = nextAt(x, i)) != null && traversed + x.span[i] <= target) {
+                traversed += x.span[i];
+                x = n;
+            }
+            if (traversed == target)
+                return x;
+        }
+        return null;
+    }
+
+    /**
+     * 按排名定位遍历的起点
+     */
+    final Node<K,V> startAtRank(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        if (toIndex == fromIndex)
+            return null;
+        long stamp = lock.tryOptimisticRead();
+        Node<K,V> start = nodeAtRank(fromIndex);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                start = nodeAtRank(fromIndex);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return start;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 不加锁，返回key对应的value，不存在时返回null
+     */
+    public V get(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Node<K,V> n = nextAt(findLast(key, false), 0);
+        return (n != null && cpr(comparator, n.key, key) == 0) ? n.value : null;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return (v = get(key)) == null ? defaultValue : v;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 返回旧值，没有旧值时返回null
+     */
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    /**
+     * 删除key，返回删除前的value
+     */
+    public V remove(Object key) {
+        return doRemove(key, null);
+    }
+
+    /**
+     * key对应的value等于给定value时删除
+     */
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * 删除所有元素，并发的读线程可能继续看到旧的节点
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < MAX_LEVEL; ++i) {
+                setNextAt(head, i, null);
+                head.span[i] = 0;
+            }
+            level = 1;
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Map.Entry<K,V> firstEntry() {
+        return firstEntryOf(nextAt(head, 0));
+    }
+
+    public Map.Entry<K,V> lastEntry() {
+        for (;;) {
+            Node<K,V> x = findTail();
+            if (x == null)
+                return null;
+            V v = x.value;
+            if (v != null)
+                return new AbstractMap.SimpleImmutableEntry<>(x.key, v);
+        }
+    }
+
+    /**
+     * key小于等于给定key的最大元素
+     */
+    public Map.Entry<K,V> floorEntry(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        return lastEntryOf(key, true);
+    }
+
+    /**
+     * key小于给定key的最大元素
+     */
+    public Map.Entry<K,V> lowerEntry(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        return lastEntryOf(key, false);
+    }
+
+    /**
+     * key大于等于给定key的最小元素
+     */
+    public Map.Entry<K,V> ceilingEntry(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        return firstEntryOf(findFirst(key, true));
+    }
+
+    /**
+     * key大于给定key的最小元素
+     */
+    public Map.Entry<K,V> higherEntry(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        return firstEntryOf(findFirst(key, false));
+    }
+
+    /**
+     * key按从小到大的排名(从0开始)，key不存在时返回-1；与Redis的ZRANK相同
+     */
+    public int rank(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        long stamp = lock.tryOptimisticRead();
+        int r = rankOf(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                r = rankOf(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return r;
+    }
+
+    private int rankOf(Object key) {
+        Node<K,V> n = nextAt(findLast(key, false), 0);
+        if (n == null || cpr(comparator, n.key, key) != 0)
+            return -1;
+        return countLess(key, false);
+    }
+
+    /**
+     * 排名为index(从0开始)的元素，index超出范围时返回null
+     */
+    public Map.Entry<K,V> entryAtRank(int index) {
+        if (index < 0)
+            return null;
+        long stamp = lock.tryOptimisticRead();
+        Node<K,V> n = nodeAtRank(index);
+        K k = (n == null) ? null : n.key;
+        V v = (n == null) ? null : n.value;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                n = nodeAtRank(index);
+                k = (n == null) ? null : n.key;
+                v = (n == null) ? null : n.value;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return (n == null) ? null : new AbstractMap.SimpleImmutableEntry<>(k, v);
+    }
+
+    /**
+     * key在[from, to]之间的元素个数，fromInclusive/toInclusive为false时不包含边界；与Redis的ZCOUNT相同
+     */
+    public int countRange(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from == null || to == null)
+            throw new NullPointerException();
+        long stamp = lock.tryOptimisticRead();
+        int count = countLess(to, toInclusive) - countLess(from, !fromInclusive);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = countLess(to, toInclusive) - countLess(from, !fromInclusive);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return Math.max(count, 0);
+    }
+
+    /**
+     * 按key从小到大，排名在[fromIndex, toIndex)之间的元素；与Redis的ZRANGE相同。
+     * 起点按排名定位，之后沿最底层遍历，期间的插入和删除会影响后续元素
+     */
+    public Stream<Map.Entry<K,V>> entriesByRank(int fromIndex, int toIndex) {
+        return stream(new EntryIterator(startAtRank(fromIndex, toIndex), null, false, toIndex - fromIndex));
+    }
+
+    /**
+     * key在from和to之间的元素，按key从小到大；与Redis的ZRANGEBYSCORE相同
+     */
+    public Stream<Map.Entry<K,V>> subMap(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        if (from == null || to == null)
+            throw new NullPointerException();
+        return stream(new EntryIterator(findFirst(from, fromInclusive), to, toInclusive, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 所有元素，按key从小到大
+     */
+    public Stream<Map.Entry<K,V>> entries() {
+        return stream(new EntryIterator(nextAt(head, 0), null, false, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 按key从小到大遍历
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Node<K,V> n = nextAt(head, 0); n != null; n = nextAt(n, 0)) {
+            V v = n.value;
+            if (v != null)
+                action.accept(n.key, v);
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=').append(v);
+        });
+        return sb.append('}').toString();
+    }
+
+    /* ---------------- Writes (under write lock) -------------- */
+
+    /**
+     * 从最高层向下查找，记录每层最后一个key小于给定key的节点(update)及其排名(rank)，返回第0层的后继节点
+     */
+    private Node<K,V> findUpdate(Object key) {
+        Comparator<? super K> cmp = comparator;
+        Node<K,V>[] update = this.update;
+        int[] rank = this.rank;
+        Node<K,V> x = head, n;
+        int lvl = level;
+        for (int i = lvl - 1; i >= 0; --i) {
+            rank[i] = (i == lvl - 1) ? 0 : rank[i + 1];
+            while ((n = x.next.get(i)) != null && cpr(cmp, n.key, key) < 0) {
+                rank[i] += x.span[i];
+                x = n;
+            }
+            update[i] = x;
+        }
+        return x.next.get(0);
+    }
+
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Node<K,V>[] update = this.update;
+        int[] rank = this.rank;
+        long stamp = lock.writeLock();
+        try {
+            Node<K,V> n = findUpdate(key);
+            if (n != null && cpr(comparator, n.key, key) == 0) {
+                V old = n.value;
+                if (!onlyIfAbsent)
+                    n.value = value;
+                return old;
+            }
+            int lvl = randomLevel(), cur = level;
+            if (lvl > cur) {
+                for (int i = cur; i < lvl; ++i) {
+                    rank[i] = 0;
+                    update[i] = head;
+                    head.span[i] = size;
+                }
+            }
+            // 先设置新节点的指针和span，再从低层到高层链接，读线程看到新节点时它的指针已经完整
+            Node<K,V> x = new Node<>(key, value, lvl);
+            for (int i = 0; i < lvl; ++i) {
+                x.next.lazySet(i, update[i].next.get(i));
+                x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+                update[i].span[i] = (rank[0] - rank[i]) + 1;
+            }
+            for (int i = 0; i < lvl; ++i)
+                setNextAt(update[i], i, x);
+            // 新节点之上的层跨过的节点数加1
+            for (int i = lvl; i < cur; ++i)
+                update[i].span[i]++;
+            if (lvl > cur)
+                level = lvl;
+            size = size + 1;
+            return null;
+        } finally {
+            for (int i = 0; i < MAX_LEVEL; ++i)
+                update[i] = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private V doRemove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        Node<K,V>[] update = this.update;
+        long stamp = lock.writeLock();
+        try {
+            Node<K,V> x = findUpdate(key);
+            if (x == null || cpr(comparator, x.key, key) != 0)
+                return null;
+            V old = x.value;
+            if (value != null && !value.equals(old))
+                return null;
+            // 先置空value，不加锁的读线程看到value为null时认为节点已经删除
+            x.value = null;
+            int cur = level;
+            for (int i = 0; i < cur; ++i) {
+                if (update[i].next.get(i) == x) {
+                    update[i].span[i] += x.span[i] - 1;
+                    setNextAt(update[i], i, x.next.get(i));
+                }
+                else
+                    update[i].span[i]--;
+            }
+            while (cur > 1 && head.next.get(cur - 1) == null)
+                cur--;
+            level = cur;
+            size = size - 1;
+            return old;
+        } finally {
+            for (int i = 0; i < MAX_LEVEL; ++i)
+                update[i] = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    static <T> Stream<T> stream(Iterator<T> it) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL |
+            Spliterator.CONCURRENT), false);
+    }
+
+    /**
+     * 沿最底层遍历，跳过已经删除的节点；到达上界hi或取够limit个元素时结束
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        final K hi;
+        final boolean hiInclusive;
+        int remaining;
+        Node<K,V> next;
+        V nextValue;
+
+        EntryIterator(Node<K,V> start, K hi, boolean hiInclusive, int limit) {
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.remaining = limit;
+            advance(start);
+        }
+
+        private void advance(Node<K,V> n) {
+            for (; n != null && remaining > 0; n = nextAt(n, 0)) {
+                if (hi != null) {
+                    int c = cpr(comparator, n.key, hi);
+                    if (c > 0 || (c == 0 && !hiInclusive))
+                        break;
+                }
+                V v = n.value;
+                if (v != null) {
+                    next = n;
+                    nextValue = v;
+                    remaining--;
+                    return;
+                }
+            }
+            next = null;
+            nextValue = null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<K,V> next() {
+            Node<K,V> n = next;
+            if (n == null)
+                throw new NoSuchElementException();
+            Map.Entry<K,V> e = new AbstractMap.SimpleImmutableEntry<>(n.key, nextValue);
+            advance(nextAt(n, 0));
+            return e;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.machao.learning.concurrent.ConcurrentSkipListMap;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ConcurrentLongRankSkipListMap与java.util.concurrent.ConcurrentSkipListMap的对比测试
+ *
+ * 场景：
+ * 1. floor：随机key的floorEntry()
+ * 2. rank：随机key的排名，ConcurrentSkipListMap只能用headMap(key).size()逐个计数，是O(n)
+ * 3. rank + writer：同时有一个线程不停地put/remove，测试乐观读失败后加读锁的开销
+ * 先预热再计时，输出每次操作的平均纳秒数
+ */
+public class ConcurrentRankSkipListMapBenchmark {
+
+	// 元素数量
+	static final int SIZE = 1 << 15;
+
+	// 每轮查询次数，ConcurrentSkipListMap的rank()是O(n)，次数不宜过多
+	static final int OPS = 1 << 10;
+
+	static final int WARMUP_ROUNDS = 3;
+	static final int MEASURE_ROUNDS = 5;
+
+	// 防止JIT消除结果
+	static long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		Random random = new Random(42);
+		long[] keys = new long[SIZE];
+		ConcurrentSkipListMap<Long, Long> jdk = new ConcurrentSkipListMap<>();
+		ConcurrentLongRankSkipListMap<Long> rank = new ConcurrentLongRankSkipListMap<>();
+		for (int i = 0; i < SIZE; i++) {
+			keys[i] = random.nextLong();
+			jdk.put(keys[i], keys[i]);
+			rank.put(keys[i], keys[i]);
+		}
+
+		System.out.println("map\tfloor(ns/op)\trank(ns/op)\trank + writer(ns/op)");
+		System.out.printf("ConcurrentSkipListMap\t%.1f\t%.1f\t%.1f%n",
+				measure(() -> {
+					for (int i = 0; i < OPS; i++)
+						sink += jdk.floorEntry(keys[i]).getValue();
+				}),
+				measure(() -> {
+					for (int i = 0; i < OPS; i++)
+						sink += jdk.headMap(keys[i]).size();
+				}),
+				withWriter(() -> jdk.put(random.nextLong(), 0L), () -> jdk.pollLastEntry(), () -> {
+					for (int i = 0; i < OPS; i++)
+						sink += jdk.headMap(keys[i]).size();
+				}));
+		System.out.printf("ConcurrentLongRankSkipListMap\t%.1f\t%.1f\t%.1f%n",
+				measure(() -> {
+					for (int i = 0; i < OPS; i++)
+						sink += rank.floorEntry(keys[i]).getValue();
+				}),
+				measure(() -> {
+					for (int i = 0; i < OPS; i++)
+						sink += rank.rank(keys[i]);
+				}),
+				withWriter(() -> rank.put(random.nextLong(), 0L), () -> rank.remove(rank.lastEntry().getKey()), () -> {
+					for (int i = 0; i < OPS; i++)
+						sink += rank.rank(keys[i]);
+				}));
+	}
+
+	/**
+	 * 预热后计时，返回每次操作的平均纳秒数
+	 */
+	static double measure(Runnable task) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			task.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURE_ROUNDS; i++)
+			task.run();
+		return (double) (System.nanoTime() - start) / ((long) MEASURE_ROUNDS * OPS);
+	}
+
+	/**
+	 * 另一个线程交替执行put和remove，元素数量保持不变
+	 */
+	static double withWriter(Runnable put, Runnable remove, Runnable task) throws InterruptedException {
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			while (!stop.get()) {
+				put.run();
+				remove.run();
+			}
+		});
+		writer.start();
+		try {
+			return measure(task);
+		} finally {
+			stop.set(true);
+			writer.join();
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.machao.learning.concurrent.PriorityBlockingQueue.PriorityBlockingQueue;
+
+/**
+ * 按截止时间调度的线程池：最早截止时间优先(EDF)，来不及在截止时间之前完成的任务不再执行
+ *
+ * 截止时间指任务必须完成的时间，调度、丢弃和统计都按完成时间计算。
+ * 普通线程池按FIFO执行任务，调用者超时放弃之后任务仍然排队、执行，过载时大量时间花在没有人等待结果的任务上；
+ * 这里的做法：
+ * 1. 任务队列为PriorityBlockingQueue，元素为DeadlineTask，按截止时间排序，相同时按优先级(大的在前)，再按提交顺序
+ * 2. 提交时截止时间已过的任务直接失败，不进入队列
+ * 3. worker取出任务时截止时间已过，或者剩余时间不够按平均执行时间完成，不执行，
+ *    future以TimeoutException失败(get()抛出ExecutionException)；
+ *    EDF下过期的任务总是在队头，会被很快取出丢弃，不占用执行时间；
+ *    只按截止时间丢弃时，过载下取出的任务大多刚好在截止前开始、截止后完成，仍然是无用功，所以要加上平均执行时间
+ * 4. 执行完成时已经超过截止时间的任务计为missed，按时完成的计为onTime(有效吞吐量)
+ * 没有指定截止时间的任务(execute()、submit()等)截止时间为无穷大，排在所有有截止时间的任务之后；
+ * execute(Runnable)把任务包装为DeadlineTask，remove()和shutdownNow()按原始任务处理。
+ * 队列无界，线程数固定为nThreads。
+ */
+public class DeadlineExecutor extends ThreadPoolExecutor {
+
+    /** 没有截止时间 */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** 相同截止时间和优先级时按提交顺序 */
+    private final AtomicLong sequencer = new AtomicLong();
+
+    private final LongAdder shedCount = new LongAdder();
+    private final LongAdder missedCount = new LongAdder();
+    private final LongAdder onTimeCount = new LongAdder();
+
+    /**
+     * 有截止时间的任务的平均执行时间(纳秒)，指数加权平均，新的样本占1/8
+     */
+    private final AtomicLong meanRunNanos = new AtomicLong();
+
+    /**
+     * 关闭后提交的任务抛出RejectedExecutionException；
+     * ThreadPoolExecutor.reject()以java.util.concurrent的接口调用handler，AbortPolicy的这个方法不会抛出异常
+     */
+    private static final RejectedExecutionHandler ABORT = (r, e) -> {
+        throw new RejectedExecutionException("Task " + r + " rejected from DeadlineExecutor");
+    };
+
+    public DeadlineExecutor(int nThreads) {
+        this(nThreads, Executors.defaultThreadFactory());
+    }
+
+    public DeadlineExecutor(int nThreads, ThreadFactory threadFactory) {
+        super(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+              new PriorityBlockingQueue<Runnable>(), threadFactory, ABORT);
+    }
+
+    /**
+     * 带截止时间的任务
+     */
+    final class DeadlineTask<V> extends TimedFutureTask<V> implements Comparable<DeadlineTask<?>> {
+        /** System.nanoTime()表示的截止时间，NO_DEADLINE表示没有 */
+        final long deadline;
+        final int priority;
+        final long seq = sequencer.getAndIncrement();
+        /** execute(Runnable)包装的原始任务，其它为null */
+        final Runnable command;
+
+        DeadlineTask(Callable<V> callable, long deadline, int priority) {
+            super(callable);
+            this.deadline = deadline;
+            this.priority = priority;
+            this.command = null;
+        }
+
+        DeadlineTask(Runnable runnable, V result, long deadline, int priority) {
+            this(runnable, result, deadline, priority, null);
+        }
+
+        DeadlineTask(Runnable runnable, V result, long deadline, int priority, Runnable command) {
+            super(runnable, result);
+            this.deadline = deadline;
+            this.priority = priority;
+            this.command = command;
+        }
+
+        boolean expired(long now) {
+            return deadline != NO_DEADLINE && now - deadline >= 0L;
+        }
+
+        public void run() {
+            // 已经取消的任务super.run()什么也不做，不计入任何计数
+            if (isCancelled())
+                return;
+            long start = System.nanoTime();
+            if (expired(start + meanRunNanos.get())) {
+                shed(this);
+                return;
+            }
+            super.run();
+            if (deadline != NO_DEADLINE && !isCancelled()) {
+                long now = System.nanoTime();
+                meanRunNanos.accumulateAndGet(now - start, (m, x) -> m + ((x - m) >> 3));
+                if (expired(now))
+                    missedCount.increment();
+                else
+                    onTimeCount.increment();
+            }
+        }
+
+        /** 来不及在截止时间之前完成，不执行 */
+        void fail() {
+            setException(new TimeoutException("deadline cannot be met"));
+        }
+
+        public int compareTo(DeadlineTask<?> other) {
+            if (this == other)
+                return 0;
+            // deadline都是nanoTime，用差值比较避免溢出，NO_DEADLINE单独处理
+            if (deadline != other.deadline) {
+                if (deadline == NO_DEADLINE)
+                    return 1;
+                if (other.deadline == NO_DEADLINE)
+                    return -1;
+                return (deadline - other.deadline < 0L) ? -1 : 1;
+            }
+            if (priority != other.priority)
+                return (priority > other.priority) ? -1 : 1;
+            return (seq < other.seq) ? -1 : 1;
+        }
+    }
+
+    private void shed(DeadlineTask<?> task) {
+        shedCount.increment();
+        task.fail();
+    }
+
+    /* ---------------- Submission -------------- */
+
+    /**
+     * 提交一个必须在timeout内完成的任务，priority越大越优先(截止时间相同时)；
+     * timeout不大于0时直接以TimeoutException失败，线程池已经关闭时拒绝
+     */
+    public <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit, int priority) {
+        if (task == null || unit == null)
+            throw new NullPointerException();
+        return schedule(new DeadlineTask<T>(task, deadlineOf(timeout, unit), priority), timeout);
+    }
+
+    public <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
+        return submit(task, timeout, unit, 0);
+    }
+
+    public Future<?> submit(Runnable task, long timeout, TimeUnit unit, int priority) {
+        if (task == null || unit == null)
+            throw new NullPointerException();
+        return schedule(new DeadlineTask<Void>(task, null, deadlineOf(timeout, unit), priority), timeout);
+    }
+
+    public Future<?> submit(Runnable task, long timeout, TimeUnit unit) {
+        return submit(task, timeout, unit, 0);
+    }
+
+    private static long deadlineOf(long timeout, TimeUnit unit) {
+        // 与ScheduledThreadPoolExecutor.triggerTime()相同，timeout最多取Long.MAX_VALUE >> 1，
+        // 截止时间之间的差值不会溢出，compareTo()和expired()的比较仍然正确
+        long nanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + Math.min(nanos, Long.MAX_VALUE >> 1);
+        // 避免与NO_DEADLINE冲突
+        return (deadline == NO_DEADLINE) ? NO_DEADLINE - 1 : deadline;
+    }
+
+    private <T> Future<T> schedule(DeadlineTask<T> task, long timeout) {
+        if (timeout > 0L)
+            execute(task);
+        else if (isShutdown())
+            reject(task);
+        else
+            shed(task);
+        return task;
+    }
+
+    /**
+     * 不是DeadlineTask的任务包装成没有截止时间的DeadlineTask，PriorityBlockingQueue中的元素都是DeadlineTask
+     */
+    public void execute(Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        super.execute((command instanceof DeadlineTask) ? command
+                      : new DeadlineTask<Void>(command, null, NO_DEADLINE, 0, command));
+    }
+
+    /**
+     * 除了task本身，也删除execute(task)时包装task的DeadlineTask
+     */
+    public boolean remove(Runnable task) {
+        if (super.remove(task))
+            return true;
+        if (task != null) {
+            for (Runnable r : getQueue()) {
+                if (r instanceof DeadlineTask && task.equals(((DeadlineTask<?>) r).command) &&
+                    super.remove(r))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 返回的列表中execute(Runnable)提交的任务为原始任务，其它为DeadlineTask(也就是submit()返回的Future)
+     */
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        tasks.replaceAll(r -> (r instanceof DeadlineTask && ((DeadlineTask<?>) r).command != null) ?
+                         ((DeadlineTask<?>) r).command : r);
+        return tasks;
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new DeadlineTask<T>(runnable, value, NO_DEADLINE, 0);
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new DeadlineTask<T>(callable, NO_DEADLINE, 0);
+    }
+
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * 来不及在截止时间之前完成、没有执行就失败的任务数(提交时或开始执行前)
+     */
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    /**
+     * 执行了但完成时已经超过截止时间的任务数
+     */
+    public long getMissedCount() {
+        return missedCount.sum();
+    }
+
+    /**
+     * 在截止时间之前完成的任务数
+     */
+    public long getOnTimeCount() {
+        return onTimeCount.sum();
+    }
+
+    public String toString() {
+        return super.toString() +
+            "[shed = " + getShedCount() +
+            ", missed = " + getMissedCount() +
+            ", on time = " + getOnTimeCount() + "]";
+    }
+}
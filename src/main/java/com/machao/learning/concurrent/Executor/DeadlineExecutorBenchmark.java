@@ -0,0 +1,73 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 过载时FIFO线程池与DeadlineExecutor的有效吞吐量对比
+ *
+ * 场景：THREADS个线程，每个任务耗时TASK_MILLIS(sleep，模拟调用下游)，处理能力约为 THREADS * 1000 / TASK_MILLIS 个/秒；
+ * 以处理能力的OVERLOAD倍的速率提交，每个任务的截止时间为提交后DEADLINE_MILLIS；
+ * 输出在截止时间之前完成的任务速率(goodput)、超时完成的任务数和未执行丢弃的任务数。
+ */
+public class DeadlineExecutorBenchmark {
+
+	static final int THREADS = 4;
+	static final long TASK_MILLIS = 2;
+	static final double OVERLOAD = 1.5;
+	static final long DEADLINE_MILLIS = 50;
+	static final long RUN_MILLIS = 3000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int rate = (int) (THREADS * 1000 / TASK_MILLIS * OVERLOAD);
+		System.out.println("rate=" + rate + "/s, capacity=" + THREADS * 1000 / TASK_MILLIS + "/s");
+		System.out.println("executor\tgoodput(tasks/s)\tmissed\tshed");
+
+		ThreadPoolExecutor fifo = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		LongAdder onTime = new LongAdder(), missed = new LongAdder();
+		run(rate, () -> {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS);
+			fifo.execute(() -> {
+				work();
+				if (System.nanoTime() - deadline < 0L)
+					onTime.increment();
+				else
+					missed.increment();
+			});
+		});
+		System.out.printf("FIFO\t%.0f\t%d\t%d%n", onTime.sum() * 1000.0 / RUN_MILLIS, missed.sum(), 0);
+		fifo.shutdownNow();
+
+		DeadlineExecutor edf = new DeadlineExecutor(THREADS);
+		run(rate, () -> edf.submit(DeadlineExecutorBenchmark::work, DEADLINE_MILLIS, TimeUnit.MILLISECONDS));
+		System.out.printf("DeadlineExecutor\t%.0f\t%d\t%d%n", edf.getOnTimeCount() * 1000.0 / RUN_MILLIS,
+				edf.getMissedCount(), edf.getShedCount());
+		edf.shutdownNow();
+	}
+
+	static void work() {
+		try {
+			TimeUnit.MILLISECONDS.sleep(TASK_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 以rate的速率调用submit，持续RUN_MILLIS
+	 */
+	static void run(int rate, Runnable submit) {
+		long start = System.nanoTime();
+		long end = start + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+		long submitted = 0;
+		for (long now; (now = System.nanoTime()) < end; ) {
+			long due = (now - start) * rate / 1_000_000_000L;
+			for (; submitted < due; submitted++)
+				submit.run();
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+}
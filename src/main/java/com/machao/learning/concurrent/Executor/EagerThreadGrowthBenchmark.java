@@ -0,0 +1,48 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 默认模式与eager模式的对比测试
+ *
+ * 场景：与io.nio.SocketChannelServer相同的线程池(核心3个，最多10个，ArrayBlockingQueue(100))，
+ * 一次提交TASKS个IO密集的任务(sleep IO_MILLIS)，输出全部完成的时间和最大线程数；
+ * 之后空闲超过keepAliveTime，输出线程数，确认非核心线程被回收。
+ */
+public class EagerThreadGrowthBenchmark {
+
+	static final int TASKS = 100;
+	static final long IO_MILLIS = 20;
+	static final long KEEP_ALIVE_MILLIS = 200;
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println("mode\telapsed(ms)\tlargest pool size\tpool size after idle");
+		run("default", false);
+		run("eager", true);
+	}
+
+	static void run(String name, boolean eager) throws InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(3, 10, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(100));
+		pool.setEagerThreadGrowth(eager);
+		CountDownLatch done = new CountDownLatch(TASKS);
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++) {
+			pool.execute(() -> {
+				try {
+					TimeUnit.MILLISECONDS.sleep(IO_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		done.await();
+		double elapsed = (System.nanoTime() - start) / 1e6;
+		TimeUnit.MILLISECONDS.sleep(KEEP_ALIVE_MILLIS * 3);
+		System.out.printf("%s\t%.0f\t%d\t%d%n", name, elapsed, pool.getLargestPoolSize(), pool.getPoolSize());
+		pool.shutdown();
+	}
+}
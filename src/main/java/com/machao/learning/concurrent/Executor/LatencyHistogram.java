@@ -0,0 +1,89 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录耗时(纳秒)分布的并发直方图，用于统计p50/p99/p999
+ *
+ * 按对数分桶：小于16的值每个值一个桶，之后每个2的幂区间[2^k, 2^(k+1))再等分成16个桶，
+ * 960个桶覆盖所有非负long，计算分位数的相对误差不超过1/16；
+ * record()只对一个桶做一次原子自增，不分配对象，可以在执行任务的路径上调用。
+ * reset()与record()并发时可能丢失少量样本。
+ */
+public final class LatencyHistogram {
+
+    /** 每个2的幂区间等分的份数为2^SUB_BITS */
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个耗时，负数按0计算
+     */
+    public void record(long nanos) {
+        if (nanos < 0L)
+            nanos = 0L;
+        counts.getAndIncrement(indexOf(nanos));
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+            ;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i)
+            counts.set(i, 0L);
+        max.set(0L);
+    }
+
+    /**
+     * 各个桶的计数的拷贝
+     */
+    long[] counts() {
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i)
+            c[i] = counts.get(i);
+        return c;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_BUCKETS)
+            return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶中的最大值
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * counts中排在第quantile位置的值(所在桶的最大值，不超过max)，total为0时返回0
+     */
+    static long valueAt(long[] counts, long total, long max, double quantile) {
+        if (total == 0L)
+            return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; ++i) {
+            if ((seen += counts[i]) >= rank)
+                return Math.min(highestValue(i), max);
+        }
+        return max;
+    }
+}
@@ -45,18 +45,23 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -546,6 +551,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile boolean allowCoreThreadTimeOut;
 
+    /**
+     * 是否先创建线程再排队(默认false)，见setEagerThreadGrowth()
+     */
+    private volatile boolean eagerThreadGrowth;
+
+    /**
+     * 非工作窃取模式下阻塞在workQueue.take()/poll()上等待任务的worker数，只在eagerThreadGrowth时统计；
+     * 队列中有任务时worker不会阻塞，不需要更新；运行中开启eager模式时由setEagerThreadGrowth()唤醒空闲的worker重新计入
+     */
+    private final AtomicInteger waitingWorkers = new AtomicInteger();
+
     /**
      * Core pool size is the minimum number of workers to keep alive
      * (and not allow to time out etc) unless allowCoreThreadTimeOut
@@ -591,6 +607,45 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     /* The context to be used when executing the finalizer, or null. */
     private final AccessControlContext acc;
 
+    /*
+     * 工作窃取模式(workStealing为true)
+     *
+     * 所有worker从同一个workQueue取任务时，worker很多、任务很小(微秒级)的情况下workQueue的锁是瓶颈。
+     * 工作窃取模式中每个Worker有自己的双端队列local：
+     * 1. worker线程中调用execute()时把任务放入自己的local队尾，其它线程调用时仍然放入workQueue
+     * 2. worker取任务的顺序：自己local的队尾(后进先出) -> workQueue -> 从随机的一个worker开始依次窃取其它worker的local队头
+     * 3. 都没有任务时把自己放入idleWorkers，再检查一次后park；放入任务后如果有空闲的worker就unpark一个
+     * ctl的状态和线程数的维护与原来相同，只是判断队列是否为空(isQueueEmpty())时还要包括所有worker的local；
+     * worker退出时持有mainLock把local中剩余的任务转移到workQueue，workQueue已满时放入orphanedTasks，
+     * shutdownNow()也会取出所有local和orphanedTasks中的任务，已经提交的任务要么执行、要么由shutdownNow()返回。
+     * local没有容量限制，worker中提交的任务不会因为workQueue已满而创建非核心线程或者被拒绝；
+     * 直接向getQueue()添加的任务不会唤醒park的worker。
+     */
+
+    /** 是否为工作窃取模式，只能在构造时指定 */
+    private final boolean workStealing;
+
+    /**
+     * workers的快照，窃取任务和检查local是否为空时不需要加mainLock，
+     * 只在工作窃取模式下持有mainLock时更新
+     */
+    private volatile Worker[] workerArray = new Worker[0];
+
+    /**
+     * 工作窃取模式下worker退出时local中剩余、workQueue已满放不下的任务，没有容量限制；
+     * worker在workQueue之后从这里取任务，其它处理与local相同
+     */
+    private final ConcurrentLinkedDeque<Runnable> orphanedTasks = new ConcurrentLinkedDeque<Runnable>();
+
+    /** 没有任务、已经或即将park的worker */
+    private final ConcurrentLinkedDeque<Worker> idleWorkers = new ConcurrentLinkedDeque<Worker>();
+
+    /** 当前线程所属的worker，用于判断execute()是否在这个线程池的worker中调用 */
+    private final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>();
+
+    /** 排队时间、执行时间、拒绝次数和worker忙碌时间的统计 */
+    private final ThreadPoolStatsRecorder stats = new ThreadPoolStatsRecorder();
+
     /**
      * Class Worker mainly maintains interrupt control state for
      * threads running tasks, along with other minor bookkeeping.
@@ -623,6 +678,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Runnable firstTask;
         /** Per-thread task counter */
         volatile long completedTasks;
+        /** 工作窃取模式下的本地队列，自己从队尾取，其它worker从队头窃取；非工作窃取模式为null */
+        final ConcurrentLinkedDeque<Runnable> local;
 
         /**
          * Creates with given first task and thread from ThreadFactory.
@@ -631,6 +688,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Worker(Runnable firstTask) {
             setState(-1); // inhibit interrupts until runWorker
             this.firstTask = firstTask;
+            this.local = workStealing ? new ConcurrentLinkedDeque<Runnable>() : null;
             this.thread = getThreadFactory().newThread(this);
         }
 
@@ -713,7 +771,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             int c = ctl.get();
             if (isRunning(c) ||
                 runStateAtLeast(c, TIDYING) ||
-                (runStateOf(c) == SHUTDOWN && ! workQueue.isEmpty()))
+                (runStateOf(c) == SHUTDOWN && ! isQueueEmpty()))
                 return;
             if (workerCountOf(c) != 0) { // Eligible to terminate
                 interruptIdleWorkers(ONLY_ONE);
@@ -842,7 +900,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
-        handler.rejectedExecution(command, null);
+        RejectedExecutionHandler h = handler;
+        stats.taskRejected(h);
+        h.rejectedExecution(command, null);
     }
 
     /**
@@ -880,9 +940,47 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     taskList.add(r);
             }
         }
+        if (workStealing) {
+            for (Worker w : workerArray) {
+                for (Runnable r; (r = w.local.pollFirst()) != null; )
+                    taskList.add(r);
+            }
+            for (Runnable r; (r = orphanedTasks.pollFirst()) != null; )
+                taskList.add(r);
+        }
         return taskList;
     }
 
+    /**
+     * workQueue为空，并且工作窃取模式下所有worker的local和orphanedTasks都为空
+     */
+    private boolean isQueueEmpty() {
+        if (! workQueue.isEmpty())
+            return false;
+        if (workStealing) {
+            if (! orphanedTasks.isEmpty())
+                return false;
+            for (Worker w : workerArray) {
+                if (! w.local.isEmpty())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 所有worker的local和orphanedTasks中的任务数
+     */
+    private int localQueueSize() {
+        int n = 0;
+        if (workStealing) {
+            n = orphanedTasks.size();
+            for (Worker w : workerArray)
+                n += w.local.size();
+        }
+        return n;
+    }
+
     /*
      * Methods for creating, running and cleaning up after workers
      */
@@ -923,7 +1021,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             if (rs >= SHUTDOWN &&
                 ! (rs == SHUTDOWN &&
                    firstTask == null &&
-                   ! workQueue.isEmpty()))
+                   ! isQueueEmpty()))
                 return false;
 
             for (;;) {
@@ -963,6 +1061,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                         int s = workers.size();
                         if (s > largestPoolSize)
                             largestPoolSize = s;
+                        if (workStealing)
+                            workerArray = workers.toArray(new Worker[0]);
                         workerAdded = true;
                     }
                 } finally {
@@ -991,8 +1091,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
-            if (w != null)
-                workers.remove(w);
+            if (w != null && workers.remove(w) && workStealing)
+                workerArray = workers.toArray(new Worker[0]);
             decrementWorkerCount();
             tryTerminate();
         } finally {
@@ -1020,8 +1120,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         final ReentrantLock mainLock = this.mainLock;
         mainLock.lock();
         try {
+            // 任务抛出异常或者线程数减少时local中可能还有任务，在从workerArray中删除之前转移出去
+            if (workStealing)
+                transferLocalTasks(w);
             completedTaskCount += w.completedTasks;
-            workers.remove(w);
+            if (workers.remove(w) && workStealing)
+                workerArray = workers.toArray(new Worker[0]);
         } finally {
             mainLock.unlock();
         }
@@ -1032,7 +1136,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         if (runStateLessThan(c, STOP)) {
             if (!completedAbruptly) {
                 int min = allowCoreThreadTimeOut ? 0 : corePoolSize;
-                if (min == 0 && ! workQueue.isEmpty())
+                if (min == 0 && ! isQueueEmpty())
                     min = 1;
                 if (workerCountOf(c) >= min)
                     return; // replacement not needed
@@ -1055,10 +1159,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      *    both before and after the timed wait, and if the queue is
      *    non-empty, this worker is not the last thread in the pool.
      *
+     * @param w the worker
      * @return task, or null if the worker must exit, in which case
      *         workerCount is decremented
      */
-    private Runnable getTask() {
+    private Runnable getTask(Worker w) {
         boolean timedOut = false; // Did the last poll() time out?
 
         for (;;) {
@@ -1066,7 +1171,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             int rs = runStateOf(c);
 
             // Check if queue empty only if necessary.
-            if (rs >= SHUTDOWN && (rs >= STOP || workQueue.isEmpty())) {
+            if (rs >= SHUTDOWN && (rs >= STOP || isQueueEmpty())) {
                 decrementWorkerCount();
                 return null;
             }
@@ -1077,12 +1182,32 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             boolean timed = allowCoreThreadTimeOut || wc > corePoolSize;
 
             if ((wc > maximumPoolSize || (timed && timedOut))
-                && (wc > 1 || workQueue.isEmpty())) {
+                && (wc > 1 || isQueueEmpty())) {
                 if (compareAndDecrementWorkerCount(c))
                     return null;
                 continue;
             }
 
+            if (workStealing) {
+                Runnable r = scanTask(w);
+                if (r != null)
+                    return r;
+                try {
+                    timedOut = awaitWork(w, timed);
+                } catch (InterruptedException retry) {
+                    timedOut = false;
+                }
+                continue;
+            }
+
+            // eager模式下先不阻塞地取，取不到再计入waitingWorkers后阻塞等待
+            boolean counted = eagerThreadGrowth;
+            if (counted) {
+                Runnable r = workQueue.poll();
+                if (r != null)
+                    return r;
+                waitingWorkers.incrementAndGet();
+            }
             try {
                 Runnable r = timed ?
                     workQueue.poll(keepAliveTime, TimeUnit.NANOSECONDS) :
@@ -1092,8 +1217,102 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 timedOut = true;
             } catch (InterruptedException retry) {
                 timedOut = false;
+            } finally {
+                if (counted)
+                    waitingWorkers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 是否有空闲的worker在等待任务，eager模式下没有时直接创建非核心线程；
+     * 被唤醒的worker要等到从take()/poll()返回才减少waitingWorkers，
+     * 所以等待的worker数要多于队列中已有的任务数，否则连续提交时所有任务都会排在几个等待的worker后面
+     */
+    private boolean hasWaitingWorker() {
+        return workStealing ? ! idleWorkers.isEmpty() : waitingWorkers.get() > workQueue.size();
+    }
+
+    /**
+     * 工作窃取模式下取一个任务：自己local的队尾 -> workQueue -> orphanedTasks -> 其它worker的local队头，都没有时返回null
+     */
+    private Runnable scanTask(Worker w) {
+        Runnable r;
+        if ((r = w.local.pollLast()) != null || (r = workQueue.poll()) != null ||
+            (r = orphanedTasks.pollFirst()) != null)
+            return r;
+        Worker[] ws = workerArray;
+        int n = ws.length;
+        if (n > 1) {
+            // 从随机位置开始，避免空闲的worker都去窃取同一个worker
+            int origin = ThreadLocalRandom.current().nextInt(n);
+            for (int k = 0; k < n; k++) {
+                Worker v = ws[(origin + k) % n];
+                if (v != w && (r = v.local.pollFirst()) != null) {
+                    // 还有其它worker可能有任务时，继续唤醒空闲的worker
+                    if (! v.local.isEmpty())
+                        signalWork();
+                    return r;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 没有任务时park，直到signalWork()唤醒、中断或者timed为true时等待keepAliveTime，
+     * 返回是否等待超时
+     */
+    private boolean awaitWork(Worker w, boolean timed) throws InterruptedException {
+        idleWorkers.offerLast(w);
+        try {
+            // 放入idleWorkers之后再检查一次，与放入任务后的signalWork()配合，不会错过唤醒
+            if (! isQueueEmpty())
+                return false;
+            boolean timedOut = false;
+            if (timed) {
+                long nanos = keepAliveTime;
+                long deadline = System.nanoTime() + nanos;
+                LockSupport.parkNanos(this, nanos);
+                timedOut = deadline - System.nanoTime() <= 0L;
+            } else {
+                LockSupport.park(this);
             }
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return timedOut;
+        } finally {
+            idleWorkers.remove(w);
+        }
+    }
+
+    /**
+     * 有空闲的worker时唤醒一个，放入任务之后调用
+     */
+    private void signalWork() {
+        Worker w;
+        if (! idleWorkers.isEmpty() && (w = idleWorkers.pollFirst()) != null)
+            LockSupport.unpark(w.thread);
+    }
+
+    /**
+     * 把退出的worker的local中剩余的任务放入workQueue，workQueue已满时放入orphanedTasks，不会拒绝任务；
+     * 调用时持有mainLock，w还在workerArray中
+     */
+    private void transferLocalTasks(Worker w) {
+        // shutdownNow()在同一个mainLock中进入STOP并执行drainQueue()：
+        // 这里看到STOP时w.local已经被取出并返回，之后提交到w.local的任务由execute()重新检查状态后拒绝；
+        // 没有看到STOP时转移的任务在drainQueue()之前放入，由之后的drainQueue()返回
+        if (runStateAtLeast(ctl.get(), STOP))
+            return;
+        boolean moved = false;
+        for (Runnable r; (r = w.local.pollFirst()) != null; ) {
+            moved = true;
+            if (! workQueue.offer(r))
+                orphanedTasks.offerLast(r);
         }
+        if (moved)
+            signalWork();
     }
 
     /**
@@ -1144,9 +1363,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Runnable task = w.firstTask;
         w.firstTask = null;
         w.unlock(); // allow interrupts
+        if (workStealing)
+            currentWorker.set(w);
+        stats.workerStarted();
         boolean completedAbruptly = true;
         try {
-            while (task != null || (task = getTask()) != null) {
+            while (task != null || (task = getTask(w)) != null) {
                 w.lock();
                 // If pool is stopping, ensure thread is interrupted;
                 // if not, ensure thread is not interrupted.  This
@@ -1157,6 +1379,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                       runStateAtLeast(ctl.get(), STOP))) &&
                     !wt.isInterrupted())
                     wt.interrupt();
+                long started = stats.taskStarted(task);
                 try {
                     beforeExecute(wt, task);
                     Throwable thrown = null;
@@ -1169,6 +1392,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     } catch (Throwable x) {
                         thrown = x; throw new Error(x);
                     } finally {
+                        stats.taskFinished(started);
                         afterExecute(task, thrown);
                     }
                 } finally {
@@ -1179,6 +1403,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             }
             completedAbruptly = false;
         } finally {
+            if (workStealing)
+                currentWorker.remove();
+            stats.workerExited();
             processWorkerExit(w, completedAbruptly);
         }
     }
@@ -1322,6 +1549,50 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                               BlockingQueue<Runnable> workQueue,
                               ThreadFactory threadFactory,
                               RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+             threadFactory, handler, false);
+    }
+
+    /**
+     * Creates a new {@code ThreadPoolExecutor} with the given initial
+     * parameters, optionally in work-stealing mode.
+     *
+     * <p>工作窃取模式下每个worker有自己的本地队列，worker中调用execute()提交的任务放入本地队列，
+     * 空闲的worker从其它worker的本地队列窃取任务，适合在任务中继续提交大量小任务的场景；
+     * 其它线程提交的任务仍然放入workQueue。
+     *
+     * @param corePoolSize the number of threads to keep in the pool, even
+     *        if they are idle, unless {@code allowCoreThreadTimeOut} is set
+     * @param maximumPoolSize the maximum number of threads to allow in the
+     *        pool
+     * @param keepAliveTime when the number of threads is greater than
+     *        the core, this is the maximum time that excess idle threads
+     *        will wait for new tasks before terminating.
+     * @param unit the time unit for the {@code keepAliveTime} argument
+     * @param workQueue the queue to use for holding tasks submitted by
+     *        threads other than the pool's own workers
+     * @param threadFactory the factory to use when the executor
+     *        creates a new thread
+     * @param handler the handler to use when execution is blocked
+     *        because the thread bounds and queue capacities are reached
+     * @param workStealing {@code true} to give each worker a local
+     *        deque and let idle workers steal from each other
+     * @throws IllegalArgumentException if one of the following holds:<br>
+     *         {@code corePoolSize < 0}<br>
+     *         {@code keepAliveTime < 0}<br>
+     *         {@code maximumPoolSize <= 0}<br>
+     *         {@code maximumPoolSize < corePoolSize}
+     * @throws NullPointerException if {@code workQueue}
+     *         or {@code threadFactory} or {@code handler} is null
+     */
+    public ThreadPoolExecutor(int corePoolSize,
+                              int maximumPoolSize,
+                              long keepAliveTime,
+                              TimeUnit unit,
+                              BlockingQueue<Runnable> workQueue,
+                              ThreadFactory threadFactory,
+                              RejectedExecutionHandler handler,
+                              boolean workStealing) {
         if (corePoolSize < 0 ||
             maximumPoolSize <= 0 ||
             maximumPoolSize < corePoolSize ||
@@ -1338,6 +1609,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         this.keepAliveTime = unit.toNanos(keepAliveTime);
         this.threadFactory = threadFactory;
         this.handler = handler;
+        this.workStealing = workStealing;
     }
 
     /**
@@ -1357,6 +1629,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     public void execute(Runnable command) {
         if (command == null)
             throw new NullPointerException();
+        stats.taskQueued(command);
         /*
          * Proceed in 3 steps:
          *
@@ -1383,12 +1656,33 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 return;
             c = ctl.get();
         }
+        if (eagerThreadGrowth && isRunning(c) &&
+            workerCountOf(c) < maximumPoolSize && ! hasWaitingWorker()) {
+            // 没有空闲的worker时，在排队之前先创建非核心线程，直到maximumPoolSize
+            if (addWorker(command, false))
+                return;
+            c = ctl.get();
+        }
+        if (workStealing && isRunning(c)) {
+            // 在worker中提交的任务放入自己的local，当前worker至少还在运行，不需要检查线程数
+            Worker w = currentWorker.get();
+            if (w != null) {
+                w.local.offerLast(command);
+                if (! isRunning(ctl.get()) && remove(command))
+                    reject(command);
+                else
+                    signalWork();
+                return;
+            }
+        }
         if (isRunning(c) && workQueue.offer(command)) {
             int recheck = ctl.get();
             if (! isRunning(recheck) && remove(command))
                 reject(command);
             else if (workerCountOf(recheck) == 0)
                 addWorker(null, false);
+            else if (workStealing)
+                signalWork();
         }
         else if (!addWorker(command, false))
             reject(command);
@@ -1678,6 +1972,33 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         }
     }
 
+    /**
+     * 是否为eager模式，见setEagerThreadGrowth()
+     *
+     * @return {@code true} if non-core threads are started before queueing
+     */
+    public boolean isEagerThreadGrowth() {
+        return eagerThreadGrowth;
+    }
+
+    /**
+     * 设置eager模式：默认只有workQueue.offer()失败(有界队列已满)时才创建非核心线程，
+     * 队列很大时线程数一直停留在corePoolSize，任务在队列中等待；
+     * eager模式下提交任务时如果没有空闲的worker并且线程数小于maximumPoolSize，先创建新线程执行，
+     * 达到maximumPoolSize之后才排队(与Tomcat的TaskQueue相同)，适合IO密集的请求处理。
+     * 空闲的非核心线程仍然在keepAliveTime之后退出。
+     * 运行中开启时中断空闲的worker，使已经阻塞在workQueue上的worker重新进入计数的等待，
+     * 否则它们不计入等待的worker，提交任务时会多创建线程。
+     *
+     * @param value {@code true} to start non-core threads before queueing
+     */
+    public void setEagerThreadGrowth(boolean value) {
+        boolean old = eagerThreadGrowth;
+        eagerThreadGrowth = value;
+        if (value && !old)
+            interruptIdleWorkers();
+    }
+
     /**
      * Sets the maximum allowed number of threads. This overrides any
      * value set in the constructor. If the new value is smaller than
@@ -1747,6 +2068,15 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         return unit.convert(keepAliveTime, TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * 是否为工作窃取模式
+     *
+     * @return {@code true} if each worker has a local deque
+     */
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
     /* User-level queue utilities */
 
     /**
@@ -1755,6 +2085,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * This queue may be in active use.  Retrieving the task queue
      * does not prevent queued tasks from executing.
      *
+     * <p>工作窃取模式下不包括worker本地队列中的任务。
+     *
      * @return the task queue
      */
     public BlockingQueue<Runnable> getQueue() {
@@ -1779,6 +2111,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     public boolean remove(Runnable task) {
         boolean removed = workQueue.remove(task);
+        if (! removed && workStealing && ! (removed = orphanedTasks.remove(task))) {
+            for (Worker w : workerArray) {
+                if (removed = w.local.remove(task))
+                    break;
+            }
+        }
         tryTerminate(); // In case SHUTDOWN and now empty
         return removed;
     }
@@ -1810,12 +2148,53 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 if (r instanceof Future<?> && ((Future<?>)r).isCancelled())
                     q.remove(r);
         }
+        if (workStealing) {
+            orphanedTasks.removeIf(r -> r instanceof Future<?> && ((Future<?>)r).isCancelled());
+            for (Worker w : workerArray)
+                w.local.removeIf(r -> r instanceof Future<?> && ((Future<?>)r).isCancelled());
+        }
 
         tryTerminate(); // In case SHUTDOWN and now empty
     }
 
     /* Statistics */
 
+    /**
+     * submit()等方法创建记录提交时间的TimedFutureTask，用于统计排队时间
+     */
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TimedFutureTask<T>(runnable, value);
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TimedFutureTask<T>(callable);
+    }
+
+    /**
+     * 排队时间和执行时间的分位数、拒绝次数、worker忙碌比例的快照
+     *
+     * @return the current statistics
+     */
+    public ThreadPoolStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * 清空统计，重新开始
+     */
+    public void resetStats() {
+        stats.reset();
+    }
+
+    /**
+     * 统计的记录者，用于通过ThreadPoolStatsMonitor.register()注册JMX MBean
+     *
+     * @return the statistics recorder of this pool
+     */
+    public ThreadPoolStatsRecorder getStatsRecorder() {
+        return stats;
+    }
+
     /**
      * Returns the current number of threads in the pool.
      *
@@ -1888,7 +2267,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 if (w.isLocked())
                     ++n;
             }
-            return n + workQueue.size();
+            return n + workQueue.size() + localQueueSize();
         } finally {
             mainLock.unlock();
         }
@@ -1948,7 +2327,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             "[" + rs +
             ", pool size = " + nworkers +
             ", active threads = " + nactive +
-            ", queued tasks = " + workQueue.size() +
+            ", queued tasks = " + (workQueue.size() + localQueueSize()) +
             ", completed tasks = " + ncompleted +
             "]";
     }
@@ -0,0 +1,137 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.Map;
+
+/**
+ * 线程池统计信息的不可变快照，由ThreadPoolStatsRecorder.snapshot()创建
+ *
+ * 排队时间：任务从execute()到开始执行的时间，只统计带有提交时间的任务(TimedFutureTask，submit()提交的任务都是)；
+ * 执行时间：task.run()的耗时，统计所有任务；
+ * 排队时间的分位数明显大于执行时间时，说明延迟来自线程不足或队列积压，而不是任务本身；
+ * 拒绝次数按RejectedExecutionHandler的类名分别统计；
+ * 忙碌比例：所有worker执行任务的时间 / 所有worker存活的时间，接近1说明线程数不足，接近0说明线程过多。
+ */
+public final class ThreadPoolStats {
+
+    private final long queueWaitCount;
+    private final long queueWaitP50Nanos;
+    private final long queueWaitP99Nanos;
+    private final long queueWaitP999Nanos;
+    private final long queueWaitMaxNanos;
+    private final long runCount;
+    private final long runP50Nanos;
+    private final long runP99Nanos;
+    private final long runP999Nanos;
+    private final long runMaxNanos;
+    private final Map<String, Long> rejections;
+    private final long busyNanos;
+    private final long workerNanos;
+
+    ThreadPoolStats(long queueWaitCount, long queueWaitP50Nanos, long queueWaitP99Nanos,
+                    long queueWaitP999Nanos, long queueWaitMaxNanos,
+                    long runCount, long runP50Nanos, long runP99Nanos,
+                    long runP999Nanos, long runMaxNanos,
+                    Map<String, Long> rejections, long busyNanos, long workerNanos) {
+        this.queueWaitCount = queueWaitCount;
+        this.queueWaitP50Nanos = queueWaitP50Nanos;
+        this.queueWaitP99Nanos = queueWaitP99Nanos;
+        this.queueWaitP999Nanos = queueWaitP999Nanos;
+        this.queueWaitMaxNanos = queueWaitMaxNanos;
+        this.runCount = runCount;
+        this.runP50Nanos = runP50Nanos;
+        this.runP99Nanos = runP99Nanos;
+        this.runP999Nanos = runP999Nanos;
+        this.runMaxNanos = runMaxNanos;
+        this.rejections = rejections;
+        this.busyNanos = busyNanos;
+        this.workerNanos = workerNanos;
+    }
+
+    /** 统计了排队时间的任务数 */
+    public long getQueueWaitCount() {
+        return queueWaitCount;
+    }
+
+    public long getQueueWaitP50Nanos() {
+        return queueWaitP50Nanos;
+    }
+
+    public long getQueueWaitP99Nanos() {
+        return queueWaitP99Nanos;
+    }
+
+    public long getQueueWaitP999Nanos() {
+        return queueWaitP999Nanos;
+    }
+
+    public long getQueueWaitMaxNanos() {
+        return queueWaitMaxNanos;
+    }
+
+    /** 执行完成的任务数，包括抛出异常的 */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    public long getRunP50Nanos() {
+        return runP50Nanos;
+    }
+
+    public long getRunP99Nanos() {
+        return runP99Nanos;
+    }
+
+    public long getRunP999Nanos() {
+        return runP999Nanos;
+    }
+
+    public long getRunMaxNanos() {
+        return runMaxNanos;
+    }
+
+    /** 每个RejectedExecutionHandler(类名)拒绝的任务数 */
+    public Map<String, Long> getRejections() {
+        return rejections;
+    }
+
+    /** 拒绝的任务总数 */
+    public long getRejectedCount() {
+        long n = 0L;
+        for (Long c : rejections.values())
+            n += c;
+        return n;
+    }
+
+    /** 所有worker执行任务的累计时间(纳秒) */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /** 所有worker存活的累计时间(纳秒) */
+    public long getWorkerNanos() {
+        return workerNanos;
+    }
+
+    public double getBusyRatio() {
+        return workerNanos <= 0L ? 0.0 : Math.min(1.0, (double) busyNanos / workerNanos);
+    }
+
+    public double getIdleRatio() {
+        return workerNanos <= 0L ? 0.0 : 1.0 - getBusyRatio();
+    }
+
+    public String toString() {
+        return "ThreadPoolStats{queueWaitCount=" + queueWaitCount +
+            ", queueWaitP50Nanos=" + queueWaitP50Nanos +
+            ", queueWaitP99Nanos=" + queueWaitP99Nanos +
+            ", queueWaitP999Nanos=" + queueWaitP999Nanos +
+            ", queueWaitMaxNanos=" + queueWaitMaxNanos +
+            ", runCount=" + runCount +
+            ", runP50Nanos=" + runP50Nanos +
+            ", runP99Nanos=" + runP99Nanos +
+            ", runP999Nanos=" + runP999Nanos +
+            ", runMaxNanos=" + runMaxNanos +
+            ", rejections=" + rejections +
+            ", busyRatio=" + getBusyRatio() + '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.machao.learning.concurrent.Executor;
+
+/**
+ * 通过JMX查看线程池统计信息的管理接口，由ThreadPoolStatsMonitor实现
+ */
+public interface ThreadPoolStatsMXBean {
+
+    /**
+     * 当前统计信息快照
+     */
+    ThreadPoolStats getStats();
+
+    /**
+     * 清空直方图和计数器，重新开始统计
+     */
+    void resetStats();
+}
@@ -0,0 +1,40 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 将线程池的统计信息注册到平台MBeanServer，可以通过jconsole等工具查看
+ */
+public class ThreadPoolStatsMonitor implements ThreadPoolStatsMXBean {
+
+    private final ThreadPoolStatsRecorder recorder;
+
+    public ThreadPoolStatsMonitor(ThreadPoolStatsRecorder recorder) {
+        if (recorder == null)
+            throw new NullPointerException();
+        this.recorder = recorder;
+    }
+
+    public ThreadPoolStats getStats() {
+        return recorder.snapshot();
+    }
+
+    public void resetStats() {
+        recorder.reset();
+    }
+
+    /**
+     * 注册为com.machao.learning:type=ThreadPoolExecutor,name=name
+     */
+    public static ObjectName register(ThreadPoolStatsRecorder recorder, String name)
+        throws JMException {
+        ObjectName objectName = new ObjectName("com.machao.learning:type=ThreadPoolExecutor,name=" +
+                                               ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer()
+            .registerMBean(new ThreadPoolStatsMonitor(recorder), objectName);
+        return objectName;
+    }
+}
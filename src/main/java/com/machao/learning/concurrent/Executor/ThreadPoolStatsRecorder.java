@@ -0,0 +1,137 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程池内置的统计：排队时间和执行时间的直方图、每个拒绝策略的拒绝次数、worker的忙碌与空闲时间
+ *
+ * 由线程池在以下位置调用：
+ * 1. execute()：taskQueued()，TimedFutureTask记录提交时间
+ * 2. runWorker()：执行任务前taskStarted()记录排队时间，执行后taskFinished()记录执行时间
+ * 3. reject()：taskRejected()
+ * 4. worker线程开始和退出：workerStarted()/workerExited()，用于计算worker存活的总时间
+ * 任务路径上只有System.nanoTime()、直方图的原子自增和LongAdder，不分配对象；
+ * worker的开始和退出不频繁，使用synchronized。
+ */
+public class ThreadPoolStatsRecorder {
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LongAdder busyNanos = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+    /** 上次worker数量变化之前所有worker存活的累计时间 */
+    private long workerNanos;
+    /** 上次worker数量变化的时间 */
+    private long lastChangeNanos = System.nanoTime();
+    /** 存活的worker数量 */
+    private int liveWorkers;
+
+    /**
+     * 任务提交到线程池时调用，TimedFutureTask记录提交时间；
+     * 其它任务不记录，也不包装，放入workQueue的仍然是提交的对象
+     */
+    public void taskQueued(Runnable task) {
+        if (task instanceof TimedFutureTask) {
+            TimedFutureTask<?> t = (TimedFutureTask<?>) task;
+            t.enqueueNanos = System.nanoTime();
+            t.enqueued = true;
+        }
+    }
+
+    /**
+     * worker开始执行任务前调用，返回开始时间，作为taskFinished()的参数
+     */
+    public long taskStarted(Runnable task) {
+        long now = System.nanoTime();
+        if (task instanceof TimedFutureTask) {
+            TimedFutureTask<?> t = (TimedFutureTask<?>) task;
+            if (t.enqueued)
+                queueWait.record(now - t.enqueueNanos);
+        }
+        return now;
+    }
+
+    /**
+     * 任务执行完成(包括抛出异常)后调用
+     */
+    public void taskFinished(long startNanos) {
+        long d = System.nanoTime() - startNanos;
+        runTime.record(d);
+        busyNanos.add(d);
+    }
+
+    public void taskRejected(RejectedExecutionHandler handler) {
+        String name = (handler == null) ? "null" : handler.getClass().getName();
+        LongAdder c = rejections.get(name);
+        if (c == null)
+            c = rejections.computeIfAbsent(name, k -> new LongAdder());
+        c.increment();
+    }
+
+    public synchronized void workerStarted() {
+        advance(System.nanoTime());
+        ++liveWorkers;
+    }
+
+    public synchronized void workerExited() {
+        advance(System.nanoTime());
+        --liveWorkers;
+    }
+
+    private void advance(long now) {
+        workerNanos += liveWorkers * (now - lastChangeNanos);
+        lastChangeNanos = now;
+    }
+
+    /**
+     * 当前统计信息快照
+     */
+    public ThreadPoolStats snapshot() {
+        long total;
+        synchronized (this) {
+            advance(System.nanoTime());
+            total = workerNanos;
+        }
+        long[] w = queueWait.counts(), r = runTime.counts();
+        long wn = 0L, rn = 0L;
+        for (long c : w)
+            wn += c;
+        for (long c : r)
+            rn += c;
+        long wmax = queueWait.max(), rmax = runTime.max();
+        Map<String, Long> rejected = new TreeMap<>();
+        rejections.forEach((k, v) -> rejected.put(k, v.sum()));
+        return new ThreadPoolStats(wn,
+                                   LatencyHistogram.valueAt(w, wn, wmax, 0.5),
+                                   LatencyHistogram.valueAt(w, wn, wmax, 0.99),
+                                   LatencyHistogram.valueAt(w, wn, wmax, 0.999),
+                                   wmax,
+                                   rn,
+                                   LatencyHistogram.valueAt(r, rn, rmax, 0.5),
+                                   LatencyHistogram.valueAt(r, rn, rmax, 0.99),
+                                   LatencyHistogram.valueAt(r, rn, rmax, 0.999),
+                                   rmax,
+                                   Collections.unmodifiableMap(rejected),
+                                   busyNanos.sum(), total);
+    }
+
+    /**
+     * 清空直方图和计数器，worker存活时间从现在开始重新计算
+     */
+    public void reset() {
+        queueWait.reset();
+        runTime.reset();
+        busyNanos.reset();
+        rejections.clear();
+        synchronized (this) {
+            workerNanos = 0L;
+            lastChangeNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 记录提交时间的FutureTask，线程池用它统计任务的排队时间
+ *
+ * ThreadPoolExecutor的submit()、invokeAll()等方法创建的都是这个类，时间戳保存在任务对象中，不需要额外分配；
+ * 直接调用execute(Runnable)的任务需要统计排队时间时，可以用new TimedFutureTask<>(task, null)包装后提交。
+ */
+public class TimedFutureTask<V> extends FutureTask<V> {
+
+    /** execute()时的System.nanoTime()，只在enqueued为true时有效 */
+    long enqueueNanos;
+    boolean enqueued;
+
+    public TimedFutureTask(Callable<V> callable) {
+        super(callable);
+    }
+
+    public TimedFutureTask(Runnable runnable, V result) {
+        super(runnable, result);
+    }
+}
@@ -0,0 +1,80 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadPoolExecutor共享队列模式与工作窃取模式的对比测试
+ *
+ * 场景：每轮向线程池提交ROOTS个根任务，每个根任务在worker中再提交CHILDREN个很小的子任务，
+ * 所有子任务完成后一轮结束；分别使用1、2、4...个线程，输出每个任务的平均纳秒数。
+ * 共享队列模式下所有任务都经过workQueue(LinkedBlockingQueue)的锁，
+ * 工作窃取模式下子任务放入提交它的worker的本地队列，空闲的worker再去窃取。
+ */
+public class WorkStealingBenchmark {
+
+	static final int ROOTS = 64;
+	static final int CHILDREN = 1 << 12;
+
+	static final int WARMUP_ROUNDS = 10;
+	static final int MEASURE_ROUNDS = 20;
+
+	// 防止JIT消除结果
+	static volatile long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		System.out.println("threads\tshared queue(ns/task)\twork stealing(ns/task)");
+		for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+			double shared = measure(threads, false);
+			double stealing = measure(threads, true);
+			System.out.printf("%d\t%.1f\t%.1f%n", threads, shared, stealing);
+		}
+	}
+
+	/**
+	 * 预热后计时，返回每个任务的平均纳秒数
+	 */
+	static double measure(int threads, boolean workStealing) throws InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), Executors.defaultThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy(), workStealing);
+		pool.prestartAllCoreThreads();
+		try {
+			for (int i = 0; i < WARMUP_ROUNDS; i++)
+				runRound(pool);
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURE_ROUNDS; i++)
+				runRound(pool);
+			return (double) (System.nanoTime() - start) / ((long) MEASURE_ROUNDS * ROOTS * (CHILDREN + 1));
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	static void runRound(ThreadPoolExecutor pool) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicInteger remaining = new AtomicInteger(ROOTS * CHILDREN);
+		Runnable child = () -> {
+			// 微秒以下的小任务
+			long x = System.nanoTime();
+			for (int i = 0; i < 32; i++)
+				x = x * 31 + i;
+			if ((x & 0xFFFF) == 0)
+				sink = x;
+			if (remaining.decrementAndGet() == 0)
+				done.countDown();
+		};
+		for (int i = 0; i < ROOTS; i++) {
+			pool.execute(() -> {
+				for (int j = 0; j < CHILDREN; j++)
+					pool.execute(child);
+			});
+		}
+		done.await();
+	}
+}
@@ -12,12 +12,11 @@ import java.util.SortedSet;
 import java.util.Spliterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
-import sun.misc.SharedSecrets;
-
 /**
  * An unbounded {@linkplain BlockingQueue blocking queue} that uses
  * the same ordering rules as class {@link PriorityQueue} and supplies
@@ -258,8 +257,7 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         lock.unlock(); // must release and then re-acquire main lock
         Object[] newArray = null;
         if (allocationSpinLock == 0 &&
-            UNSAFE.compareAndSwapInt(this, allocationSpinLockOffset,
-                                     0, 1)) {
+            ALLOCATIONSPINLOCK.compareAndSet(this, 0, 1)) {
             try {
                 int newCap = oldCap + ((oldCap < 64) ?
                                        (oldCap + 2) : // grow faster if small
@@ -909,9 +907,10 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         throws java.io.IOException, ClassNotFoundException {
         try {
             s.defaultReadObject();
+            // JDK中这里用SharedSecrets检查数组大小，JDK之外不能访问；
+            // q是已经反序列化完成的PriorityQueue，它的readObject()已经做过同样的检查
             int sz = q.size();
-            SharedSecrets.getJavaOISAccess().checkArray(s, Object[].class, sz);
-            this.queue = new Object[sz];
+            this.queue = new Object[Math.max(1, sz)];
             comparator = q.comparator();
             addAll(q);
         } finally {
@@ -998,17 +997,9 @@ public class PriorityBlockingQueue<E> extends AbstractQueue<E>
         return new PBQSpliterator<E>(this, null, 0, -1);
     }
 
-    // Unsafe mechanics
-    private static final sun.misc.Unsafe UNSAFE;
-    private static final long allocationSpinLockOffset;
-    static {
-        try {
-            UNSAFE = sun.misc.Unsafe.getUnsafe();
-            Class<?> k = PriorityBlockingQueue.class;
-            allocationSpinLockOffset = UNSAFE.objectFieldOffset
-                (k.getDeclaredField("allocationSpinLock"));
-        } catch (Exception e) {
-            throw new Error(e);
-        }
-    }
+    // Atomic field updater
+    // JDK中用Unsafe CAS allocationSpinLock，sun.misc.Unsafe.getUnsafe()在应用类路径上抛出SecurityException
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PriorityBlockingQueue> ALLOCATIONSPINLOCK =
+        AtomicIntegerFieldUpdater.newUpdater(PriorityBlockingQueue.class, "allocationSpinLock");
 }
@@ -0,0 +1,100 @@
+package com.machao.learning.concurrent.ThreadPoolExecutor;
+
+/**
+ * PoolSizeController一个采样周期内线程池的运行情况，传给PoolSizePolicy计算期望的线程数
+ *
+ * 完成任务数、忙碌时间、worker存活时间都是这个周期内的增量；
+ * 平均排队时间按利特尔法则(L = λW)由队列长度和吞吐量估算，不需要逐个任务的提交时间。
+ */
+public final class PoolSample {
+
+    private final long intervalNanos;
+    private final int poolSize;
+    private final long completedTasks;
+    private final int queueSize;
+    private final int queueDelta;
+    private final long busyNanos;
+    private final long workerNanos;
+    private final double cpuLoad;
+
+    PoolSample(long intervalNanos, int poolSize, long completedTasks, int queueSize,
+               int queueDelta, long busyNanos, long workerNanos, double cpuLoad) {
+        this.intervalNanos = intervalNanos;
+        this.poolSize = poolSize;
+        this.completedTasks = completedTasks;
+        this.queueSize = queueSize;
+        this.queueDelta = queueDelta;
+        this.busyNanos = busyNanos;
+        this.workerNanos = workerNanos;
+        this.cpuLoad = cpuLoad;
+    }
+
+    /** 采样周期(纳秒) */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /** 采样时设置的线程数(corePoolSize) */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /** 周期内完成的任务数 */
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    /** 采样时队列中的任务数 */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /** 周期内队列长度的变化，大于0说明处理不过来 */
+    public int getQueueDelta() {
+        return queueDelta;
+    }
+
+    /** 吞吐量(任务/秒) */
+    public double getThroughput() {
+        return completedTasks * 1e9 / intervalNanos;
+    }
+
+    /** 到达速率(任务/秒)，完成的任务加上队列中增加的任务 */
+    public double getArrivalRate() {
+        return Math.max(0.0, (completedTasks + queueDelta) * 1e9 / intervalNanos);
+    }
+
+    /** 任务的平均执行时间(纳秒)，包括任务中阻塞(IO)的时间 */
+    public double getMeanRunNanos() {
+        return completedTasks == 0L ? 0.0 : (double) busyNanos / completedTasks;
+    }
+
+    /** 平均排队时间(纳秒)，队列长度 / 吞吐量；有积压但没有任务完成时为无穷大 */
+    public double getMeanQueueWaitNanos() {
+        if (queueSize == 0)
+            return 0.0;
+        return completedTasks == 0L ? Double.POSITIVE_INFINITY
+            : queueSize * (double) intervalNanos / completedTasks;
+    }
+
+    /** worker执行任务的时间占存活时间的比例 */
+    public double getBusyRatio() {
+        return workerNanos <= 0L ? 0.0 : Math.min(1.0, (double) busyNanos / workerNanos);
+    }
+
+    /** 进程的CPU使用率[0, 1]，无法获取时为负数 */
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    public String toString() {
+        return "PoolSample{poolSize=" + poolSize +
+            ", throughput=" + getThroughput() +
+            ", arrivalRate=" + getArrivalRate() +
+            ", queueSize=" + queueSize +
+            ", meanRunNanos=" + getMeanRunNanos() +
+            ", meanQueueWaitNanos=" + getMeanQueueWaitNanos() +
+            ", busyRatio=" + getBusyRatio() +
+            ", cpuLoad=" + cpuLoad + '}';
+    }
+}
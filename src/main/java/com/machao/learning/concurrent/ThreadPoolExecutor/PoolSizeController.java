@@ -0,0 +1,301 @@
+package com.machao.learning.concurrent.ThreadPoolExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.machao.learning.concurrent.Executor.ThreadPoolStats;
+
+/**
+ * 运行时自动调整线程池大小的反馈控制器
+ *
+ * 手工设置的corePoolSize/maximumPoolSize在任务的IO与CPU比例变化后，不是线程太多(CPU争抢、上下文切换)就是线程太少(任务积压)；
+ * 控制器每个周期采样一次：
+ * 1. 从pool.stats()取完成任务数、worker忙碌时间和存活时间，与上次采样相减得到这个周期的增量
+ * 2. 队列长度及其变化，进程的CPU使用率
+ * 3. 交给PoolSizePolicy计算期望的线程数，再按阻尼(damping)和最大步长(maxStep)向期望值移动，
+ *    限制在[minPoolSize, maxPoolSize]之间，通过setCorePoolSize()/setMaximumPoolSize()设置，两者保持相等
+ * 启动后线程数由控制器管理，不应该再手工设置；用户调用resetStats()后的一个周期不调整。
+ */
+public class PoolSizeController {
+
+    private final ThreadPoolExecutor pool;
+    private final PoolSizePolicy policy;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long intervalNanos;
+
+    /** 每次向期望值移动的比例(0, 1]，越小越平稳，默认0.5 */
+    private volatile double damping = 0.5;
+
+    /** 每次最多增加或减少的线程数，默认4 */
+    private volatile int maxStep = 4;
+
+    private ScheduledExecutorService timer;
+
+    /* 上次采样的累计值，只在sample()中访问 */
+    private long lastNanos;
+    private long lastRunCount;
+    private long lastBusyNanos;
+    private long lastWorkerNanos;
+    private int lastQueueSize;
+
+    private volatile PoolSample lastSample;
+
+    /**
+     * @param pool 要调整的线程池
+     * @param policy 计算期望线程数的策略
+     * @param minPoolSize 线程数下限
+     * @param maxPoolSize 线程数上限
+     * @param interval 采样周期
+     * @param unit interval的时间单位
+     */
+    public PoolSizeController(ThreadPoolExecutor pool, PoolSizePolicy policy,
+                              int minPoolSize, int maxPoolSize,
+                              long interval, TimeUnit unit) {
+        if (pool == null || policy == null || unit == null)
+            throw new NullPointerException();
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize || interval <= 0)
+            throw new IllegalArgumentException();
+        this.pool = pool;
+        this.policy = policy;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.intervalNanos = unit.toNanos(interval);
+        rebase(System.nanoTime(), pool.stats());
+    }
+
+    public void setDamping(double damping) {
+        if (!(damping > 0.0 && damping <= 1.0))
+            throw new IllegalArgumentException();
+        this.damping = damping;
+    }
+
+    public double getDamping() {
+        return damping;
+    }
+
+    public void setMaxStep(int maxStep) {
+        if (maxStep <= 0)
+            throw new IllegalArgumentException();
+        this.maxStep = maxStep;
+    }
+
+    public int getMaxStep() {
+        return maxStep;
+    }
+
+    /**
+     * 在一个守护线程中按周期调整，线程池终止后自动停止
+     */
+    public synchronized void start() {
+        if (timer != null)
+            throw new IllegalStateException("already started");
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-size-controller");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = intervalNanos;
+        timer.scheduleWithFixedDelay(() -> {
+            if (pool.isTerminated())
+                stop();
+            else
+                adjust();
+        }, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+    }
+
+    /**
+     * 最近一次的采样，还没有采样时为null
+     */
+    public PoolSample getLastSample() {
+        return lastSample;
+    }
+
+    /**
+     * 采样并调整一次，返回调整后的线程数；start()之后由定时线程调用，也可以自己按需调用
+     */
+    public synchronized int adjust() {
+        int current = pool.getCorePoolSize();
+        PoolSample s = sample(current);
+        if (s == null)
+            return current;
+        lastSample = s;
+        int next = dampen(current, policy.targetPoolSize(s));
+        if (next != current)
+            setPoolSize(next);
+        return next;
+    }
+
+    /**
+     * 从current向target移动damping的比例，至少移动1，最多移动maxStep，并限制在上下限之间
+     */
+    int dampen(int current, int target) {
+        target = Math.max(minPoolSize, Math.min(maxPoolSize, target));
+        int diff = target - current;
+        if (diff == 0)
+            return current;
+        int step = (int) Math.round(diff * damping);
+        if (step == 0)
+            step = (diff > 0) ? 1 : -1;
+        int limit = maxStep;
+        step = Math.max(-limit, Math.min(limit, step));
+        return Math.max(minPoolSize, Math.min(maxPoolSize, current + step));
+    }
+
+    /**
+     * 增加时先设置maximumPoolSize，减少时先设置corePoolSize，保证maximumPoolSize不小于corePoolSize
+     */
+    private void setPoolSize(int n) {
+        if (n > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(n);
+            pool.setCorePoolSize(n);
+        } else {
+            pool.setCorePoolSize(n);
+            pool.setMaximumPoolSize(n);
+        }
+    }
+
+    /**
+     * 与上次采样的累计值相减得到这个周期的增量，统计被重置(增量为负)时返回null
+     */
+    private PoolSample sample(int poolSize) {
+        long now = System.nanoTime();
+        ThreadPoolStats stats = pool.stats();
+        int queueSize = pool.getQueue().size();
+        long completed = stats.getRunCount() - lastRunCount;
+        long busy = stats.getBusyNanos() - lastBusyNanos;
+        long worker = stats.getWorkerNanos() - lastWorkerNanos;
+        long interval = now - lastNanos;
+        int queueDelta = queueSize - lastQueueSize;
+        rebase(now, stats);
+        lastQueueSize = queueSize;
+        if (completed < 0L || busy < 0L || worker < 0L || interval <= 0L)
+            return null;
+        return new PoolSample(interval, poolSize, completed, queueSize, queueDelta,
+                              busy, worker, processCpuLoad());
+    }
+
+    private void rebase(long now, ThreadPoolStats stats) {
+        lastNanos = now;
+        lastRunCount = stats.getRunCount();
+        lastBusyNanos = stats.getBusyNanos();
+        lastWorkerNanos = stats.getWorkerNanos();
+    }
+
+    /**
+     * 进程最近的CPU使用率，JVM不支持com.sun.management时返回-1
+     */
+    static double processCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        return -1.0;
+    }
+
+    /**
+     * 爬山法，参考.NET线程池的线程注入算法：
+     * 每个周期按当前方向改变step个线程，比较改变前后的吞吐量，
+     * 吞吐量提高超过threshold时继续同一方向，降低超过threshold时反向，变化不明显时倾向于减少线程；
+     * 队列为空并且忙碌比例低于idleRatio时直接减少。
+     * CPU密集的任务增加线程后吞吐量不再提高，会停在CPU核数附近；IO密集的任务会一直增加到吞吐量不再提高。
+     */
+    public static class HillClimbingPolicy implements PoolSizePolicy {
+        private final int step;
+        private final double threshold;
+        private final double idleRatio;
+
+        private int lastSize = -1;
+        private double lastThroughput;
+        private int direction = 1;
+
+        /**
+         * step为1，吞吐量变化超过5%才认为有效，忙碌比例低于0.5时减少
+         */
+        public HillClimbingPolicy() {
+            this(1, 0.05, 0.5);
+        }
+
+        public HillClimbingPolicy(int step, double threshold, double idleRatio) {
+            if (step <= 0 || threshold < 0.0 || idleRatio < 0.0 || idleRatio > 1.0)
+                throw new IllegalArgumentException();
+            this.step = step;
+            this.threshold = threshold;
+            this.idleRatio = idleRatio;
+        }
+
+        public int targetPoolSize(PoolSample s) {
+            int n = s.getPoolSize();
+            double throughput = s.getThroughput();
+            if (s.getQueueSize() == 0 && s.getBusyRatio() < idleRatio) {
+                lastSize = -1;
+                direction = -1;
+                return n - step;
+            }
+            if (lastSize >= 0 && lastSize != n) {
+                double change = (throughput - lastThroughput) / Math.max(lastThroughput, 1.0);
+                boolean grew = n > lastSize;
+                if (change > threshold)
+                    direction = grew ? 1 : -1;
+                else if (change < -threshold)
+                    direction = grew ? -1 : 1;
+                else
+                    direction = -1;
+            } else if (lastSize < 0 && s.getQueueSize() > 0) {
+                // 第一次或空闲之后出现积压，先增加
+                direction = 1;
+            }
+            lastSize = n;
+            lastThroughput = throughput;
+            return n + direction * step;
+        }
+    }
+
+    /**
+     * 按利特尔法则计算需要的并发数：并发数 = 到达速率 × 平均执行时间，
+     * 再加上在一个周期内消化队列积压需要的并发数，除以目标忙碌比例targetUtilization留出余量；
+     * 平均执行时间包括任务中阻塞的时间，所以IO密集的任务需要的线程更多。
+     * 进程CPU使用率达到cpuCeiling时不再增加线程，避免CPU密集的任务因为争抢CPU执行变慢而继续增加线程。
+     */
+    public static class LittlesLawPolicy implements PoolSizePolicy {
+        private final double targetUtilization;
+        private final double cpuCeiling;
+
+        /**
+         * 目标忙碌比例0.85，CPU使用率0.9以上不再增加
+         */
+        public LittlesLawPolicy() {
+            this(0.85, 0.9);
+        }
+
+        public LittlesLawPolicy(double targetUtilization, double cpuCeiling) {
+            if (!(targetUtilization > 0.0 && targetUtilization <= 1.0) || !(cpuCeiling > 0.0))
+                throw new IllegalArgumentException();
+            this.targetUtilization = targetUtilization;
+            this.cpuCeiling = cpuCeiling;
+        }
+
+        public int targetPoolSize(PoolSample s) {
+            int n = s.getPoolSize();
+            // 没有完成的任务无法估计执行时间，有积压时先增加
+            if (s.getCompletedTasks() == 0L)
+                return s.getQueueSize() > 0 ? n + 1 : n;
+            double runSeconds = s.getMeanRunNanos() / 1e9;
+            double backlogRate = s.getQueueSize() * 1e9 / s.getIntervalNanos();
+            double demand = (s.getArrivalRate() + backlogRate) * runSeconds;
+            int target = (int) Math.ceil(demand / targetUtilization);
+            if (target > n && s.getCpuLoad() >= cpuCeiling)
+                return n;
+            return Math.max(1, target);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.machao.learning.concurrent.ThreadPoolExecutor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.machao.learning.concurrent.Executor.ThreadPoolStats;
+
+/**
+ * PoolSizeController的收敛测试
+ *
+ * 场景：线程池从1个线程开始，以固定速率提交任务(开环，不等待任务完成)，分两个阶段：
+ * 1. IO密集：每个任务sleep IO_MILLIS毫秒，需要的线程数约为 速率 × IO_MILLIS / 1000
+ * 2. CPU密集：每个任务计算CPU_MICROS微秒，需要的线程数不超过CPU核数
+ * 分别使用固定线程数、HillClimbingPolicy、LittlesLawPolicy，输出每个阶段结束时的线程数、吞吐量和排队时间p99
+ */
+public class PoolSizeControllerBenchmark {
+
+	static final int IO_RATE = 1000;
+	static final long IO_MILLIS = 10;
+
+	static final int CPU_RATE = 2000;
+	static final long CPU_MICROS = 100;
+
+	static final long PHASE_MILLIS = 4000;
+	static final long INTERVAL_MILLIS = 100;
+
+	// 防止JIT消除结果
+	static volatile long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println("cpus=" + Runtime.getRuntime().availableProcessors());
+		System.out.println("policy\tphase\tpool size\tthroughput(tasks/s)\tqueue wait p99(ms)");
+		run("fixed(1)", null);
+		run("hill climbing", new PoolSizeController.HillClimbingPolicy());
+		run("little's law", new PoolSizeController.LittlesLawPolicy());
+	}
+
+	static void run(String name, PoolSizePolicy policy) throws InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		PoolSizeController controller = null;
+		if (policy != null) {
+			controller = new PoolSizeController(pool, policy, 1, 256, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			controller.start();
+		}
+		phase(name, "io", pool, IO_RATE, () -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(IO_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		phase(name, "cpu", pool, CPU_RATE, () -> {
+			long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(CPU_MICROS);
+			long x = 0;
+			while (System.nanoTime() < end)
+				x++;
+			sink = x;
+		});
+		if (controller != null)
+			controller.stop();
+		pool.shutdownNow();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 以rate的速率提交task，持续PHASE_MILLIS，只统计后一半时间
+	 */
+	static void phase(String name, String phase, ThreadPoolExecutor pool, int rate, Runnable task) {
+		long start = System.nanoTime();
+		long half = start + TimeUnit.MILLISECONDS.toNanos(PHASE_MILLIS / 2);
+		long end = start + TimeUnit.MILLISECONDS.toNanos(PHASE_MILLIS);
+		long submitted = 0;
+		boolean measuring = false;
+		long measureStart = 0, completedAtStart = 0;
+		for (long now; (now = System.nanoTime()) < end; ) {
+			if (!measuring && now >= half) {
+				measuring = true;
+				measureStart = now;
+				completedAtStart = pool.getCompletedTaskCount();
+				pool.resetStats();
+			}
+			long due = (now - start) * rate / 1_000_000_000L;
+			for (; submitted < due; submitted++)
+				pool.submit(task);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		double throughput = (pool.getCompletedTaskCount() - completedAtStart) * 1e9 / (System.nanoTime() - measureStart);
+		ThreadPoolStats stats = pool.stats();
+		System.out.printf("%s\t%s\t%d\t%.0f\t%.1f%n", name, phase, pool.getCorePoolSize(), throughput,
+				stats.getQueueWaitP99Nanos() / 1e6);
+		// 下一个阶段不受积压的任务影响
+		pool.getQueue().clear();
+	}
+}
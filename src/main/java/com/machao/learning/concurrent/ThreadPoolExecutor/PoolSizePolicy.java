@@ -0,0 +1,17 @@
+package com.machao.learning.concurrent.ThreadPoolExecutor;
+
+/**
+ * PoolSizeController调整线程数的策略
+ *
+ * 每个采样周期调用一次，总是在控制器的线程中调用，实现可以保存状态而不需要同步；
+ * 返回的线程数由控制器按上下限、阻尼和最大步长调整后再设置到线程池。
+ * 内置的实现见PoolSizeController.HillClimbingPolicy和PoolSizeController.LittlesLawPolicy。
+ */
+@FunctionalInterface
+public interface PoolSizePolicy {
+
+    /**
+     * 根据这个周期的采样返回期望的线程数
+     */
+    int targetPoolSize(PoolSample sample);
+}
@@ -10,11 +10,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,6 +24,10 @@ import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.machao.learning.concurrent.Executor.ThreadPoolStats;
+import com.machao.learning.concurrent.Executor.ThreadPoolStatsRecorder;
+import com.machao.learning.concurrent.Executor.TimedFutureTask;
+
 public class ThreadPoolExecutor extends AbstractExecutorService {
 	// ctl是用一个AtomicInteger变量存放两个字段，一共32位
 	// workerCount线程池线程个数。低29位表示。以后如果线程池支持的线程数量变多，可以改成AtomicLong。
@@ -230,6 +236,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     /* The context to be used when executing the finalizer, or null. */
     private final AccessControlContext acc;
 
+    /**
+     * 排队时间、执行时间、拒绝次数和worker忙碌时间的统计
+     */
+    private final ThreadPoolStatsRecorder stats = new ThreadPoolStatsRecorder();
+
     /**
      * 工作线程类
      */
@@ -472,6 +483,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
+        stats.taskRejected(handler);
     	// TODO 本地类将此处注释
         //handler.rejectedExecution(command, this);
     }
@@ -745,6 +757,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Runnable task = w.firstTask;
         w.firstTask = null;
         w.unlock(); // allow interrupts
+        stats.workerStarted(); // 统计worker存活时间
         boolean completedAbruptly = true;
         try {
             while (task != null || (task = getTask()) != null) {// 如果worker中的初始任务为null则从任务队列中取出一个任务
@@ -759,6 +772,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                       runStateAtLeast(ctl.get(), STOP))) &&
                     !wt.isInterrupted())
                     wt.interrupt();
+                long started = stats.taskStarted(task); // 记录排队时间
                 try {
                 	//执行run之前调用回调函数，空方法留给子类实现
                     beforeExecute(wt, task);
@@ -772,6 +786,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     } catch (Throwable x) {
                         thrown = x; throw new Error(x);
                     } finally {// run执行之后调用的回调函数，空方法留给子类实现
+                        stats.taskFinished(started); // 记录执行时间
                         afterExecute(task, thrown);
                     }
                 } finally {
@@ -787,6 +802,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
              * 从上面可以看出如果实际业务(外部提交的Runnable)出现异常会导致当前worker终止
              * completedAbruptly 此时为true意味着worker是突然完成，不是正常退出
              */
+            stats.workerExited();
             processWorkerExit(w, completedAbruptly);// 执行worker退出收尾工作
         }
     }
@@ -998,6 +1014,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     	// NULL检查，线程池不允许提交NULL任务
         if (command == null)
             throw new NullPointerException();
+        stats.taskQueued(command); // TimedFutureTask记录提交时间
         /*
          * Proceed in 3 steps:
          *
@@ -1461,6 +1478,38 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
 
     /* Statistics */
 
+    /**
+     * submit()等方法创建记录提交时间的TimedFutureTask，用于统计排队时间
+     */
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TimedFutureTask<T>(runnable, value);
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TimedFutureTask<T>(callable);
+    }
+
+    /**
+     * 排队时间和执行时间的分位数、拒绝次数、worker忙碌比例的快照
+     */
+    public ThreadPoolStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * 清空统计，重新开始
+     */
+    public void resetStats() {
+        stats.reset();
+    }
+
+    /**
+     * 统计的记录者，用于通过ThreadPoolStatsMonitor.register()注册JMX MBean
+     */
+    public ThreadPoolStatsRecorder getStatsRecorder() {
+        return stats;
+    }
+
     /**
      * Returns the current number of threads in the pool.
      *
@@ -0,0 +1,225 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 异步加载value的并发Map，加载函数不在ConcurrentHashMap的桶锁中执行
+ *
+ * ConcurrentHashMap.computeIfAbsent()在synchronized(f)或ReservationNode占位期间执行mappingFunction，
+ * 一个耗时的加载(查数据库、Redis)会阻塞所有落在同一个桶中的key，加载函数再访问同一个桶中的其它key时还可能死锁；
+ * 这里的做法：
+ * 1. data保存key到CompletableFuture的映射，get()先不加锁地读取，已有future(加载中或已完成)时直接返回
+ * 2. 不存在时用putIfAbsent()放入一个未完成的future作为占位，只在插入节点时短暂持有桶锁
+ * 3. 放入成功的线程把加载函数提交到executor，在锁外执行，完成后设置future的结果；
+ *    放入失败说明其它线程已经在加载，返回已有的future，同一个key的并发请求只加载一次
+ * 4. 加载失败、返回null或者future被取消时，先从data中删除这个future再通知调用者，之后的get()会重新加载
+ * 加载函数中不能阻塞等待同一个key的future(自己等待自己)，需要时用thenCompose()组合。
+ * 不允许null键。
+ */
+public class AsyncLoadingMap<K,V> {
+
+    final ConcurrentHashMap<K,CompletableFuture<V>> data;
+
+    /**
+     * 没有指定executor的加载在这里执行
+     */
+    final Executor executor;
+
+    final LongAdder loadCount = new LongAdder();
+    final LongAdder loadFailureCount = new LongAdder();
+
+    /**
+     * 加载函数在ForkJoinPool.commonPool()中执行；加载函数会阻塞(IO)时应该指定专门的executor
+     */
+    public AsyncLoadingMap() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AsyncLoadingMap(Executor executor) {
+        if (executor == null)
+            throw new NullPointerException();
+        this.data = new ConcurrentHashMap<>();
+        this.executor = executor;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回key的value，不存在时在默认的executor中执行loader加载
+     */
+    public CompletableFuture<V> get(K key, Function<? super K, ? extends V> loader) {
+        return get(key, loader, executor);
+    }
+
+    /**
+     * 返回key的value，不存在时在executor中执行loader加载；
+     * 并发调用同一个key时只执行一次loader，所有调用者得到同一个future
+     */
+    public CompletableFuture<V> get(K key, Function<? super K, ? extends V> loader, Executor executor) {
+        if (key == null || loader == null || executor == null)
+            throw new NullPointerException();
+        CompletableFuture<V> f = data.get(key);
+        if (f != null)
+            return f;
+        CompletableFuture<V> placeholder = new CompletableFuture<>();
+        if ((f = data.putIfAbsent(key, placeholder)) != null)
+            return f;
+        install(key, placeholder);
+        loadCount.increment();
+        try {
+            executor.execute(() -> {
+                V value;
+                try {
+                    value = loader.apply(key);
+                } catch (Throwable ex) {
+                    fail(key, placeholder, ex);
+                    return;
+                }
+                complete(key, placeholder, value);
+            });
+        } catch (Throwable ex) {
+            // RejectedExecutionException
+            fail(key, placeholder, ex);
+        }
+        return placeholder;
+    }
+
+    /**
+     * 返回key的value，不存在时调用loader发起异步加载，适用于本身就是异步的客户端(如异步的Redis客户端)；
+     * loader在调用线程中执行，只应该发起请求并返回future，不应该阻塞
+     */
+    public CompletableFuture<V> getAsync(K key,
+            BiFunction<? super K, ? super Executor, ? extends CompletableFuture<? extends V>> loader) {
+        if (key == null || loader == null)
+            throw new NullPointerException();
+        CompletableFuture<V> f = data.get(key);
+        if (f != null)
+            return f;
+        CompletableFuture<V> placeholder = new CompletableFuture<>();
+        if ((f = data.putIfAbsent(key, placeholder)) != null)
+            return f;
+        install(key, placeholder);
+        loadCount.increment();
+        CompletableFuture<? extends V> loading;
+        try {
+            loading = loader.apply(key, executor);
+        } catch (Throwable ex) {
+            fail(key, placeholder, ex);
+            return placeholder;
+        }
+        if (loading == null) {
+            fail(key, placeholder, new NullPointerException("loader returned null future"));
+            return placeholder;
+        }
+        loading.whenComplete((value, ex) -> {
+            if (ex != null)
+                fail(key, placeholder, ex);
+            else
+                complete(key, placeholder, value);
+        });
+        return placeholder;
+    }
+
+    /**
+     * 返回key的future(加载中或已完成)，不存在时返回null，不会触发加载
+     */
+    public CompletableFuture<V> getIfPresent(Object key) {
+        return data.get(key);
+    }
+
+    /**
+     * 已经加载完成时返回value，不存在、加载中或加载失败时返回null
+     */
+    public V getNow(Object key) {
+        CompletableFuture<V> f = data.get(key);
+        return (f != null && f.isDone() && !f.isCompletedExceptionally()) ? f.join() : null;
+    }
+
+    /**
+     * 直接设置value，替换已有的future；正在进行的加载完成后不会覆盖这个value
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        data.put(key, CompletableFuture.completedFuture(value));
+    }
+
+    /**
+     * 删除key，返回删除前的future；正在进行的加载仍会完成这个future，但不会再放回Map
+     */
+    public CompletableFuture<V> remove(Object key) {
+        return data.remove(key);
+    }
+
+    public void clear() {
+        data.clear();
+    }
+
+    /**
+     * key的数量，包括正在加载的
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * 遍历每个key和它的future
+     */
+    public void forEach(BiConsumer<? super K, ? super CompletableFuture<V>> action) {
+        data.forEach(action);
+    }
+
+    /**
+     * 执行加载的次数，被合并的并发请求不计入
+     */
+    public long loadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * 加载失败、返回null或被取消的次数
+     */
+    public long loadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    public String toString() {
+        return data.toString();
+    }
+
+    /* ---------------- Completion -------------- */
+
+    /**
+     * 调用者取消future时删除占位；加载过程中的完成由complete()/fail()先删除再设置结果
+     */
+    private void install(K key, CompletableFuture<V> placeholder) {
+        placeholder.whenComplete((value, ex) -> {
+            if (ex != null && data.remove(key, placeholder))
+                loadFailureCount.increment();
+        });
+    }
+
+    private void complete(K key, CompletableFuture<V> placeholder, V value) {
+        // 与computeIfAbsent()相同，null表示没有value，不保留映射
+        if (value == null && data.remove(key, placeholder))
+            loadFailureCount.increment();
+        placeholder.complete(value);
+    }
+
+    private void fail(K key, CompletableFuture<V> placeholder, Throwable ex) {
+        // 先删除再通知，调用者收到异常后重试时会重新加载
+        if (data.remove(key, placeholder))
+            loadFailureCount.increment();
+        placeholder.completeExceptionally(ex);
+    }
+}
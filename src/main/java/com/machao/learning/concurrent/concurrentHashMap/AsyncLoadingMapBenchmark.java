@@ -0,0 +1,87 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConcurrentHashMap.computeIfAbsent()与AsyncLoadingMap的对比测试
+ *
+ * 场景：一个key的加载耗时LOAD_MILLIS(模拟查询数据库)，加载期间：
+ * 1. 其它线程读取落在同一个桶中的另一个key(默认容量16，key相差16即同一个桶)，输出等待时间
+ * 2. CALLERS个线程同时请求正在加载的key，输出加载函数执行的次数
+ */
+public class AsyncLoadingMapBenchmark {
+
+	// 慢加载的耗时
+	static final long LOAD_MILLIS = 200;
+
+	// 并发请求同一个key的线程数
+	static final int CALLERS = 32;
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService loaders = Executors.newFixedThreadPool(4);
+		ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+
+		System.out.println("map\tsame-bin key wait(ms)\tloads for " + CALLERS + " callers");
+
+		ConcurrentHashMap<Integer, String> map = new ConcurrentHashMap<>();
+		AtomicInteger syncLoads = new AtomicInteger();
+		callers.execute(() -> map.computeIfAbsent(1, k -> slowLoad(k, syncLoads)));
+		TimeUnit.MILLISECONDS.sleep(20);
+		long start = System.nanoTime();
+		map.computeIfAbsent(17, k -> "fast");
+		double syncWait = (System.nanoTime() - start) / 1e6;
+		map.clear();
+		syncLoads.set(0);
+		runCallers(callers, () -> map.computeIfAbsent(2, k -> slowLoad(k, syncLoads)));
+		System.out.printf("ConcurrentHashMap.computeIfAbsent\t%.2f\t%d%n", syncWait, syncLoads.get());
+
+		AsyncLoadingMap<Integer, String> async = new AsyncLoadingMap<>(loaders);
+		AtomicInteger asyncLoads = new AtomicInteger();
+		async.get(1, k -> slowLoad(k, asyncLoads));
+		TimeUnit.MILLISECONDS.sleep(20);
+		start = System.nanoTime();
+		async.get(17, k -> "fast").join();
+		double asyncWait = (System.nanoTime() - start) / 1e6;
+		asyncLoads.set(0);
+		runCallers(callers, () -> async.get(2, k -> slowLoad(k, asyncLoads)).join());
+		System.out.printf("AsyncLoadingMap\t%.2f\t%d%n", asyncWait, asyncLoads.get());
+
+		loaders.shutdown();
+		callers.shutdown();
+	}
+
+	static String slowLoad(Integer key, AtomicInteger loads) {
+		loads.incrementAndGet();
+		try {
+			TimeUnit.MILLISECONDS.sleep(LOAD_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "value" + key;
+	}
+
+	/**
+	 * CALLERS个线程同时执行action，等待全部完成
+	 */
+	static void runCallers(ExecutorService callers, Runnable action) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(CALLERS);
+		for (int i = 0; i < CALLERS; i++) {
+			callers.execute(() -> {
+				try {
+					start.await();
+					action.run();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		start.countDown();
+		done.await();
+	}
+}
@@ -0,0 +1,703 @@
+/*
+ * Copyright 2014 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Modified: the eviction policy (evictFromMain, admit and the window/probation/protected
+ * queues) is adapted from Caffeine's com.github.benmanes.caffeine.cache.BoundedLocalCache,
+ * and the striped read buffer from its StripedBuffer and BoundedBuffer
+ * (https://github.com/ben-manes/caffeine); comments translated, rebuilt on this
+ * package's ConcurrentHashMap.
+ */
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 基于ConcurrentHashMap的有界并发缓存，使用W-TinyLFU淘汰策略
+ *
+ * 结构：
+ * 1. data：ConcurrentHashMap保存key到Node的映射，get()只读data，不加锁
+ * 2. 淘汰策略：新元素先进入window(LRU，约占1%容量)，被挤出window的元素作为候选者进入probation，
+ *    与probation中最久未访问的元素比较FrequencySketch中的访问频率，频率高的留下；
+ *    probation中再次被访问的元素晋升到protected(约占主区域的80%)，protected满时最久未访问的元素降级到probation
+ * 3. 读缓冲：按线程分散到多个固定大小的环形缓冲区，写入只有一次CAS，缓冲区满或CAS失败时直接丢弃这次访问记录
+ * 4. 写缓冲：新增、修改权重和删除操作以任务形式放入无锁队列
+ * 淘汰策略的数据结构只由获得evictionLock的线程修改：读缓冲满或有写任务时，调用线程tryLock()成功后批量处理两个缓冲区并淘汰，
+ * 获取锁失败的线程直接返回，由持有锁的线程处理，因此淘汰的开销分摊到各次操作中；
+ * 容量按权重计算，默认每个元素的权重为1；不允许null键或null值。
+ * 淘汰策略和读缓冲改编自Caffeine的BoundedLocalCache、StripedBuffer和BoundedBuffer(Apache License 2.0，见文件头)。
+ */
+public class BoundedCache<K,V> {
+
+    /* ---------------- Constants -------------- */
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * window区域占总容量的比例
+     */
+    static final double WINDOW_PERCENT = 0.01d;
+
+    /**
+     * protected区域占主区域(probation + protected)的比例
+     */
+    static final double PROTECTED_PERCENT = 0.80d;
+
+    /**
+     * 读缓冲的分段数量
+     */
+    static final int READ_BUFFER_STRIPES = ConcurrentHashMap.tableSizeFor(4 * NCPU);
+
+    /**
+     * 写缓冲中积压的任务超过此值时，写线程阻塞等待evictionLock并处理缓冲区
+     */
+    static final int WRITE_BUFFER_MAX = 128 * ConcurrentHashMap.tableSizeFor(NCPU);
+
+    /**
+     * Node所在的淘汰队列
+     */
+    static final byte WINDOW = 1, PROBATION = 2, PROTECTED = 3;
+
+    /* ---------------- Fields -------------- */
+
+    final ConcurrentHashMap<K,Node<K,V>> data;
+    final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * 总容量与各区域的容量(权重)
+     */
+    final long maximum;
+    final long windowMaximum;
+    final long protectedMaximum;
+
+    final ReentrantLock evictionLock = new ReentrantLock();
+    final ReadBuffer<K,V>[] readBuffers;
+    final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    final AtomicInteger pendingWrites = new AtomicInteger();
+
+    // 以下字段只在持有evictionLock时访问
+    final AccessOrderDeque<K,V> window = new AccessOrderDeque<>();
+    final AccessOrderDeque<K,V> probation = new AccessOrderDeque<>();
+    final AccessOrderDeque<K,V> protectedDeque = new AccessOrderDeque<>();
+    final FrequencySketch sketch;
+    long weightedSize;
+    long windowWeightedSize;
+    long protectedWeightedSize;
+    long policySize;
+
+    final LongAdder hitCount = new LongAdder();
+    final LongAdder missCount = new LongAdder();
+    final LongAdder evictionCount = new LongAdder();
+    final LongAdder evictionWeight = new LongAdder();
+
+    /**
+     * 创建最多保存maximumSize个元素的缓存
+     */
+    public BoundedCache(long maximumSize) {
+        this(maximumSize, (k, v) -> 1);
+    }
+
+    /**
+     * 创建总权重不超过maximumWeight的缓存，每个元素的权重由weigher计算
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+        this.weigher = Objects.requireNonNull(weigher);
+        this.maximum = maximumWeight;
+        this.windowMaximum = maximumWeight - (long)(maximumWeight * (1.0d - WINDOW_PERCENT));
+        this.protectedMaximum = (long)((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+        this.data = new ConcurrentHashMap<>();
+        this.sketch = new FrequencySketch(0);
+        this.readBuffers = (ReadBuffer<K,V>[])new ReadBuffer<?,?>[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++)
+            readBuffers[i] = new ReadBuffer<>();
+    }
+
+    /**
+     * 计算元素的权重
+     */
+    @FunctionalInterface
+    public interface Weigher<K,V> {
+        int weigh(K key, V value);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回key对应的value，不存在时返回null；不加锁，只记录一次读
+     */
+    public V get(Object key) {
+        Node<K,V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        V value = node.value;
+        hitCount.increment();
+        afterRead(node);
+        return value;
+    }
+
+    /**
+     * key不存在时用mappingFunction计算value并放入缓存，mappingFunction返回null时不放入
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        Node<K,V> node = data.get(key);
+        if (node != null) {
+            hitCount.increment();
+            afterRead(node);
+            return node.value;
+        }
+        missCount.increment();
+        @SuppressWarnings("unchecked")
+        Node<K,V>[] created = (Node<K,V>[])new Node<?,?>[1];
+        node = data.computeIfAbsent(key, k -> {
+            V value = mappingFunction.apply(k);
+            return (value == null) ? null : (created[0] = new Node<>(k, value, weigh(k, value)));
+        });
+        if (node == null)
+            return null;
+        if (node == created[0])
+            afterWrite(() -> onAdd(created[0]));
+        else
+            afterRead(node);
+        return node.value;
+    }
+
+    /**
+     * 放入key和value，返回原来的value
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        int weight = weigh(key, value);
+        Node<K,V> node = null;
+        for (;;) {
+            Node<K,V> prior = data.get(key);
+            if (prior == null) {
+                if (node == null)
+                    node = new Node<>(key, value, weight);
+                if ((prior = data.putIfAbsent(key, node)) == null) {
+                    final Node<K,V> added = node;
+                    afterWrite(() -> onAdd(added));
+                    return null;
+                }
+            }
+            V oldValue; int oldWeight;
+            synchronized (prior) {
+                // 已经被删除或淘汰，重新插入
+                if (prior.retired)
+                    continue;
+                oldValue = prior.value;
+                oldWeight = prior.weight;
+                prior.value = value;
+                prior.weight = weight;
+            }
+            if (oldWeight != weight) {
+                final Node<K,V> updated = prior;
+                afterWrite(() -> onUpdate(updated));
+            }
+            else
+                afterRead(prior);
+            return oldValue;
+        }
+    }
+
+    /**
+     * 删除key，返回原来的value
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Node<K,V>[] removed = (Node<K,V>[])new Node<?,?>[1];
+        data.computeIfPresent((K)key, (k, n) -> {
+            synchronized (n) {
+                n.retired = true;
+            }
+            removed[0] = n;
+            return null;
+        });
+        Node<K,V> node = removed[0];
+        if (node == null)
+            return null;
+        afterWrite(() -> onRemove(node));
+        return node.value;
+    }
+
+    /**
+     * 删除所有元素
+     */
+    public void clear() {
+        for (K key : data.keySet())
+            remove(key);
+        cleanUp();
+    }
+
+    /**
+     * 元素数量的估计值，可能包含等待淘汰的元素
+     */
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    /**
+     * 处理缓冲区后返回当前总权重
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 立即处理读写缓冲区并淘汰超出容量的元素
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long maximum() {
+        return maximum;
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 命中率，没有请求时为1
+     */
+    public double hitRate() {
+        long hits = hitCount.sum(), requests = hits + missCount.sum();
+        return (requests == 0) ? 1.0d : (double)hits / requests;
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long evictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    public String toString() {
+        return "BoundedCache{maximum=" + maximum +
+            ", estimatedSize=" + estimatedSize() +
+            ", hitCount=" + hitCount() +
+            ", missCount=" + missCount() +
+            ", evictionCount=" + evictionCount() +
+            ", evictionWeight=" + evictionWeight() + '}';
+    }
+
+    final int weigh(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("Illegal weight: " + weight);
+        return weight;
+    }
+
+    /* ---------------- Buffers -------------- */
+
+    /**
+     * 记录一次读，读缓冲满时尝试处理缓冲区
+     */
+    final void afterRead(Node<K,V> node) {
+        int h = (int)Thread.currentThread().getId() * 0x9e3779b9;
+        ReadBuffer<K,V> buffer = readBuffers[(h >>> 16) & (READ_BUFFER_STRIPES - 1)];
+        if (buffer.offer(node) == ReadBuffer.FULL)
+            tryDrainBuffers();
+    }
+
+    /**
+     * 放入写任务并尝试处理缓冲区，积压过多时阻塞等待
+     */
+    final void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        if (pendingWrites.incrementAndGet() > WRITE_BUFFER_MAX) {
+            evictionLock.lock();
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        tryDrainBuffers();
+    }
+
+    /**
+     * 获取evictionLock成功时处理缓冲区；释放锁后如果又有新的写任务则重试，
+     * 保证获取锁失败的写线程放入的任务一定会被处理
+     */
+    final void tryDrainBuffers() {
+        do {
+            if (!evictionLock.tryLock())
+                return;
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    /**
+     * 处理读缓冲和写缓冲后淘汰超出容量的元素，必须持有evictionLock
+     */
+    final void maintenance() {
+        for (ReadBuffer<K,V> buffer : readBuffers)
+            buffer.drainTo(this);
+        Runnable task;
+        for (int i = 0; i < WRITE_BUFFER_MAX && (task = writeBuffer.poll()) != null; i++) {
+            pendingWrites.decrementAndGet();
+            task.run();
+        }
+        evictEntries();
+    }
+
+    /* ---------------- Policy -------------- */
+
+    /**
+     * 新元素加入window；在执行前已经被删除的元素不再加入
+     */
+    final void onAdd(Node<K,V> node) {
+        sketch.increment(node.key);
+        if (node.retired || node.dead)
+            return;
+        int weight = node.weight;
+        node.policyWeight = weight;
+        weightedSize += weight;
+        windowWeightedSize += weight;
+        node.queueType = WINDOW;
+        window.linkLast(node);
+        if (++policySize > sketch.table.length)
+            sketch.ensureCapacity(Math.min(policySize << 1, maximum));
+        // 权重超过总容量的元素直接淘汰
+        if (weight > maximum)
+            evictEntry(node);
+    }
+
+    /**
+     * 权重变化后更新各区域的权重并视为一次访问
+     */
+    final void onUpdate(Node<K,V> node) {
+        if (node.queueType == 0)
+            return;
+        int weight = node.weight, delta = weight - node.policyWeight;
+        node.policyWeight = weight;
+        weightedSize += delta;
+        if (node.queueType == WINDOW)
+            windowWeightedSize += delta;
+        else if (node.queueType == PROTECTED)
+            protectedWeightedSize += delta;
+        onAccess(node);
+    }
+
+    final void onRemove(Node<K,V> node) {
+        unlinkFromPolicy(node);
+    }
+
+    /**
+     * 访问：window和protected中的元素移到队尾，probation中的元素晋升到protected
+     */
+    final void onAccess(Node<K,V> node) {
+        sketch.increment(node.key);
+        switch (node.queueType) {
+        case WINDOW:
+            window.moveToBack(node);
+            break;
+        case PROBATION:
+            probation.unlink(node);
+            node.queueType = PROTECTED;
+            protectedDeque.linkLast(node);
+            protectedWeightedSize += node.policyWeight;
+            demoteFromProtected();
+            break;
+        case PROTECTED:
+            protectedDeque.moveToBack(node);
+            break;
+        default:
+            // 已被删除，或者onAdd()还没有执行
+        }
+    }
+
+    /**
+     * protected超出容量时把最久未访问的元素降级到probation
+     */
+    final void demoteFromProtected() {
+        Node<K,V> node;
+        while (protectedWeightedSize > protectedMaximum &&
+               (node = protectedDeque.peekFirst()) != null) {
+            protectedDeque.unlink(node);
+            node.queueType = PROBATION;
+            probation.linkLast(node);
+            protectedWeightedSize -= node.policyWeight;
+        }
+    }
+
+    final void evictEntries() {
+        evictFromMain(evictFromWindow());
+    }
+
+    /**
+     * window超出容量时把最久未访问的元素移到probation队尾作为候选者，返回第一个候选者
+     */
+    final Node<K,V> evictFromWindow() {
+        Node<K,V> first = null, node;
+        while (windowWeightedSize > windowMaximum &&
+               (node = window.peekFirst()) != null) {
+            window.unlink(node);
+            node.queueType = PROBATION;
+            probation.linkLast(node);
+            windowWeightedSize -= node.policyWeight;
+            if (first == null)
+                first = node;
+        }
+        return first;
+    }
+
+    /**
+     * 总权重超出容量时，依次比较候选者(从window移来的元素)和受害者的访问频率，淘汰频率低的；
+     * 受害者从probation队头开始选择，probation中候选者之前的元素比较完后依次从protected和window的队头选择；
+     * 没有候选者时直接淘汰受害者
+     */
+    final void evictFromMain(Node<K,V> candidate) {
+        byte victimQueue = PROBATION;
+        Node<K,V> victim = probation.peekFirst();
+        while (weightedSize > maximum) {
+            Node<K,V> evict;
+            if (victim == null || (victimQueue == PROBATION && victim == candidate)) {
+                if (victimQueue == PROBATION) {
+                    victimQueue = PROTECTED;
+                    victim = protectedDeque.peekFirst();
+                    continue;
+                }
+                if (victimQueue == PROTECTED) {
+                    victimQueue = WINDOW;
+                    victim = window.peekFirst();
+                    continue;
+                }
+                if (candidate == null)
+                    break;
+                evict = candidate;
+                candidate = candidate.next;
+            }
+            else if (candidate == null) {
+                evict = victim;
+                victim = victim.next;
+            }
+            else if (candidate.policyWeight > maximum ||
+                     !admit(candidate.key, victim.key)) {
+                evict = candidate;
+                candidate = candidate.next;
+            }
+            else {
+                evict = victim;
+                victim = victim.next;
+                candidate = candidate.next;
+            }
+            evictEntry(evict);
+        }
+    }
+
+    /**
+     * 候选者的访问频率高于受害者时接纳候选者；频率不高时以1/128的概率随机接纳，
+     * 防止攻击者构造hash冲突的key使受害者的频率一直偏高
+     */
+    final boolean admit(K candidateKey, K victimKey) {
+        int victimFreq = sketch.frequency(victimKey);
+        int candidateFreq = sketch.frequency(candidateKey);
+        if (candidateFreq > victimFreq)
+            return true;
+        else if (candidateFreq <= 5)
+            return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    /**
+     * 从data和淘汰队列中删除node；node可能已经被remove()从data中删除，对应的删除任务还没有执行
+     */
+    final void evictEntry(Node<K,V> node) {
+        boolean[] removed = new boolean[1];
+        data.computeIfPresent(node.key, (k, n) -> {
+            if (n != node)
+                return n;
+            synchronized (n) {
+                n.retired = true;
+            }
+            removed[0] = true;
+            return null;
+        });
+        int weight = node.policyWeight;
+        unlinkFromPolicy(node);
+        if (removed[0]) {
+            evictionCount.increment();
+            evictionWeight.add(weight);
+        }
+    }
+
+    final void unlinkFromPolicy(Node<K,V> node) {
+        switch (node.queueType) {
+        case WINDOW:
+            window.unlink(node);
+            windowWeightedSize -= node.policyWeight;
+            break;
+        case PROBATION:
+            probation.unlink(node);
+            break;
+        case PROTECTED:
+            protectedDeque.unlink(node);
+            protectedWeightedSize -= node.policyWeight;
+            break;
+        default:
+            node.dead = true;
+            return;
+        }
+        weightedSize -= node.policyWeight;
+        policySize--;
+        node.queueType = 0;
+        node.dead = true;
+    }
+
+    /* ---------------- Nodes and buffers -------------- */
+
+    static final class Node<K,V> {
+        final K key;
+        volatile V value;
+        volatile int weight;
+
+        /**
+         * 已经从data中删除，在持有node锁时设置
+         */
+        volatile boolean retired;
+
+        // 以下字段只在持有evictionLock时访问
+        int policyWeight;
+        byte queueType;
+        boolean dead;
+        Node<K,V> prev, next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，队头为最久未访问的元素
+     */
+    static final class AccessOrderDeque<K,V> {
+        Node<K,V> first, last;
+
+        Node<K,V> peekFirst() {
+            return first;
+        }
+
+        void linkLast(Node<K,V> node) {
+            Node<K,V> l = last;
+            node.prev = l;
+            node.next = null;
+            last = node;
+            if (l == null)
+                first = node;
+            else
+                l.next = node;
+        }
+
+        void unlink(Node<K,V> node) {
+            Node<K,V> prev = node.prev, next = node.next;
+            if (prev == null)
+                first = next;
+            else
+                prev.next = next;
+            if (next == null)
+                last = prev;
+            else
+                next.prev = prev;
+            node.prev = node.next = null;
+        }
+
+        void moveToBack(Node<K,V> node) {
+            if (node != last) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /**
+     * 固定大小的环形读缓冲，多个线程写入，持有evictionLock的线程读取；满时丢弃新的访问记录
+     */
+    static final class ReadBuffer<K,V> {
+        static final int SIZE = 16;
+        static final int MASK = SIZE - 1;
+
+        static final int SUCCESS = 0, FAILED = 1, FULL = 2;
+
+        final AtomicLong readCounter = new AtomicLong();
+        final AtomicLong writeCounter = new AtomicLong();
+        final AtomicReferenceArray<Node<K,V>> buffer = new AtomicReferenceArray<>(SIZE);
+
+        /**
+         * 写入一次访问记录，CAS失败时不重试
+         */
+        int offer(Node<K,V> node) {
+            long head = readCounter.get(), tail = writeCounter.get();
+            if (tail - head >= SIZE)
+                return FULL;
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int)tail & MASK, node);
+                return SUCCESS;
+            }
+            return FAILED;
+        }
+
+        void drainTo(BoundedCache<K,V> cache) {
+            long head = readCounter.get(), tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int)head & MASK;
+                Node<K,V> node = buffer.get(index);
+                // 写线程已经增加了writeCounter，还没有写入元素
+                if (node == null)
+                    break;
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCounter.lazySet(head);
+        }
+    }
+}
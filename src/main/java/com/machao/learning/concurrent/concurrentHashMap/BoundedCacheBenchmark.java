@@ -0,0 +1,178 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BoundedCache(W-TinyLFU)与普通LRU(同步的LinkedHashMap)的对比测试
+ *
+ * 场景：
+ * 1. zipf：按Zipf分布访问KEY_SPACE个key，少数热点key占大部分访问
+ * 2. zipf+scan：在zipf访问中穿插顺序扫描从未访问过的key，LRU会被扫描冲掉热点，TinyLFU的准入可以挡住扫描
+ * 每个场景先单线程回放同一个访问序列统计命中率(未命中时put)，再用多个线程回放测试吞吐量
+ */
+public class BoundedCacheBenchmark {
+
+	// key的数量与缓存容量
+	static final int KEY_SPACE = 1 << 20;
+	static final int CAPACITY = 1 << 13;
+
+	// 访问序列长度
+	static final int TRACE_LENGTH = 1 << 22;
+
+	// Zipf分布的参数
+	static final double ZIPF_EXPONENT = 0.9;
+
+	// 每次扫描的长度与间隔
+	static final int SCAN_LENGTH = CAPACITY * 2;
+	static final int SCAN_INTERVAL = 1 << 16;
+
+	// 吞吐量测试的时间
+	static final long THROUGHPUT_MILLIS = 2000;
+
+	/**
+	 * 测试用的缓存接口
+	 */
+	interface Cache {
+		Integer get(Integer key);
+
+		void put(Integer key, Integer value);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] zipf = zipfTrace(new Random(42));
+		int[] scan = withScans(zipf);
+		// 第一个参数为吞吐量测试的线程数，默认为CPU核数
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		System.out.println("cache\ttrace\thitRate\tthroughput(ops/ms, " + threads + " threads)");
+		run("TinyLFU", "zipf", zipf, threads);
+		run("LRU", "zipf", zipf, threads);
+		run("TinyLFU", "zipf+scan", scan, threads);
+		run("LRU", "zipf+scan", scan, threads);
+	}
+
+	static void run(String name, String traceName, int[] trace, int threads) throws InterruptedException {
+		Cache cache = create(name);
+		long hits = 0;
+		for (int key : trace) {
+			if (cache.get(key) != null)
+				hits++;
+			else
+				cache.put(key, key);
+		}
+		double hitRate = (double) hits / trace.length;
+		double throughput = throughput(create(name), trace, threads);
+		System.out.printf("%s\t%s\t%.4f\t%.0f%n", name, traceName, hitRate, throughput);
+	}
+
+	static Cache create(String name) {
+		if (name.equals("TinyLFU")) {
+			BoundedCache<Integer, Integer> cache = new BoundedCache<>(CAPACITY);
+			return new Cache() {
+				public Integer get(Integer key) {
+					return cache.get(key);
+				}
+
+				public void put(Integer key, Integer value) {
+					cache.put(key, value);
+				}
+			};
+		}
+		Map<Integer, Integer> lru = Collections.synchronizedMap(new LinkedHashMap<Integer, Integer>(CAPACITY, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return size() > CAPACITY;
+			}
+		});
+		return new Cache() {
+			public Integer get(Integer key) {
+				return lru.get(key);
+			}
+
+			public void put(Integer key, Integer value) {
+				lru.put(key, value);
+			}
+		};
+	}
+
+	/**
+	 * 多个线程从不同的起点回放访问序列，返回每毫秒的操作数
+	 */
+	static double throughput(Cache cache, int[] trace, int threads) throws InterruptedException {
+		LongAdder ops = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		long[] deadline = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * (trace.length / threads);
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long count = 0;
+				for (int i = offset; System.nanoTime() < deadline[0]; i++) {
+					for (int j = 0; j < 1024; j++, i++) {
+						Integer key = trace[i & (trace.length - 1)];
+						if (cache.get(key) == null)
+							cache.put(key, key);
+					}
+					count += 1024;
+				}
+				ops.add(count);
+			});
+			workers[t].start();
+		}
+		deadline[0] = System.nanoTime() + THROUGHPUT_MILLIS * 1_000_000L;
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		return (double) ops.sum() / THROUGHPUT_MILLIS;
+	}
+
+	/**
+	 * 生成Zipf分布的访问序列，排名打乱后映射到key，避免热点key集中在相邻的hash桶
+	 */
+	static int[] zipfTrace(Random random) {
+		double[] cdf = new double[KEY_SPACE];
+		double sum = 0;
+		for (int i = 0; i < KEY_SPACE; i++)
+			cdf[i] = (sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT));
+		int[] keys = new int[KEY_SPACE];
+		for (int i = 0; i < KEY_SPACE; i++)
+			keys[i] = i;
+		for (int i = KEY_SPACE - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1), t = keys[i];
+			keys[i] = keys[j];
+			keys[j] = t;
+		}
+		int[] trace = new int[TRACE_LENGTH];
+		for (int i = 0; i < TRACE_LENGTH; i++) {
+			int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+			trace[i] = keys[rank < 0 ? -rank - 1 : rank];
+		}
+		return trace;
+	}
+
+	/**
+	 * 每隔SCAN_INTERVAL次访问插入一段顺序扫描，扫描的key不在zipf的key范围内
+	 */
+	static int[] withScans(int[] zipf) {
+		int[] trace = zipf.clone();
+		int next = KEY_SPACE;
+		for (int i = SCAN_INTERVAL; i + SCAN_LENGTH <= trace.length; i += SCAN_INTERVAL) {
+			for (int j = 0; j < SCAN_LENGTH; j++)
+				trace[i + j] = next++;
+			i += SCAN_LENGTH;
+		}
+		return trace;
+	}
+}
@@ -0,0 +1,291 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 按key计数的并发Map
+ *
+ * 每个key对应一个Counter，Counter的计数方式与ConcurrentHashMap的元素计数(addCount/fullAddCount)相同：
+ * 没有竞争时CAS更新base，CAS失败后按线程的probe值(ThreadProbe)分散到CounterCell数组中，
+ * 竞争继续增加时CounterCell数组加倍，最多到CPU核数；
+ * CounterCell前后用long字段填充到不同的缓存行(@Contended在JDK之外默认不生效)，CAS用原子字段更新器；
+ * 因此热点key的计数不会集中在一个变量或一个桶锁上。
+ * key第一次出现时创建Counter，之后increment()/add()只读data并CAS计数，不分配对象、不加锁；
+ * 读取计数需要累加base和所有CounterCell，不是原子快照。
+ * data使用java.util.concurrent.ConcurrentHashMap，只用到get()、computeIfAbsent()和forEach()。
+ * 不允许null键。
+ */
+public class ConcurrentCounterMap<K> {
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    final ConcurrentHashMap<K,Counter> data;
+
+    public ConcurrentCounterMap() {
+        this.data = new ConcurrentHashMap<>();
+    }
+
+    public ConcurrentCounterMap(int initialCapacity) {
+        this.data = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * key的计数加1
+     */
+    public void increment(K key) {
+        counter(key).add(1L);
+    }
+
+    /**
+     * key的计数加delta
+     */
+    public void add(K key, long delta) {
+        counter(key).add(delta);
+    }
+
+    /**
+     * 返回key的计数，key不存在时返回0
+     */
+    public long sum(Object key) {
+        Counter c = data.get(key);
+        return (c == null) ? 0L : c.sum();
+    }
+
+    /**
+     * 返回key的计数并清零；逐个变量原子地取出并置0，清零期间的计数不会丢失
+     */
+    public long sumThenReset(Object key) {
+        Counter c = data.get(key);
+        return (c == null) ? 0L : c.sumThenReset();
+    }
+
+    /**
+     * 删除key，返回删除前的计数；删除后仍在使用原Counter的并发计数会丢失
+     */
+    public long remove(Object key) {
+        Counter c = data.remove(key);
+        return (c == null) ? 0L : c.sum();
+    }
+
+    /**
+     * key的数量
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 返回所有key当前计数的快照
+     */
+    public Map<K,Long> snapshot() {
+        Map<K,Long> snapshot = new HashMap<>();
+        forEach((k, v) -> snapshot.put(k, v));
+        return snapshot;
+    }
+
+    /**
+     * 返回所有key的计数并清零，保留key与Counter以便继续计数时不再分配
+     */
+    public Map<K,Long> snapshotThenReset() {
+        Map<K,Long> snapshot = new HashMap<>();
+        data.forEach((k, c) -> snapshot.put(k, c.sumThenReset()));
+        return snapshot;
+    }
+
+    /**
+     * 所有key的计数清零
+     */
+    public void reset() {
+        data.forEach((k, c) -> c.sumThenReset());
+    }
+
+    /**
+     * 删除所有key
+     */
+    public void clear() {
+        data.clear();
+    }
+
+    /**
+     * 遍历每个key和它的计数
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        data.forEach((k, c) -> action.accept(k, c.sum()));
+    }
+
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 返回key的Counter，不存在时创建
+     */
+    final Counter counter(K key) {
+        Counter c = data.get(key);
+        return (c != null) ? c : data.computeIfAbsent(key, k -> new Counter());
+    }
+
+    /* ---------------- Counter -------------- */
+
+    /**
+     * 单个key的分段计数器，字段与ConcurrentHashMap中的baseCount、cellsBusy、counterCells相同
+     */
+    static final class Counter {
+        volatile long base;
+        volatile int cellsBusy;
+        volatile CounterCell[] cells;
+
+        /**
+         * 先CAS更新base，已经有CounterCell数组或CAS失败时更新当前线程对应的CounterCell
+         */
+        void add(long x) {
+            CounterCell[] as; long b;
+            if ((as = cells) != null ||
+                !BASE.compareAndSet(this, b = base, b + x)) {
+                CounterCell a; long v; int m;
+                boolean uncontended = true;
+                if (as == null || (m = as.length - 1) < 0 ||
+                    (a = as[ThreadProbe.get() & m]) == null ||
+                    !(uncontended =
+                      CELLVALUE.compareAndSet(a, v = a.value, v + x)))
+                    fullAdd(x, uncontended);
+            }
+        }
+
+        long sum() {
+            CounterCell[] as = cells; CounterCell a;
+            long sum = base;
+            if (as != null) {
+                for (int i = 0; i < as.length; ++i) {
+                    if ((a = as[i]) != null)
+                        sum += a.value;
+                }
+            }
+            return sum;
+        }
+
+        long sumThenReset() {
+            CounterCell[] as = cells; CounterCell a;
+            long sum = BASE.getAndSet(this, 0L);
+            if (as != null) {
+                for (int i = 0; i < as.length; ++i) {
+                    if ((a = as[i]) != null)
+                        sum += CELLVALUE.getAndSet(a, 0L);
+                }
+            }
+            return sum;
+        }
+
+        // 与ConcurrentHashMap.fullAddCount()相同，See LongAdder version for explanation
+        private void fullAdd(long x, boolean wasUncontended) {
+            int h = ThreadProbe.get();              // never 0, no initialization needed
+            boolean collide = false;                // True if last slot nonempty
+            for (;;) {
+                CounterCell[] as; CounterCell a; int n; long v;
+                if ((as = cells) != null && (n = as.length) > 0) {
+                    if ((a = as[(n - 1) & h]) == null) {
+                        if (cellsBusy == 0) {            // Try to attach new Cell
+                            CounterCell r = new CounterCell(x); // Optimistic create
+                            if (cellsBusy == 0 &&
+                                CELLSBUSY.compareAndSet(this, 0, 1)) {
+                                boolean created = false;
+                                try {               // Recheck under lock
+                                    CounterCell[] rs; int m, j;
+                                    if ((rs = cells) != null &&
+                                        (m = rs.length) > 0 &&
+                                        rs[j = (m - 1) & h] == null) {
+                                        rs[j] = r;
+                                        created = true;
+                                    }
+                                } finally {
+                                    cellsBusy = 0;
+                                }
+                                if (created)
+                                    break;
+                                continue;           // Slot is now non-empty
+                            }
+                        }
+                        collide = false;
+                    }
+                    else if (!wasUncontended)       // CAS already known to fail
+                        wasUncontended = true;      // Continue after rehash
+                    else if (CELLVALUE.compareAndSet(a, v = a.value, v + x))
+                        break;
+                    else if (cells != as || n >= NCPU)
+                        collide = false;            // At max size or stale
+                    else if (!collide)
+                        collide = true;
+                    else if (cellsBusy == 0 &&
+                             CELLSBUSY.compareAndSet(this, 0, 1)) {
+                        try {
+                            if (cells == as) {// Expand table unless stale
+                                CounterCell[] rs = new CounterCell[n << 1];
+                                for (int i = 0; i < n; ++i)
+                                    rs[i] = as[i];
+                                cells = rs;
+                            }
+                        } finally {
+                            cellsBusy = 0;
+                        }
+                        collide = false;
+                        continue;                   // Retry with expanded table
+                    }
+                    h = ThreadProbe.advance(h);
+                }
+                else if (cellsBusy == 0 && cells == as &&
+                         CELLSBUSY.compareAndSet(this, 0, 1)) {
+                    boolean init = false;
+                    try {                           // Initialize table
+                        if (cells == as) {
+                            CounterCell[] rs = new CounterCell[2];
+                            rs[h & 1] = new CounterCell(x);
+                            cells = rs;
+                            init = true;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    if (init)
+                        break;
+                }
+                else if (BASE.compareAndSet(this, v = base, v + x))
+                    break;                          // Fall back on using base
+            }
+        }
+    }
+
+    /**
+     * 计数单元，value前后各填充7个long，与相邻的对象不在同一个缓存行；
+     * 用继承保证填充字段在value两侧(同一个类中的字段JVM可以重新排列)
+     */
+    static class CellPadding {
+        long p0, p1, p2, p3, p4, p5, p6;
+    }
+
+    static class CellValue extends CellPadding {
+        volatile long value;
+    }
+
+    static final class CounterCell extends CellValue {
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        CounterCell(long x) {
+            value = x;
+        }
+    }
+
+    // Atomic field updaters
+    private static final AtomicLongFieldUpdater<Counter> BASE =
+        AtomicLongFieldUpdater.newUpdater(Counter.class, "base");
+    private static final AtomicIntegerFieldUpdater<Counter> CELLSBUSY =
+        AtomicIntegerFieldUpdater.newUpdater(Counter.class, "cellsBusy");
+    private static final AtomicLongFieldUpdater<CellValue> CELLVALUE =
+        AtomicLongFieldUpdater.newUpdater(CellValue.class, "value");
+}
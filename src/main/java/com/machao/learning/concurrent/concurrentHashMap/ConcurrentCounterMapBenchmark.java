@@ -0,0 +1,86 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConcurrentCounterMap与ConcurrentHashMap.merge(key, 1L, Long::sum)的对比测试
+ *
+ * 访问序列中一半的计数落在同一个热点key上，其余均匀分布在KEYS个key上；
+ * 多个线程从不同的起点回放访问序列，输出每毫秒的计数次数，最后检查两种方式的计数总和是否正确
+ */
+public class ConcurrentCounterMapBenchmark {
+
+	// key的数量
+	static final int KEYS = 1024;
+
+	// 访问序列长度
+	static final int TRACE_LENGTH = 1 << 20;
+
+	// 每轮测试的时间
+	static final long MILLIS = 2000;
+
+	interface Counter {
+		void increment(String key);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String[] names = new String[KEYS];
+		for (int i = 0; i < KEYS; i++)
+			names[i] = "client-" + i;
+		Random random = new Random(42);
+		String[] trace = new String[TRACE_LENGTH];
+		for (int i = 0; i < TRACE_LENGTH; i++)
+			trace[i] = random.nextBoolean() ? names[0] : names[random.nextInt(KEYS)];
+		// 第一个参数为线程数，默认为CPU核数
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		System.out.println("counter\tthroughput(ops/ms, " + threads + " threads)\tcorrect");
+		for (int round = 0; round < 2; round++) {
+			ConcurrentHashMap<String, Long> merge = new ConcurrentHashMap<>();
+			long ops = run(key -> merge.merge(key, 1L, Long::sum), trace, threads);
+			long total = merge.values().stream().mapToLong(Long::longValue).sum();
+			System.out.printf("merge\t%.0f\t%b%n", (double) ops / MILLIS, total == ops);
+
+			ConcurrentCounterMap<String> counters = new ConcurrentCounterMap<>();
+			ops = run(counters::increment, trace, threads);
+			total = counters.snapshot().values().stream().mapToLong(Long::longValue).sum();
+			System.out.printf("ConcurrentCounterMap\t%.0f\t%b%n", (double) ops / MILLIS, total == ops);
+		}
+	}
+
+	/**
+	 * 多个线程回放访问序列MILLIS毫秒，返回总的计数次数
+	 */
+	static long run(Counter counter, String[] trace, int threads) throws InterruptedException {
+		LongAdder ops = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		long[] deadline = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * (trace.length / threads);
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long count = 0;
+				for (int i = offset; System.nanoTime() < deadline[0];) {
+					for (int j = 0; j < 1024; j++, i++)
+						counter.increment(trace[i & (trace.length - 1)]);
+					count += 1024;
+				}
+				ops.add(count);
+			});
+			workers[t].start();
+		}
+		deadline[0] = System.nanoTime() + MILLIS * 1_000_000L;
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		return ops.sum();
+	}
+}
@@ -5,12 +5,16 @@ import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -18,8 +22,11 @@ import java.util.Spliterator;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountedCompleter;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
@@ -27,6 +34,7 @@ import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.IntBinaryOperator;
 import java.util.function.LongBinaryOperator;
 import java.util.function.ToDoubleBiFunction;
@@ -36,6 +44,9 @@ import java.util.function.ToIntFunction;
 import java.util.function.ToLongBiFunction;
 import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.machao.learning.concurrent.concurrentHashMap.ConcurrentHashMapTelemetry.SizeCtlReason;
 
 public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     implements ConcurrentMap<K,V>, Serializable {
@@ -206,7 +217,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     /**
      * 计算并返回大于指定容量c的最小2的幂次方
      */
-    private static final int tableSizeFor(int c) {
+    static final int tableSizeFor(int c) {
         int n = c - 1;
         n |= n >>> 1;
         n |= n >>> 2;
@@ -327,6 +338,16 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     private transient ValuesView<K,V> values;
     private transient EntrySetView<K,V> entrySet;
 
+    /**
+     * 扩容与竞争统计，未开启时为null
+     */
+    private transient volatile Telemetry telemetry;
+
+    /**
+     * 并行批量操作是否自适应拆分，见setAdaptiveBulkSplitting()
+     */
+    private transient volatile boolean adaptiveBulk;
+
 
     /* ---------------- Public operations -------------- */
 
@@ -520,8 +541,12 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                 tab = helpTransfer(tab, f);
             else {
                 V oldVal = null;
+                Telemetry tm = telemetry;
+                long lockStart = (tm != null) ? System.nanoTime() : 0L, lockWait = 0L;
                 // 采用synchronized方式加锁，锁住头结点
                 synchronized (f) {
+                    if (tm != null)
+                        lockWait = System.nanoTime() - lockStart;
                 	// 步骤6. 二次校验头结点是否相同
                 	// 重新取出桶中的头结点与之前取出的头结点作比较
                     if (tabAt(tab, i) == f) {
@@ -564,6 +589,8 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                         }
                     }
                 }
+                if (tm != null)
+                    tm.binLocked(n, i, lockWait);
                 //步骤9. 如果桶一桶中节点数达到8个时，扩容或将链表转为红黑树
                 if (binCount != 0) {
                     if (binCount >= TREEIFY_THRESHOLD)
@@ -623,8 +650,12 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
             else {
                 V oldVal = null;
                 boolean validated = false;
+                Telemetry tm = telemetry;
+                long lockStart = (tm != null) ? System.nanoTime() : 0L, lockWait = 0L;
                 // 锁住头结点，并再次校验是否有其他线程更新头结点
                 synchronized (f) {
+                    if (tm != null)
+                        lockWait = System.nanoTime() - lockStart;
                     if (tabAt(tab, i) == f) {
                     	// 如果是链表节点
                         if (fh >= 0) {
@@ -674,6 +705,8 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                         }
                     }
                 }
+                if (tm != null)
+                    tm.binLocked(n, i, lockWait);
                 // 重新调整计数器的值
                 if (validated) {
                     if (oldVal != null) {
@@ -1623,6 +1656,44 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
         return (n < 0L) ? 0L : n; // ignore transient negative values
     }
 
+    /**
+     * 开启扩容与竞争统计，已开启时清空之前的统计
+     *
+     * 扩容、sizeCtl变化和CounterCell数组扩大只在发生时记录；
+     * 桶锁统计在putVal()和replaceNode()加锁前后各读取一次System.nanoTime()，等待超过1微秒视为竞争；
+     * jfrEvents为true时同时提交JFR事件(见ConcurrentHashMapEvents)，在JFR录制中启用这些事件后才会记录；
+     * 运行时没有jdk.jfr(Java 8)时忽略jfrEvents。
+     */
+    public void enableTelemetry(boolean jfrEvents) {
+        telemetry = new Telemetry(jfrEvents);
+    }
+
+    /**
+     * 关闭统计
+     */
+    public void disableTelemetry() {
+        telemetry = null;
+    }
+
+    /**
+     * 返回当前统计信息的快照，未开启统计时只有元素数量、容量、sizeCtl和CounterCell数组长度
+     */
+    public ConcurrentHashMapTelemetry telemetry() {
+        Node<K,V>[] tab = table;
+        CounterCell[] as = counterCells;
+        int capacity = (tab == null) ? 0 : tab.length;
+        int cells = (as == null) ? 0 : as.length;
+        Telemetry t = telemetry;
+        if (t == null)
+            return new ConcurrentHashMapTelemetry(mappingCount(), capacity, sizeCtl,
+                                                  0L, 0L, 0L, 0L,
+                                                  Collections.<ConcurrentHashMapTelemetry.Resize>emptyList(),
+                                                  Collections.<ConcurrentHashMapTelemetry.SizeCtlTransition>emptyList(),
+                                                  0L, cells, 0L, 0L, 0L,
+                                                  Collections.<ConcurrentHashMapTelemetry.HotBin>emptyList());
+        return t.snapshot(mappingCount(), capacity, sizeCtl, cells);
+    }
+
     /**
      * Creates a new {@link Set} backed by a ConcurrentHashMap
      * from the given type to {@code Boolean.TRUE}.
@@ -1749,6 +1820,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                         Node<K,V>[] nt = (Node<K,V>[])new Node<?,?>[n];
                         table = tab = nt;
                         sc = n - (n >>> 2);
+                        recordSizeCtl(n, sc, SizeCtlReason.INITIALIZED);
                     }
                 } finally {
                     sizeCtl = sc; //初始化后，sizeCtl长度为数组长度的3/4
@@ -1800,8 +1872,10 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                 }
                 // 当前线程是唯一的或是第一个发起扩容的线程  此时nextTable=null 
                 else if (U.compareAndSwapInt(this, SIZECTL, sc,
-                                             (rs << RESIZE_STAMP_SHIFT) + 2))
+                                             (rs << RESIZE_STAMP_SHIFT) + 2)) {
+                    recordSizeCtl(sc, (rs << RESIZE_STAMP_SHIFT) + 2, SizeCtlReason.RESIZE_STARTED);
                     transfer(tab, null);
+                }
                 s = sumCount();
             }
         }
@@ -1856,6 +1930,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                             Node<K,V>[] nt = (Node<K,V>[])new Node<?,?>[n];
                             table = nt;
                             sc = n - (n >>> 2);// 计算扩容阀值
+                            recordSizeCtl(n, sc, SizeCtlReason.INITIALIZED);
                         }
                     } finally {
                         sizeCtl = sc; // 更新扩容阀值
@@ -1881,8 +1956,10 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                 }
                 // 没有正在扩容table数组的线程，开始新的扩容
                 else if (U.compareAndSwapInt(this, SIZECTL, sc,
-                                             (rs << RESIZE_STAMP_SHIFT) + 2))
+                                             (rs << RESIZE_STAMP_SHIFT) + 2)) {
+                    recordSizeCtl(sc, (rs << RESIZE_STAMP_SHIFT) + 2, SizeCtlReason.RESIZE_STARTED);
                     transfer(tab, null);
+                }
             }
         }
     }
@@ -1911,6 +1988,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
             stride = MIN_TRANSFER_STRIDE; // subdivide range
         // 如果目标数组为null，则初始化一个table数组两倍长度的nextTab数组
         // 只有第一个开始扩容的线程需要初始化目标数组
+        Telemetry tm = telemetry;
         if (nextTab == null) {            // initiating
             try {
                 @SuppressWarnings("unchecked")
@@ -1918,11 +1996,18 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                 nextTab = nt;
             } catch (Throwable ex) {      // try to cope with OOME
                 sizeCtl = Integer.MAX_VALUE;
+                recordSizeCtl((resizeStamp(n) << RESIZE_STAMP_SHIFT) + 2, Integer.MAX_VALUE,
+                              SizeCtlReason.RESIZE_ABORTED);
                 return;
             }
             nextTable = nextTab;
             transferIndex = n;
+            if (tm != null)
+                tm.resizeStarted();
         }
+        // 协助其它线程扩容
+        else if (tm != null)
+            tm.helperJoined();
         int nextn = nextTab.length;
         // 创建一个ForwardingNode节点用来控制并发，当一个节点为空或已经被转移之后，就设置为ForwardingNode节点
         // 表示空节点标识，其他线程遇到此节点直接跳过不处理
@@ -1958,6 +2043,8 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                     nextTable = null; // 将nextTable设置为null,标识当前扩容过程完成
                     table = nextTab; // table指向扩容后的新数组
                     sizeCtl = (n << 1) - (n >>> 1); // 将sizeCtl设置为正数，设置为原数组的3/2，即新数组的3/4
+                    if (tm != null)
+                        tm.resizeFinished(n, (n << 1) - (n >>> 1));
                     return;
                 }
                 // 如果最后一个线程完成扩容操作时，将finishing置为true，表示正确完成。
@@ -2154,6 +2241,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                             for (int i = 0; i < n; ++i)
                                 rs[i] = as[i];
                             counterCells = rs;
+                            recordCounterCells(rs.length);
                         }
                     } finally {
                         cellsBusy = 0;
@@ -2172,6 +2260,7 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                         rs[h & 1] = new CounterCell(x);
                         counterCells = rs;
                         init = true;
+                        recordCounterCells(rs.length);
                     }
                 } finally {
                     cellsBusy = 0;
@@ -2184,6 +2273,145 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
         }
     }
 
+    /* ---------------- Telemetry -------------- */
+
+    private final void recordSizeCtl(int from, int to, SizeCtlReason reason) {
+        Telemetry t;
+        if ((t = telemetry) != null)
+            t.sizeCtlChanged(from, to, reason);
+    }
+
+    private final void recordCounterCells(int length) {
+        Telemetry t;
+        if ((t = telemetry) != null)
+            t.counterCellsResized(length);
+    }
+
+    /**
+     * 扩容与竞争统计，enableTelemetry()时创建
+     * 扩容、sizeCtl变化和CounterCell数组扩大是低频事件，在Telemetry对象上加锁记录；桶锁的计数使用LongAdder
+     */
+    static final class Telemetry {
+        static final int MAX_RECENT_RESIZES = 32;
+        static final int MAX_RECENT_TRANSITIONS = 64;
+
+        /**
+         * 记录竞争次数的桶的最大数量，以及快照中返回的竞争最多的桶的数量
+         */
+        static final int MAX_HOT_BINS = 1024;
+        static final int TOP_HOT_BINS = 16;
+
+        /**
+         * 进入桶锁的等待时间超过此值(纳秒)视为竞争
+         */
+        static final long CONTENDED_NANOS = 1000L;
+
+        final boolean jfrEvents;
+        final LongAdder binLocks = new LongAdder();
+        final LongAdder contendedBinLocks = new LongAdder();
+        final LongAdder contendedWaitNanos = new LongAdder();
+        final ConcurrentHashMap<Long,LongAdder> contendedBins = new ConcurrentHashMap<Long,LongAdder>();
+        final AtomicInteger helpers = new AtomicInteger();
+
+        // 以下字段在Telemetry对象上加锁访问
+        final ArrayDeque<ConcurrentHashMapTelemetry.Resize> recentResizes = new ArrayDeque<>();
+        final ArrayDeque<ConcurrentHashMapTelemetry.SizeCtlTransition> recentTransitions = new ArrayDeque<>();
+        long resizeCount;
+        long resizeNanos;
+        long maxResizeNanos;
+        long helperThreads;
+        long counterCellResizes;
+        boolean resizing;            // 开启统计后开始了一次扩容，还没有完成
+        long resizeStartNanos;
+        long resizeStartMillis;
+
+        Telemetry(boolean jfrEvents) {
+            this.jfrEvents = jfrEvents && ConcurrentHashMapEvents.AVAILABLE;
+        }
+
+        synchronized void sizeCtlChanged(int from, int to, SizeCtlReason reason) {
+            if (recentTransitions.size() == MAX_RECENT_TRANSITIONS)
+                recentTransitions.pollFirst();
+            recentTransitions.addLast(new ConcurrentHashMapTelemetry.SizeCtlTransition(
+                System.currentTimeMillis(), from, to, reason));
+        }
+
+        synchronized void resizeStarted() {
+            resizing = true;
+            resizeStartNanos = System.nanoTime();
+            resizeStartMillis = System.currentTimeMillis();
+            helpers.set(0);
+        }
+
+        void helperJoined() {
+            helpers.incrementAndGet();
+        }
+
+        /**
+         * 最后一个完成迁移的线程提交新数组后调用
+         */
+        synchronized void resizeFinished(int n, int threshold) {
+            sizeCtlChanged((resizeStamp(n) << RESIZE_STAMP_SHIFT) + 1, threshold,
+                           SizeCtlReason.RESIZE_FINISHED);
+            // 开启统计时扩容已经开始
+            if (!resizing)
+                return;
+            resizing = false;
+            long duration = System.nanoTime() - resizeStartNanos;
+            int h = helpers.get();
+            ++resizeCount;
+            resizeNanos += duration;
+            maxResizeNanos = Math.max(maxResizeNanos, duration);
+            helperThreads += h;
+            if (recentResizes.size() == MAX_RECENT_RESIZES)
+                recentResizes.pollFirst();
+            recentResizes.addLast(new ConcurrentHashMapTelemetry.Resize(
+                resizeStartMillis, duration, n, n << 1, h));
+            if (jfrEvents)
+                ConcurrentHashMapEvents.resize(n, n << 1, h, duration);
+        }
+
+        synchronized void counterCellsResized(int length) {
+            ++counterCellResizes;
+            if (jfrEvents)
+                ConcurrentHashMapEvents.counterCellsResized(length);
+        }
+
+        /**
+         * 释放容量为n的table中第i个桶的锁后调用，wait为进入锁的等待时间
+         */
+        void binLocked(int n, int i, long wait) {
+            binLocks.increment();
+            if (wait < CONTENDED_NANOS)
+                return;
+            contendedBinLocks.increment();
+            contendedWaitNanos.add(wait);
+            Long bin = ((long)n << 32) | i;
+            LongAdder c = contendedBins.get(bin);
+            if (c == null && contendedBins.size() < MAX_HOT_BINS)
+                c = contendedBins.computeIfAbsent(bin, k -> new LongAdder());
+            if (c != null)
+                c.increment();
+            if (jfrEvents)
+                ConcurrentHashMapEvents.binContention(n, i, wait);
+        }
+
+        synchronized ConcurrentHashMapTelemetry snapshot(long size, int capacity, int sizeCtl, int cells) {
+            List<ConcurrentHashMapTelemetry.HotBin> bins = new ArrayList<>();
+            contendedBins.forEach((bin, c) -> bins.add(new ConcurrentHashMapTelemetry.HotBin(
+                (int)(bin >>> 32), (int)(long)bin, c.sum())));
+            bins.sort((a, b) -> Long.compare(b.getContentions(), a.getContentions()));
+            return new ConcurrentHashMapTelemetry(size, capacity, sizeCtl, resizeCount, resizeNanos,
+                                                  maxResizeNanos, helperThreads,
+                                                  Collections.unmodifiableList(new ArrayList<>(recentResizes)),
+                                                  Collections.unmodifiableList(new ArrayList<>(recentTransitions)),
+                                                  counterCellResizes, cells, binLocks.sum(),
+                                                  contendedBinLocks.sum(), contendedWaitNanos.sum(),
+                                                  Collections.unmodifiableList(
+                                                      new ArrayList<>(bins.subList(0, Math.min(bins.size(), TOP_HOT_BINS)))));
+        }
+    }
+
     /* ---------------- Conversion from/to TreeBins -------------- */
 
     /**
@@ -3218,13 +3446,121 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      * two anyway.
      */
     final int batchFor(long b) {
+        return batchFor(b, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * 同batchFor(long)，按执行批量操作的ForkJoinPool的并行度拆分
+     */
+    final int batchFor(long b, int parallelism) {
         long n;
         if (b == Long.MAX_VALUE || (n = sumCount()) <= 1L || n < b)
             return 0;
-        int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+        int sp = parallelism << 2; // slack of 4
         return (b <= 0L || (n /= b) >= sp) ? sp : (int)n;
     }
 
+    /**
+     * 开启或关闭并行批量操作的自适应拆分，默认关闭
+     *
+     * parallelismThreshold的含义不变，仍然决定是否并行执行(元素数量小于阈值或阈值为Long.MAX_VALUE时顺序执行)；
+     * 开启后只改变并行执行时拆分的数量：不再按阈值拆分，而是按元素数量和每个元素的处理时间估计——
+     * 每个传入的函数(按函数的类区分，同一处代码的lambda是同一个类)记录最近几次执行时每个元素的平均处理时间，
+     * 拆分到每个叶子任务大约执行BulkCost.TARGET_LEAF_NANOS，总时间不足两个叶子任务时在调用线程中顺序执行；
+     * 叶子任务最多为并行度的8倍，比固定阈值多，桶中元素分布不均时可以由空闲线程窃取剩余的任务。
+     * 对这个map上的所有forEach*、search*、reduce*生效，包括不指定pool的方法。
+     */
+    public void setAdaptiveBulkSplitting(boolean adaptive) {
+        adaptiveBulk = adaptive;
+    }
+
+    /**
+     * 执行批量操作：pool为null时与原来相同，在调用线程中执行根任务，拆分出的任务fork到commonPool；
+     * 否则提交到pool中执行，拆分出的任务也在pool中执行，不占用commonPool。
+     * 开启自适应拆分时按fn的处理时间决定拆分数量，见setAdaptiveBulkSplitting()
+     */
+    final <R> R invokeBulk(ForkJoinPool pool, long parallelismThreshold, Object fn,
+                           IntFunction<? extends BulkTask<K,V,R>> factory) {
+        int parallelism = (pool == null) ?
+            ForkJoinPool.getCommonPoolParallelism() : pool.getParallelism();
+        int batch = batchFor(parallelismThreshold, parallelism);
+        if (batch == 0 || !adaptiveBulk)
+            return invokeBulk(pool, factory.apply(batch));
+        BulkCost cost = BULK_COSTS.get(fn.getClass());
+        BulkTask<K,V,R> task = factory.apply(cost.batchFor(sumCount(), parallelism));
+        task.cost = cost;
+        return invokeBulk(pool, task);
+    }
+
+    private static <R> R invokeBulk(ForkJoinPool pool, BulkTask<?,?,R> task) {
+        // 不拆分或者已经在pool的线程中时，直接在当前线程执行
+        if (pool == null || task.batch == 0 || ForkJoinTask.getPool() == pool)
+            return task.invoke();
+        return pool.invoke(task);
+    }
+
+    /**
+     * 自适应拆分时，每个函数的元素平均处理时间
+     */
+    static final ClassValue<BulkCost> BULK_COSTS = new ClassValue<BulkCost>() {
+        protected BulkCost computeValue(Class<?> type) {
+            return new BulkCost();
+        }
+    };
+
+    /**
+     * 一个函数处理每个元素的平均时间(纳秒)，每个任务处理完自己的范围后记录一次，指数加权平均，新的样本占1/4；
+     * 只统计任务遍历元素的时间，不包括拆分和线程切换，search提前结束的任务不记录；并发更新时可能丢失样本，只影响估计
+     */
+    static final class BulkCost {
+        /** 每个叶子任务的目标执行时间 */
+        static final long TARGET_LEAF_NANOS = 100000L;
+
+        // 小于0表示还没有执行过
+        volatile double nanosPerElement = -1.0;
+
+        int batchFor(long n, int parallelism) {
+            if (n <= 1L)
+                return 0;
+            double c = nanosPerElement;
+            // 第一次执行，按parallelismThreshold为1时的方式拆分
+            if (c < 0.0)
+                return parallelism << 2;
+            double leaves = n * c / TARGET_LEAF_NANOS;
+            return (leaves < 2.0) ? 0 : (int)Math.min(leaves, parallelism << 3);
+        }
+
+        void record(int elements, long elapsedNanos) {
+            if (elements <= 0)
+                return;
+            double sample = (double)elapsedNanos / elements;
+            double c = nanosPerElement;
+            nanosPerElement = (c < 0.0) ? sample : c * 0.75 + sample * 0.25;
+        }
+    }
+
+    /**
+     * 所有元素的并行Stream，由EntrySpliterator按table下标拆分，弱一致；
+     * Stream的并行任务在执行终端操作的线程所在的ForkJoinPool中执行，
+     * 需要使用专门的pool时在pool中执行终端操作：pool.submit(() -> map.parallelStream()...).join()
+     */
+    public Stream<Map.Entry<K,V>> parallelStream() {
+        Node<K,V>[] t;
+        long n = sumCount();
+        int f = (t = table) == null ? 0 : t.length;
+        return StreamSupport.stream(new EntrySpliterator<K,V>(t, f, 0, f, n < 0L ? 0L : n, this), true);
+    }
+
+    /**
+     * 所有key的并行Stream，由KeySpliterator按table下标拆分，其它同parallelStream()
+     */
+    public Stream<K> parallelKeyStream() {
+        Node<K,V>[] t;
+        long n = sumCount();
+        int f = (t = table) == null ? 0 : t.length;
+        return StreamSupport.stream(new KeySpliterator<K,V>(t, f, 0, f, n < 0L ? 0L : n), true);
+    }
+
     /**
      * Performs the given action for each (key, value).
      *
@@ -3235,10 +3571,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public void forEach(long parallelismThreshold,
                         BiConsumer<? super K,? super V> action) {
+        forEach(null, parallelismThreshold, action);
+    }
+
+    /**
+     * 与{@link #forEach(long, BiConsumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public void forEach(ForkJoinPool pool, long parallelismThreshold,
+                        BiConsumer<? super K,? super V> action) {
         if (action == null) throw new NullPointerException();
-        new ForEachMappingTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             action).invoke();
+        invokeBulk(pool, parallelismThreshold, action,
+            b -> new ForEachMappingTask<K,V>
+            (null, b, 0, 0, table,
+             action));
     }
 
     /**
@@ -3257,11 +3604,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> void forEach(long parallelismThreshold,
                             BiFunction<? super K, ? super V, ? extends U> transformer,
                             Consumer<? super U> action) {
+        forEach(null, parallelismThreshold, transformer, action);
+    }
+
+    /**
+     * 与{@link #forEach(long, BiFunction, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> void forEach(ForkJoinPool pool, long parallelismThreshold,
+                            BiFunction<? super K, ? super V, ? extends U> transformer,
+                            Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedMappingTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             transformer, action).invoke();
+        invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new ForEachTransformedMappingTask<K,V,U>
+            (null, b, 0, 0, table,
+             transformer, action));
     }
 
     /**
@@ -3282,10 +3641,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public <U> U search(long parallelismThreshold,
                         BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return search(null, parallelismThreshold, searchFunction);
+    }
+
+    /**
+     * 与{@link #search(long, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U search(ForkJoinPool pool, long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> searchFunction) {
         if (searchFunction == null) throw new NullPointerException();
-        return new SearchMappingsTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             searchFunction, new AtomicReference<U>()).invoke();
+        return invokeBulk(pool, parallelismThreshold, searchFunction,
+            b -> new SearchMappingsTask<K,V,U>
+            (null, b, 0, 0, table,
+             searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3307,11 +3677,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> U reduce(long parallelismThreshold,
                         BiFunction<? super K, ? super V, ? extends U> transformer,
                         BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return reduce(null, parallelismThreshold, transformer, reducer);
+    }
+
+    /**
+     * 与{@link #reduce(long, BiFunction, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U reduce(ForkJoinPool pool, long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceMappingsTask<K,V,U>
+            (null, b, 0, 0, table,
+             null, transformer, reducer));
     }
 
     /**
@@ -3333,11 +3715,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                  ToDoubleBiFunction<? super K, ? super V> transformer,
                                  double basis,
                                  DoubleBinaryOperator reducer) {
+        return reduceToDouble(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceToDouble(long, ToDoubleBiFunction, double, DoubleBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public double reduceToDouble(ForkJoinPool pool, long parallelismThreshold,
+                                 ToDoubleBiFunction<? super K, ? super V> transformer,
+                                 double basis,
+                                 DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToDoubleTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceMappingsToDoubleTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3359,11 +3754,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                              ToLongBiFunction<? super K, ? super V> transformer,
                              long basis,
                              LongBinaryOperator reducer) {
+        return reduceToLong(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceToLong(long, ToLongBiFunction, long, LongBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public long reduceToLong(ForkJoinPool pool, long parallelismThreshold,
+                             ToLongBiFunction<? super K, ? super V> transformer,
+                             long basis,
+                             LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToLongTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceMappingsToLongTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3385,11 +3793,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                            ToIntBiFunction<? super K, ? super V> transformer,
                            int basis,
                            IntBinaryOperator reducer) {
+        return reduceToInt(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceToInt(long, ToIntBiFunction, int, IntBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public int reduceToInt(ForkJoinPool pool, long parallelismThreshold,
+                           ToIntBiFunction<? super K, ? super V> transformer,
+                           int basis,
+                           IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceMappingsToIntTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceMappingsToIntTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3402,10 +3823,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public void forEachKey(long parallelismThreshold,
                            Consumer<? super K> action) {
+        forEachKey(null, parallelismThreshold, action);
+    }
+
+    /**
+     * 与{@link #forEachKey(long, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public void forEachKey(ForkJoinPool pool, long parallelismThreshold,
+                           Consumer<? super K> action) {
         if (action == null) throw new NullPointerException();
-        new ForEachKeyTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             action).invoke();
+        invokeBulk(pool, parallelismThreshold, action,
+            b -> new ForEachKeyTask<K,V>
+            (null, b, 0, 0, table,
+             action));
     }
 
     /**
@@ -3424,11 +3856,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> void forEachKey(long parallelismThreshold,
                                Function<? super K, ? extends U> transformer,
                                Consumer<? super U> action) {
+        forEachKey(null, parallelismThreshold, transformer, action);
+    }
+
+    /**
+     * 与{@link #forEachKey(long, Function, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> void forEachKey(ForkJoinPool pool, long parallelismThreshold,
+                               Function<? super K, ? extends U> transformer,
+                               Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedKeyTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             transformer, action).invoke();
+        invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new ForEachTransformedKeyTask<K,V,U>
+            (null, b, 0, 0, table,
+             transformer, action));
     }
 
     /**
@@ -3449,10 +3893,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public <U> U searchKeys(long parallelismThreshold,
                             Function<? super K, ? extends U> searchFunction) {
+        return searchKeys(null, parallelismThreshold, searchFunction);
+    }
+
+    /**
+     * 与{@link #searchKeys(long, Function)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U searchKeys(ForkJoinPool pool, long parallelismThreshold,
+                            Function<? super K, ? extends U> searchFunction) {
         if (searchFunction == null) throw new NullPointerException();
-        return new SearchKeysTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             searchFunction, new AtomicReference<U>()).invoke();
+        return invokeBulk(pool, parallelismThreshold, searchFunction,
+            b -> new SearchKeysTask<K,V,U>
+            (null, b, 0, 0, table,
+             searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3468,10 +3923,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public K reduceKeys(long parallelismThreshold,
                         BiFunction<? super K, ? super K, ? extends K> reducer) {
+        return reduceKeys(null, parallelismThreshold, reducer);
+    }
+
+    /**
+     * 与{@link #reduceKeys(long, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public K reduceKeys(ForkJoinPool pool, long parallelismThreshold,
+                        BiFunction<? super K, ? super K, ? extends K> reducer) {
         if (reducer == null) throw new NullPointerException();
-        return new ReduceKeysTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, reducer,
+            b -> new ReduceKeysTask<K,V>
+            (null, b, 0, 0, table,
+             null, reducer));
     }
 
     /**
@@ -3493,11 +3959,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> U reduceKeys(long parallelismThreshold,
                             Function<? super K, ? extends U> transformer,
          BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return reduceKeys(null, parallelismThreshold, transformer, reducer);
+    }
+
+    /**
+     * 与{@link #reduceKeys(long, Function, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U reduceKeys(ForkJoinPool pool, long parallelismThreshold,
+                            Function<? super K, ? extends U> transformer,
+         BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceKeysTask<K,V,U>
+            (null, b, 0, 0, table,
+             null, transformer, reducer));
     }
 
     /**
@@ -3519,11 +3997,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                      ToDoubleFunction<? super K> transformer,
                                      double basis,
                                      DoubleBinaryOperator reducer) {
+        return reduceKeysToDouble(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceKeysToDouble(long, ToDoubleFunction, double, DoubleBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public double reduceKeysToDouble(ForkJoinPool pool, long parallelismThreshold,
+                                     ToDoubleFunction<? super K> transformer,
+                                     double basis,
+                                     DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToDoubleTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceKeysToDoubleTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3545,11 +4036,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                  ToLongFunction<? super K> transformer,
                                  long basis,
                                  LongBinaryOperator reducer) {
+        return reduceKeysToLong(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceKeysToLong(long, ToLongFunction, long, LongBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public long reduceKeysToLong(ForkJoinPool pool, long parallelismThreshold,
+                                 ToLongFunction<? super K> transformer,
+                                 long basis,
+                                 LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToLongTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceKeysToLongTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3571,11 +4075,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                ToIntFunction<? super K> transformer,
                                int basis,
                                IntBinaryOperator reducer) {
+        return reduceKeysToInt(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceKeysToInt(long, ToIntFunction, int, IntBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public int reduceKeysToInt(ForkJoinPool pool, long parallelismThreshold,
+                               ToIntFunction<? super K> transformer,
+                               int basis,
+                               IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceKeysToIntTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceKeysToIntTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3588,11 +4105,22 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public void forEachValue(long parallelismThreshold,
                              Consumer<? super V> action) {
+        forEachValue(null, parallelismThreshold, action);
+    }
+
+    /**
+     * 与{@link #forEachValue(long, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public void forEachValue(ForkJoinPool pool, long parallelismThreshold,
+                             Consumer<? super V> action) {
         if (action == null)
             throw new NullPointerException();
-        new ForEachValueTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             action).invoke();
+        invokeBulk(pool, parallelismThreshold, action,
+            b -> new ForEachValueTask<K,V>
+            (null, b, 0, 0, table,
+             action));
     }
 
     /**
@@ -3611,11 +4139,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> void forEachValue(long parallelismThreshold,
                                  Function<? super V, ? extends U> transformer,
                                  Consumer<? super U> action) {
+        forEachValue(null, parallelismThreshold, transformer, action);
+    }
+
+    /**
+     * 与{@link #forEachValue(long, Function, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> void forEachValue(ForkJoinPool pool, long parallelismThreshold,
+                                 Function<? super V, ? extends U> transformer,
+                                 Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedValueTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             transformer, action).invoke();
+        invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new ForEachTransformedValueTask<K,V,U>
+            (null, b, 0, 0, table,
+             transformer, action));
     }
 
     /**
@@ -3636,10 +4176,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public <U> U searchValues(long parallelismThreshold,
                               Function<? super V, ? extends U> searchFunction) {
+        return searchValues(null, parallelismThreshold, searchFunction);
+    }
+
+    /**
+     * 与{@link #searchValues(long, Function)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U searchValues(ForkJoinPool pool, long parallelismThreshold,
+                              Function<? super V, ? extends U> searchFunction) {
         if (searchFunction == null) throw new NullPointerException();
-        return new SearchValuesTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             searchFunction, new AtomicReference<U>()).invoke();
+        return invokeBulk(pool, parallelismThreshold, searchFunction,
+            b -> new SearchValuesTask<K,V,U>
+            (null, b, 0, 0, table,
+             searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3654,10 +4205,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public V reduceValues(long parallelismThreshold,
                           BiFunction<? super V, ? super V, ? extends V> reducer) {
+        return reduceValues(null, parallelismThreshold, reducer);
+    }
+
+    /**
+     * 与{@link #reduceValues(long, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public V reduceValues(ForkJoinPool pool, long parallelismThreshold,
+                          BiFunction<? super V, ? super V, ? extends V> reducer) {
         if (reducer == null) throw new NullPointerException();
-        return new ReduceValuesTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, reducer,
+            b -> new ReduceValuesTask<K,V>
+            (null, b, 0, 0, table,
+             null, reducer));
     }
 
     /**
@@ -3679,11 +4241,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> U reduceValues(long parallelismThreshold,
                               Function<? super V, ? extends U> transformer,
                               BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return reduceValues(null, parallelismThreshold, transformer, reducer);
+    }
+
+    /**
+     * 与{@link #reduceValues(long, Function, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U reduceValues(ForkJoinPool pool, long parallelismThreshold,
+                              Function<? super V, ? extends U> transformer,
+                              BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceValuesTask<K,V,U>
+            (null, b, 0, 0, table,
+             null, transformer, reducer));
     }
 
     /**
@@ -3705,11 +4279,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                        ToDoubleFunction<? super V> transformer,
                                        double basis,
                                        DoubleBinaryOperator reducer) {
+        return reduceValuesToDouble(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceValuesToDouble(long, ToDoubleFunction, double, DoubleBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public double reduceValuesToDouble(ForkJoinPool pool, long parallelismThreshold,
+                                       ToDoubleFunction<? super V> transformer,
+                                       double basis,
+                                       DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToDoubleTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceValuesToDoubleTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3731,11 +4318,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                    ToLongFunction<? super V> transformer,
                                    long basis,
                                    LongBinaryOperator reducer) {
+        return reduceValuesToLong(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceValuesToLong(long, ToLongFunction, long, LongBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public long reduceValuesToLong(ForkJoinPool pool, long parallelismThreshold,
+                                   ToLongFunction<? super V> transformer,
+                                   long basis,
+                                   LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToLongTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceValuesToLongTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3757,11 +4357,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                  ToIntFunction<? super V> transformer,
                                  int basis,
                                  IntBinaryOperator reducer) {
+        return reduceValuesToInt(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceValuesToInt(long, ToIntFunction, int, IntBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public int reduceValuesToInt(ForkJoinPool pool, long parallelismThreshold,
+                                 ToIntFunction<? super V> transformer,
+                                 int basis,
+                                 IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceValuesToIntTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceValuesToIntTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3774,9 +4387,20 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public void forEachEntry(long parallelismThreshold,
                              Consumer<? super Map.Entry<K,V>> action) {
+        forEachEntry(null, parallelismThreshold, action);
+    }
+
+    /**
+     * 与{@link #forEachEntry(long, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public void forEachEntry(ForkJoinPool pool, long parallelismThreshold,
+                             Consumer<? super Map.Entry<K,V>> action) {
         if (action == null) throw new NullPointerException();
-        new ForEachEntryTask<K,V>(null, batchFor(parallelismThreshold), 0, 0, table,
-                                  action).invoke();
+        invokeBulk(pool, parallelismThreshold, action,
+            b -> new ForEachEntryTask<K,V>(null, b, 0, 0, table,
+                                  action));
     }
 
     /**
@@ -3795,11 +4419,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> void forEachEntry(long parallelismThreshold,
                                  Function<Map.Entry<K,V>, ? extends U> transformer,
                                  Consumer<? super U> action) {
+        forEachEntry(null, parallelismThreshold, transformer, action);
+    }
+
+    /**
+     * 与{@link #forEachEntry(long, Function, Consumer)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> void forEachEntry(ForkJoinPool pool, long parallelismThreshold,
+                                 Function<Map.Entry<K,V>, ? extends U> transformer,
+                                 Consumer<? super U> action) {
         if (transformer == null || action == null)
             throw new NullPointerException();
-        new ForEachTransformedEntryTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             transformer, action).invoke();
+        invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new ForEachTransformedEntryTask<K,V,U>
+            (null, b, 0, 0, table,
+             transformer, action));
     }
 
     /**
@@ -3820,10 +4456,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public <U> U searchEntries(long parallelismThreshold,
                                Function<Map.Entry<K,V>, ? extends U> searchFunction) {
+        return searchEntries(null, parallelismThreshold, searchFunction);
+    }
+
+    /**
+     * 与{@link #searchEntries(long, Function)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U searchEntries(ForkJoinPool pool, long parallelismThreshold,
+                               Function<Map.Entry<K,V>, ? extends U> searchFunction) {
         if (searchFunction == null) throw new NullPointerException();
-        return new SearchEntriesTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             searchFunction, new AtomicReference<U>()).invoke();
+        return invokeBulk(pool, parallelismThreshold, searchFunction,
+            b -> new SearchEntriesTask<K,V,U>
+            (null, b, 0, 0, table,
+             searchFunction, new AtomicReference<U>()));
     }
 
     /**
@@ -3838,10 +4485,21 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
      */
     public Map.Entry<K,V> reduceEntries(long parallelismThreshold,
                                         BiFunction<Map.Entry<K,V>, Map.Entry<K,V>, ? extends Map.Entry<K,V>> reducer) {
+        return reduceEntries(null, parallelismThreshold, reducer);
+    }
+
+    /**
+     * 与{@link #reduceEntries(long, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public Map.Entry<K,V> reduceEntries(ForkJoinPool pool, long parallelismThreshold,
+                                        BiFunction<Map.Entry<K,V>, Map.Entry<K,V>, ? extends Map.Entry<K,V>> reducer) {
         if (reducer == null) throw new NullPointerException();
-        return new ReduceEntriesTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, reducer,
+            b -> new ReduceEntriesTask<K,V>
+            (null, b, 0, 0, table,
+             null, reducer));
     }
 
     /**
@@ -3863,11 +4521,23 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
     public <U> U reduceEntries(long parallelismThreshold,
                                Function<Map.Entry<K,V>, ? extends U> transformer,
                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        return reduceEntries(null, parallelismThreshold, transformer, reducer);
+    }
+
+    /**
+     * 与{@link #reduceEntries(long, Function, BiFunction)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public <U> U reduceEntries(ForkJoinPool pool, long parallelismThreshold,
+                               Function<Map.Entry<K,V>, ? extends U> transformer,
+                               BiFunction<? super U, ? super U, ? extends U> reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesTask<K,V,U>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceEntriesTask<K,V,U>
+            (null, b, 0, 0, table,
+             null, transformer, reducer));
     }
 
     /**
@@ -3889,11 +4559,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                         ToDoubleFunction<Map.Entry<K,V>> transformer,
                                         double basis,
                                         DoubleBinaryOperator reducer) {
+        return reduceEntriesToDouble(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceEntriesToDouble(long, ToDoubleFunction, double, DoubleBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public double reduceEntriesToDouble(ForkJoinPool pool, long parallelismThreshold,
+                                        ToDoubleFunction<Map.Entry<K,V>> transformer,
+                                        double basis,
+                                        DoubleBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToDoubleTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceEntriesToDoubleTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3915,11 +4598,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                     ToLongFunction<Map.Entry<K,V>> transformer,
                                     long basis,
                                     LongBinaryOperator reducer) {
+        return reduceEntriesToLong(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceEntriesToLong(long, ToLongFunction, long, LongBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public long reduceEntriesToLong(ForkJoinPool pool, long parallelismThreshold,
+                                    ToLongFunction<Map.Entry<K,V>> transformer,
+                                    long basis,
+                                    LongBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToLongTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceEntriesToLongTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
     /**
@@ -3941,11 +4637,24 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
                                   ToIntFunction<Map.Entry<K,V>> transformer,
                                   int basis,
                                   IntBinaryOperator reducer) {
+        return reduceEntriesToInt(null, parallelismThreshold, transformer, basis, reducer);
+    }
+
+    /**
+     * 与{@link #reduceEntriesToInt(long, ToIntFunction, int, IntBinaryOperator)}相同，在pool中执行，pool为null时使用ForkJoinPool.commonPool()
+     *
+     * @see #setAdaptiveBulkSplitting(boolean)
+     */
+    public int reduceEntriesToInt(ForkJoinPool pool, long parallelismThreshold,
+                                  ToIntFunction<Map.Entry<K,V>> transformer,
+                                  int basis,
+                                  IntBinaryOperator reducer) {
         if (transformer == null || reducer == null)
             throw new NullPointerException();
-        return new MapReduceEntriesToIntTask<K,V>
-            (null, batchFor(parallelismThreshold), 0, 0, table,
-             null, transformer, basis, reducer).invoke();
+        return invokeBulk(pool, parallelismThreshold, transformer,
+            b -> new MapReduceEntriesToIntTask<K,V>
+            (null, b, 0, 0, table,
+             null, transformer, basis, reducer));
     }
 
 
@@ -4398,10 +5107,15 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
         int baseLimit;
         final int baseSize;
         int batch;              // split control
+        BulkCost cost;          // 自适应拆分时记录处理时间，否则为null
+        long startNanos;
+        int processed;
 
         BulkTask(BulkTask<K,V,?> par, int b, int i, int f, Node<K,V>[] t) {
             super(par);
             this.batch = b;
+            if (par != null)
+                this.cost = par.cost;
             this.index = this.baseIndex = i;
             if ((this.tab = t) == null)
                 this.baseSize = this.baseLimit = 0;
@@ -4414,19 +5128,26 @@ public class ConcurrentHashMap<K,V> extends AbstractMap<K,V>
         }
 
         /**
-         * Same as Traverser version
+         * Same as Traverser version，另外在自适应拆分时统计处理的元素数和时间
          */
         final Node<K,V> advance() {
             Node<K,V> e;
             if ((e = next) != null)
                 e = e.next;
+            else if (cost != null && processed == 0)
+                startNanos = System.nanoTime();
             for (;;) {
                 Node<K,V>[] t; int i, n;
-                if (e != null)
+                if (e != null) {
+                    ++processed;
                     return next = e;
+                }
                 if (baseIndex >= baseLimit || (t = tab) == null ||
-                    (n = t.length) <= (i = index) || i < 0)
+                    (n = t.length) <= (i = index) || i < 0) {
+                    if (cost != null)
+                        cost.record(processed, System.nanoTime() - startNanos);
                     return next = null;
+                }
                 if ((e = tabAt(t, i)) != null && e.hash < 0) {
                     if (e instanceof ForwardingNode) {
                         tab = ((ForwardingNode<K,V>)e).nextTable;
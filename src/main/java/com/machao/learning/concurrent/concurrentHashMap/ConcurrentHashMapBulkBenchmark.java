@@ -0,0 +1,96 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * ConcurrentHashMap并行批量操作：commonPool与专用pool、固定阈值与自适应拆分的对比测试
+ *
+ * 场景：
+ * 1. reduce：分别对小map(处理时间短)和大map执行reduceValuesToLong()，
+ *    parallelismThreshold都为1，比较按阈值拆分(总是拆分到并行度的4倍)与setAdaptiveBulkSplitting(true)后自适应拆分的耗时
+ * 2. commonPool延迟：批量操作执行期间，其它代码向commonPool提交小任务，
+ *    比较批量操作在commonPool和专用pool中执行时小任务的平均等待时间
+ */
+public class ConcurrentHashMapBulkBenchmark {
+
+	static final int SMALL = 1 << 10;
+	static final int LARGE = 1 << 20;
+
+	static final int WARMUP_ROUNDS = 100;
+	static final int MEASURE_ROUNDS = 50;
+
+	// 防止JIT消除结果
+	static long sink;
+
+	public static void main(String[] args) throws Exception {
+		ConcurrentHashMap<Integer, Integer> large = newMap(LARGE);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		ToLongFunction<Integer> cheap = v -> v;
+
+		System.out.println("map\tthreshold=1(us/op)\tadaptive(us/op)");
+		for (ConcurrentHashMap<Integer, Integer> map : Arrays.asList(newMap(SMALL), large)) {
+			map.setAdaptiveBulkSplitting(true);
+			double adaptive = measure(() -> sink += map.reduceValuesToLong(pool, 1L, cheap, 0L, Long::sum));
+			map.setAdaptiveBulkSplitting(false);
+			double fixed = measure(() -> sink += map.reduceValuesToLong(pool, 1L, cheap, 0L, Long::sum));
+			System.out.printf("%d\t%.1f\t%.1f%n", map.size(), fixed, adaptive);
+		}
+
+		System.out.println("bulk pool\tcommonPool task latency(us)");
+		System.out.printf("commonPool\t%.1f%n", commonPoolLatency(large, null));
+		System.out.printf("dedicated\t%.1f%n", commonPoolLatency(large, pool));
+		pool.shutdown();
+	}
+
+	static ConcurrentHashMap<Integer, Integer> newMap(int size) {
+		ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>(size);
+		for (int i = 0; i < size; i++)
+			map.put(i, i);
+		return map;
+	}
+
+	/**
+	 * 预热后计时，返回每次操作的平均微秒数
+	 */
+	static double measure(Runnable task) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			task.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURE_ROUNDS; i++)
+			task.run();
+		return (System.nanoTime() - start) / 1000.0 / MEASURE_ROUNDS;
+	}
+
+	/**
+	 * 在pool(为null时为commonPool)中执行耗时的批量操作，同时向commonPool提交小任务，返回小任务的平均延迟(微秒)
+	 */
+	static double commonPoolLatency(ConcurrentHashMap<Integer, Integer> map, ForkJoinPool pool) throws Exception {
+		ToLongFunction<Integer> costly = v -> {
+			long x = v;
+			for (int i = 0; i < 100; i++)
+				x = x * 31 + i;
+			return x & 1;
+		};
+		// 批量操作由普通线程发起，不占用commonPool的线程
+		Thread bulk = new Thread(() -> {
+			for (int i = 0; i < 5; i++)
+				sink += map.reduceValuesToLong(pool, 1L, costly, 0L, Long::sum);
+		});
+		bulk.start();
+		long total = 0;
+		int count = 0;
+		while (bulk.isAlive()) {
+			long start = System.nanoTime();
+			CompletableFuture.supplyAsync(() -> 1).get();
+			total += System.nanoTime() - start;
+			count++;
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+		bulk.join();
+		return count == 0 ? 0.0 : total / 1000.0 / count;
+	}
+}
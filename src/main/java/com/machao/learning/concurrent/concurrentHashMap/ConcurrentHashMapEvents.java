@@ -0,0 +1,168 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ConcurrentHashMap开启telemetry并且指定jfrEvents时提交的JFR事件，在JFR录制中启用对应的事件后才会记录
+ *
+ * 项目的编译目标为Java 8，jdk.jfr不在Java 8的API中，所以这里不直接继承jdk.jfr.Event，
+ * 而是在类初始化时通过反射用jdk.jfr.EventFactory创建三种事件：
+ * com.machao.learning.ConcurrentHashMapResize、ConcurrentHashMapCounterCells、ConcurrentHashMapBinContention；
+ * 运行时没有jdk.jfr时AVAILABLE为false，ConcurrentHashMap不会调用提交方法。
+ * 提交时也通过反射，只在扩容、CounterCell数组扩大和桶锁等待超过阈值时发生。
+ */
+final class ConcurrentHashMapEvents {
+
+    /**
+     * 运行时是否支持JFR，并且三种事件都创建成功
+     */
+    static final boolean AVAILABLE;
+
+    private static final Object RESIZE;
+    private static final Object COUNTER_CELLS;
+    private static final Object BIN_CONTENTION;
+
+    private static final Method NEW_EVENT;
+    private static final Method IS_ENABLED;
+    private static final Method SET;
+    private static final Method COMMIT;
+
+    private ConcurrentHashMapEvents() {
+    }
+
+    /**
+     * 一次扩容完成
+     */
+    static void resize(int oldCapacity, int newCapacity, int helperThreads, long resizeDuration) {
+        commit(RESIZE, oldCapacity, newCapacity, helperThreads, resizeDuration);
+    }
+
+    /**
+     * CounterCell数组创建或扩大
+     */
+    static void counterCellsResized(int length) {
+        commit(COUNTER_CELLS, length);
+    }
+
+    /**
+     * 桶锁等待超过阈值
+     */
+    static void binContention(int capacity, int index, long waitNanos) {
+        commit(BIN_CONTENTION, capacity, index, waitNanos);
+    }
+
+    /**
+     * 创建事件，事件在录制中启用时按字段顺序设置values并提交；反射调用失败时丢弃事件
+     */
+    private static void commit(Object factory, Object... values) {
+        if (factory == null)
+            return;
+        try {
+            Object event = NEW_EVENT.invoke(factory);
+            if (!(Boolean)IS_ENABLED.invoke(event))
+                return;
+            for (int i = 0; i < values.length; i++)
+                SET.invoke(event, i, values[i]);
+            COMMIT.invoke(event);
+        } catch (ReflectiveOperationException ignore) {
+        }
+    }
+
+    static {
+        Object resize = null, counterCells = null, binContention = null;
+        Method newEvent = null, isEnabled = null, set = null, commit = null;
+        boolean available = false;
+        try {
+            Jfr jfr = new Jfr();
+            resize = jfr.factory("com.machao.learning.ConcurrentHashMapResize",
+                                 "ConcurrentHashMap Resize",
+                                 "A table resize (transfer) completed", false,
+                                 jfr.field(int.class, "oldCapacity", "Old Capacity", false),
+                                 jfr.field(int.class, "newCapacity", "New Capacity", false),
+                                 jfr.field(int.class, "helperThreads", "Helper Threads", false),
+                                 jfr.field(long.class, "resizeDuration", "Resize Duration", true));
+            counterCells = jfr.factory("com.machao.learning.ConcurrentHashMapCounterCells",
+                                       "ConcurrentHashMap CounterCells Resize",
+                                       "The CounterCell array was created or doubled because of size-count contention", false,
+                                       jfr.field(int.class, "length", "Length", false));
+            binContention = jfr.factory("com.machao.learning.ConcurrentHashMapBinContention",
+                                        "ConcurrentHashMap Bin Contention",
+                                        "A bin lock in putVal or replaceNode was waited on longer than the contention threshold", true,
+                                        jfr.field(int.class, "capacity", "Capacity", false),
+                                        jfr.field(int.class, "index", "Bin Index", false),
+                                        jfr.field(long.class, "waitNanos", "Wait", true));
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            newEvent = factoryClass.getMethod("newEvent");
+            isEnabled = eventClass.getMethod("isEnabled");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            available = true;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // Java 8等没有jdk.jfr的运行时
+            resize = counterCells = binContention = null;
+        }
+        RESIZE = resize;
+        COUNTER_CELLS = counterCells;
+        BIN_CONTENTION = binContention;
+        NEW_EVENT = newEvent;
+        IS_ENABLED = isEnabled;
+        SET = set;
+        COMMIT = commit;
+        AVAILABLE = available;
+    }
+
+    /**
+     * 通过反射创建jdk.jfr.EventFactory，只在类初始化时使用
+     */
+    private static final class Jfr {
+        final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        final Constructor<?> annotationWithValue =
+            annotationElement.getConstructor(Class.class, Object.class);
+        final Constructor<?> fieldConstructor =
+            valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        final Method create =
+            Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class);
+
+        Jfr() throws ReflectiveOperationException {
+        }
+
+        Object annotation(String type, Object value) throws ReflectiveOperationException {
+            return annotationWithValue.newInstance(annotationType(type), value);
+        }
+
+        @SuppressWarnings("unchecked")
+        static Class<? extends Annotation> annotationType(String type) throws ClassNotFoundException {
+            return (Class<? extends Annotation>)Class.forName(type);
+        }
+
+        /**
+         * 事件的一个字段，timespan为true时单位为纳秒
+         */
+        Object field(Class<?> type, String name, String label, boolean timespan)
+            throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("jdk.jfr.Label", label));
+            if (timespan)
+                annotations.add(annotation("jdk.jfr.Timespan", "NANOSECONDS"));
+            return fieldConstructor.newInstance(type, name, annotations);
+        }
+
+        Object factory(String name, String label, String description, boolean stackTrace,
+                       Object... fields) throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("jdk.jfr.Name", name));
+            annotations.add(annotation("jdk.jfr.Label", label));
+            annotations.add(annotation("jdk.jfr.Category", new String[] { "Collections", "ConcurrentHashMap" }));
+            annotations.add(annotation("jdk.jfr.Description", description));
+            annotations.add(annotation("jdk.jfr.StackTrace", stackTrace));
+            return create.invoke(null, annotations, Arrays.asList(fields));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.List;
+
+/**
+ * ConcurrentHashMap扩容与竞争统计的不可变快照，由ConcurrentHashMap.telemetry()创建
+ *
+ * 扩容：最近的扩容记录(开始时间、耗时、容量变化、协助扩容的线程数)以及累计次数与耗时，
+ * 扩容耗时较长或协助线程较多时，说明扩容发生在流量高峰，可以增大初始容量；
+ * sizeCtl：最近的sizeCtl变化(初始化、开始扩容、完成扩容)；
+ * CounterCell：计数器表扩大的次数与当前长度，长度接近CPU核数说明size计数竞争激烈；
+ * 桶锁：putVal()和replaceNode()中synchronized(f)的次数、等待超过阈值的次数与等待时间，以及竞争最多的桶。
+ */
+public final class ConcurrentHashMapTelemetry {
+
+    /**
+     * sizeCtl变化的原因
+     */
+    public enum SizeCtlReason {
+        /** table初始化完成，sizeCtl从初始容量变为扩容阈值 */
+        INITIALIZED,
+        /** 开始扩容，sizeCtl从扩容阈值变为负数的扩容标识 */
+        RESIZE_STARTED,
+        /** 扩容完成，sizeCtl变为新的扩容阈值 */
+        RESIZE_FINISHED,
+        /** 创建新数组时内存不足，sizeCtl置为Integer.MAX_VALUE，不再扩容 */
+        RESIZE_ABORTED
+    }
+
+    /**
+     * 一次扩容的记录
+     */
+    public static final class Resize {
+        private final long startMillis;
+        private final long durationNanos;
+        private final int oldCapacity;
+        private final int newCapacity;
+        private final int helperThreads;
+
+        Resize(long startMillis, long durationNanos, int oldCapacity,
+               int newCapacity, int helperThreads) {
+            this.startMillis = startMillis;
+            this.durationNanos = durationNanos;
+            this.oldCapacity = oldCapacity;
+            this.newCapacity = newCapacity;
+            this.helperThreads = helperThreads;
+        }
+
+        /** 开始时间(毫秒时间戳) */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /** 从创建新数组到提交新数组的耗时(纳秒) */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public int getOldCapacity() {
+            return oldCapacity;
+        }
+
+        public int getNewCapacity() {
+            return newCapacity;
+        }
+
+        /** 除发起线程外，进入transfer()协助迁移的次数(helpTransfer()或addCount()、tryPresize()中加入) */
+        public int getHelperThreads() {
+            return helperThreads;
+        }
+
+        public String toString() {
+            return "Resize{startMillis=" + startMillis +
+                ", durationNanos=" + durationNanos +
+                ", oldCapacity=" + oldCapacity +
+                ", newCapacity=" + newCapacity +
+                ", helperThreads=" + helperThreads + '}';
+        }
+    }
+
+    /**
+     * 一次sizeCtl变化
+     */
+    public static final class SizeCtlTransition {
+        private final long timeMillis;
+        private final int from;
+        private final int to;
+        private final SizeCtlReason reason;
+
+        SizeCtlTransition(long timeMillis, int from, int to, SizeCtlReason reason) {
+            this.timeMillis = timeMillis;
+            this.from = from;
+            this.to = to;
+            this.reason = reason;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        public SizeCtlReason getReason() {
+            return reason;
+        }
+
+        public String toString() {
+            return reason + "(" + from + " -> " + to + ")@" + timeMillis;
+        }
+    }
+
+    /**
+     * 竞争较多的桶，index是竞争发生时在容量为capacity的table中的下标
+     */
+    public static final class HotBin {
+        private final int capacity;
+        private final int index;
+        private final long contentions;
+
+        HotBin(int capacity, int index, long contentions) {
+            this.capacity = capacity;
+            this.index = index;
+            this.contentions = contentions;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getContentions() {
+            return contentions;
+        }
+
+        public String toString() {
+            return index + "/" + capacity + "=" + contentions;
+        }
+    }
+
+    private final long size;
+    private final int capacity;
+    private final int sizeCtl;
+    private final long resizeCount;
+    private final long resizeNanos;
+    private final long maxResizeNanos;
+    private final long helperThreads;
+    private final List<Resize> recentResizes;
+    private final List<SizeCtlTransition> recentSizeCtlTransitions;
+    private final long counterCellResizes;
+    private final int counterCells;
+    private final long binLocks;
+    private final long contendedBinLocks;
+    private final long contendedWaitNanos;
+    private final List<HotBin> hotBins;
+
+    ConcurrentHashMapTelemetry(long size, int capacity, int sizeCtl, long resizeCount,
+                               long resizeNanos, long maxResizeNanos, long helperThreads,
+                               List<Resize> recentResizes,
+                               List<SizeCtlTransition> recentSizeCtlTransitions,
+                               long counterCellResizes, int counterCells, long binLocks,
+                               long contendedBinLocks, long contendedWaitNanos,
+                               List<HotBin> hotBins) {
+        this.size = size;
+        this.capacity = capacity;
+        this.sizeCtl = sizeCtl;
+        this.resizeCount = resizeCount;
+        this.resizeNanos = resizeNanos;
+        this.maxResizeNanos = maxResizeNanos;
+        this.helperThreads = helperThreads;
+        this.recentResizes = recentResizes;
+        this.recentSizeCtlTransitions = recentSizeCtlTransitions;
+        this.counterCellResizes = counterCellResizes;
+        this.counterCells = counterCells;
+        this.binLocks = binLocks;
+        this.contendedBinLocks = contendedBinLocks;
+        this.contendedWaitNanos = contendedWaitNanos;
+        this.hotBins = hotBins;
+    }
+
+    /** 元素数量 */
+    public long getSize() {
+        return size;
+    }
+
+    /** table容量 */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** 当前的sizeCtl，负数表示正在初始化或扩容 */
+    public int getSizeCtl() {
+        return sizeCtl;
+    }
+
+    /** 完成的扩容次数 */
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    /** 扩容累计耗时(纳秒) */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /** 单次扩容的最长耗时(纳秒) */
+    public long getMaxResizeNanos() {
+        return maxResizeNanos;
+    }
+
+    /** 所有扩容中协助迁移的累计次数 */
+    public long getHelperThreads() {
+        return helperThreads;
+    }
+
+    /** 最近的扩容记录，按时间顺序 */
+    public List<Resize> getRecentResizes() {
+        return recentResizes;
+    }
+
+    /** 最近的sizeCtl变化，按时间顺序 */
+    public List<SizeCtlTransition> getRecentSizeCtlTransitions() {
+        return recentSizeCtlTransitions;
+    }
+
+    /** CounterCell数组创建和加倍的次数 */
+    public long getCounterCellResizes() {
+        return counterCellResizes;
+    }
+
+    /** 当前CounterCell数组的长度，没有竞争时为0 */
+    public int getCounterCells() {
+        return counterCells;
+    }
+
+    /** putVal()和replaceNode()获取桶锁的次数 */
+    public long getBinLocks() {
+        return binLocks;
+    }
+
+    /** 获取桶锁等待超过阈值的次数 */
+    public long getContendedBinLocks() {
+        return contendedBinLocks;
+    }
+
+    /** 等待超过阈值的桶锁累计等待时间(纳秒) */
+    public long getContendedWaitNanos() {
+        return contendedWaitNanos;
+    }
+
+    /** 竞争次数最多的桶，按竞争次数从多到少 */
+    public List<HotBin> getHotBins() {
+        return hotBins;
+    }
+
+    public String toString() {
+        return "ConcurrentHashMapTelemetry{size=" + size +
+            ", capacity=" + capacity +
+            ", sizeCtl=" + sizeCtl +
+            ", resizeCount=" + resizeCount +
+            ", resizeNanos=" + resizeNanos +
+            ", maxResizeNanos=" + maxResizeNanos +
+            ", helperThreads=" + helperThreads +
+            ", recentResizes=" + recentResizes +
+            ", recentSizeCtlTransitions=" + recentSizeCtlTransitions +
+            ", counterCellResizes=" + counterCellResizes +
+            ", counterCells=" + counterCells +
+            ", binLocks=" + binLocks +
+            ", contendedBinLocks=" + contendedBinLocks +
+            ", contendedWaitNanos=" + contendedWaitNanos +
+            ", hotBins=" + hotBins + '}';
+    }
+}
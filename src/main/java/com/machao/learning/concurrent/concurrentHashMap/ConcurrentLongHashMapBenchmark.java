@@ -0,0 +1,161 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+/**
+ * ConcurrentLongHashMap与ConcurrentHashMap<Long, V>的对比测试(java.util.concurrent中的实现，与本包中的副本算法相同)
+ *
+ * 场景：
+ * 1. memory：放入SIZE个随机long key后，GC前后的堆使用量之差，按每个元素的字节数输出
+ * 2. get：随机key的get()，ConcurrentHashMap需要先装箱(key超出Long缓存范围，每次都分配Long对象)
+ * 3. put：多个线程并发放入不同的key，包含多线程协作扩容的开销
+ * 先预热再计时，输出每次操作的平均纳秒数
+ */
+public class ConcurrentLongHashMapBenchmark {
+
+	// 元素数量
+	static final int SIZE = 1 << 21;
+
+	// 预热轮数与计时轮数
+	static final int WARMUP_ROUNDS = 3;
+	static final int MEASURE_ROUNDS = 5;
+
+	// 共享的value，不计入内存
+	static final Object VALUE = new Object();
+
+	// 防止JIT消除结果
+	static long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		long[] keys = new long[SIZE];
+		Random random = new Random(42);
+		for (int i = 0; i < SIZE; i++)
+			keys[i] = random.nextLong();
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		System.out.println("map\tmemory(bytes/entry)\tget(ns/op)\tput(ns/op, " + threads + " threads)");
+		System.out.printf("ConcurrentHashMap\t%.1f\t%.1f\t%.1f%n",
+				memoryOfBoxed(keys), measure(() -> getBoxed(keys)), measure(() -> putBoxed(keys, threads)));
+		System.out.printf("ConcurrentLongHashMap\t%.1f\t%.1f\t%.1f%n",
+				memoryOfLong(keys), measure(() -> getLong(keys)), measure(() -> putLong(keys, threads)));
+	}
+
+	interface Task {
+		long run() throws InterruptedException;
+	}
+
+	/**
+	 * 预热后计时，返回每次操作的平均纳秒数
+	 */
+	static double measure(Task task) throws InterruptedException {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			task.run();
+		long total = 0;
+		for (int i = 0; i < MEASURE_ROUNDS; i++)
+			total += task.run();
+		return (double) total / ((long) MEASURE_ROUNDS * SIZE);
+	}
+
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static double memoryOfBoxed(long[] keys) {
+		long before = usedMemory();
+		ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<>();
+		for (long key : keys)
+			map.put(key, VALUE);
+		long after = usedMemory();
+		sink += map.size();
+		return (double) (after - before) / keys.length;
+	}
+
+	static double memoryOfLong(long[] keys) {
+		long before = usedMemory();
+		ConcurrentLongHashMap<Object> map = new ConcurrentLongHashMap<>();
+		for (long key : keys)
+			map.put(key, VALUE);
+		long after = usedMemory();
+		sink += map.size();
+		return (double) (after - before) / keys.length;
+	}
+
+	static ConcurrentHashMap<Long, Object> boxed;
+	static ConcurrentLongHashMap<Object> unboxed;
+
+	static long getBoxed(long[] keys) {
+		if (boxed == null) {
+			boxed = new ConcurrentHashMap<>();
+			for (long key : keys)
+				boxed.put(key, VALUE);
+		}
+		long s = 0, start = System.nanoTime();
+		for (int i = keys.length - 1; i >= 0; i--)
+			if (boxed.get(keys[i]) != null)
+				s++;
+		long elapsed = System.nanoTime() - start;
+		sink += s;
+		return elapsed;
+	}
+
+	static long getLong(long[] keys) {
+		if (unboxed == null) {
+			unboxed = new ConcurrentLongHashMap<>();
+			for (long key : keys)
+				unboxed.put(key, VALUE);
+		}
+		long s = 0, start = System.nanoTime();
+		for (int i = keys.length - 1; i >= 0; i--)
+			if (unboxed.get(keys[i]) != null)
+				s++;
+		long elapsed = System.nanoTime() - start;
+		sink += s;
+		return elapsed;
+	}
+
+	static long putBoxed(long[] keys, int threads) throws InterruptedException {
+		ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<>();
+		long elapsed = runInParallel(threads, keys.length, i -> map.put(keys[i], VALUE));
+		sink += map.size();
+		return elapsed;
+	}
+
+	static long putLong(long[] keys, int threads) throws InterruptedException {
+		ConcurrentLongHashMap<Object> map = new ConcurrentLongHashMap<>();
+		long elapsed = runInParallel(threads, keys.length, i -> map.put(keys[i], VALUE));
+		sink += map.size();
+		return elapsed;
+	}
+
+	/**
+	 * 把[0, size)平均分给threads个线程执行，返回全部完成的时间
+	 */
+	static long runInParallel(int threads, int size, IntConsumer action) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int from = (int) ((long) size * t / threads), to = (int) ((long) size * (t + 1) / threads);
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = from; i < to; i++)
+					action.accept(i);
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		return System.nanoTime() - begin;
+	}
+}
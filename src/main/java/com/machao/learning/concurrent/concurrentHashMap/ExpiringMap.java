@@ -0,0 +1,489 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 基于ConcurrentHashMap的元素按时间过期的并发Map
+ *
+ * 结构：
+ * 1. data：ConcurrentHashMap保存key到Node的映射，Node记录元素的存活时间(ttl)和到期时间(deadline)
+ * 2. 过期方式：expireAfterAccess为false时到期时间为最近一次写入的时间 + ttl，为true时每次读也会把到期时间延后ttl；
+ *    put()可以为单个元素指定ttl
+ * 3. 到期检查：get()等读操作发现元素已经到期时当作不存在，并立即删除(惰性过期)；
+ *    未被访问的到期元素由分层时间轮(TimerWheel)找出并删除，推进时间轮的开销与到期的元素数量成正比
+ * 4. 写缓冲：新增、修改和删除后调整时间轮的操作以任务形式放入无锁队列，由获得expirationLock的线程批量执行；
+ *    读操作在node锁中延后到期时间，不修改时间轮，等所在的桶到期时再按新的到期时间重新放入
+ * 时间轮在写操作、距上次推进超过约1秒的读操作以及cleanUp()时推进；长时间没有任何操作时，可以定时调用cleanUp()删除到期元素。
+ * 元素被删除、替换或过期时，如果设置了removalListener，在executor中异步通知；不允许null键或null值。
+ */
+public class ExpiringMap<K,V> {
+
+    /* ---------------- Constants -------------- */
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 写缓冲中积压的任务超过此值时，写线程阻塞等待expirationLock并处理缓冲区
+     */
+    static final int WRITE_BUFFER_MAX = 128 * ConcurrentHashMap.tableSizeFor(NCPU);
+
+    /**
+     * ttl的最大值(约73年)，保证当前时间 + ttl不会溢出
+     */
+    static final long MAXIMUM_TTL = Long.MAX_VALUE >>> 2;
+
+    /* ---------------- Fields -------------- */
+
+    final ConcurrentHashMap<K,Node<K,V>> data;
+
+    /**
+     * 默认的存活时间(纳秒)
+     */
+    final long ttl;
+    final boolean expireAfterAccess;
+
+    final RemovalListener<? super K, ? super V> removalListener;
+    final Executor executor;
+
+    /**
+     * 时间的起点，Node中的时间都是相对于origin的纳秒数，不会是负数
+     */
+    final long origin = System.nanoTime();
+
+    final ReentrantLock expirationLock = new ReentrantLock();
+    final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    final AtomicInteger pendingWrites = new AtomicInteger();
+
+    // 只在持有expirationLock时修改
+    final TimerWheel<K,V> timerWheel;
+    final Predicate<Node<K,V>> evictor = this::evictExpired;
+
+    final LongAdder expiredCount = new LongAdder();
+
+    /**
+     * 创建元素在写入(expireAfterAccess为false)或最近一次访问(为true)duration时间后过期的Map
+     */
+    public ExpiringMap(long duration, TimeUnit unit, boolean expireAfterAccess) {
+        this(duration, unit, expireAfterAccess, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 创建元素过期的Map，元素被删除、替换或过期时在executor中调用removalListener
+     */
+    public ExpiringMap(long duration, TimeUnit unit, boolean expireAfterAccess,
+                       RemovalListener<? super K, ? super V> removalListener, Executor executor) {
+        this.ttl = toTtl(duration, unit);
+        this.expireAfterAccess = expireAfterAccess;
+        this.removalListener = removalListener;
+        this.executor = Objects.requireNonNull(executor);
+        this.data = new ConcurrentHashMap<>();
+        this.timerWheel = new TimerWheel<>(now());
+    }
+
+    /**
+     * 元素被删除的原因
+     */
+    public enum RemovalCause {
+        /**
+         * 调用remove()或clear()删除
+         */
+        EXPLICIT,
+        /**
+         * 被put()替换了value
+         */
+        REPLACED,
+        /**
+         * 到期
+         */
+        EXPIRED
+    }
+
+    /**
+     * 元素被删除时的回调，在executor中执行
+     */
+    @FunctionalInterface
+    public interface RemovalListener<K,V> {
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回key对应的value，不存在或已经到期时返回null；expireAfterAccess为true时延后到期时间
+     */
+    public V get(Object key) {
+        Node<K,V> node = data.get(key);
+        if (node == null)
+            return null;
+        long now = now();
+        if (!access(node, now)) {
+            expireNow(node, now);
+            return null;
+        }
+        V value = node.value;
+        afterRead(now);
+        return value;
+    }
+
+    /**
+     * key存在并且没有到期时返回true，不延后到期时间
+     */
+    public boolean containsKey(Object key) {
+        Node<K,V> node = data.get(key);
+        return node != null && node.deadline - now() > 0L;
+    }
+
+    /**
+     * 放入key和value，使用默认的存活时间，返回原来没有到期的value
+     */
+    public V put(K key, V value) {
+        return put(key, value, ttl);
+    }
+
+    /**
+     * 放入key和value，元素在写入(或最近一次访问)duration时间后过期，返回原来没有到期的value
+     */
+    public V put(K key, V value, long duration, TimeUnit unit) {
+        return put(key, value, toTtl(duration, unit));
+    }
+
+    /**
+     * key不存在或已经到期时用mappingFunction计算value并放入，mappingFunction返回null时不放入
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+        long now = now();
+        Node<K,V> node = data.get(key);
+        if (node != null && access(node, now)) {
+            afterRead(now);
+            return node.value;
+        }
+        @SuppressWarnings("unchecked")
+        Node<K,V>[] nodes = (Node<K,V>[])new Node<?,?>[2];
+        node = data.compute(key, (k, n) -> {
+            if (n != null) {
+                synchronized (n) {
+                    // 在此期间被put()更新
+                    if (n.deadline - now > 0L)
+                        return n;
+                    n.retired = true;
+                }
+                nodes[1] = n;
+            }
+            V value = mappingFunction.apply(k);
+            return (value == null) ? null : (nodes[0] = new Node<>(k, value, ttl, now + ttl));
+        });
+        Node<K,V> created = nodes[0], expired = nodes[1];
+        if (expired != null) {
+            expiredCount.increment();
+            notifyRemoval(expired.key, expired.value, RemovalCause.EXPIRED);
+            afterWrite(() -> timerWheel.deschedule(expired));
+        }
+        if (node == null)
+            return null;
+        if (node == created)
+            afterWrite(() -> schedule(created));
+        else
+            afterRead(now);
+        return node.value;
+    }
+
+    /**
+     * 删除key，返回原来没有到期的value
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Node<K,V>[] removed = (Node<K,V>[])new Node<?,?>[1];
+        data.computeIfPresent((K)key, (k, n) -> {
+            synchronized (n) {
+                n.retired = true;
+            }
+            removed[0] = n;
+            return null;
+        });
+        Node<K,V> node = removed[0];
+        if (node == null)
+            return null;
+        afterWrite(() -> timerWheel.deschedule(node));
+        if (node.deadline - now() <= 0L) {
+            expiredCount.increment();
+            notifyRemoval(node.key, node.value, RemovalCause.EXPIRED);
+            return null;
+        }
+        notifyRemoval(node.key, node.value, RemovalCause.EXPLICIT);
+        return node.value;
+    }
+
+    /**
+     * 删除所有元素
+     */
+    public void clear() {
+        for (K key : data.keySet())
+            remove(key);
+        cleanUp();
+    }
+
+    /**
+     * 元素数量的估计值，可能包含已经到期还没有删除的元素
+     */
+    public long estimatedSize() {
+        return data.mappingCount();
+    }
+
+    /**
+     * 立即处理写缓冲并删除所有到期的元素
+     */
+    public void cleanUp() {
+        expirationLock.lock();
+        try {
+            maintenance();
+        } finally {
+            expirationLock.unlock();
+        }
+    }
+
+    /**
+     * 已经过期删除的元素数量
+     */
+    public long expiredCount() {
+        return expiredCount.sum();
+    }
+
+    public String toString() {
+        return "ExpiringMap{ttl=" + ttl +
+            "ns, expireAfterAccess=" + expireAfterAccess +
+            ", estimatedSize=" + estimatedSize() +
+            ", expiredCount=" + expiredCount() + '}';
+    }
+
+    /* ---------------- Internal operations -------------- */
+
+    final long now() {
+        return System.nanoTime() - origin;
+    }
+
+    static long toTtl(long duration, TimeUnit unit) {
+        if (duration < 0)
+            throw new IllegalArgumentException("Illegal duration: " + duration);
+        return Math.min(unit.toNanos(duration), MAXIMUM_TTL);
+    }
+
+    final V put(K key, V value, long ttl) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long now = now(), deadline = now + ttl;
+        Node<K,V> node = null;
+        for (;;) {
+            Node<K,V> prior = data.get(key);
+            if (prior == null) {
+                if (node == null)
+                    node = new Node<>(key, value, ttl, deadline);
+                if ((prior = data.putIfAbsent(key, node)) == null) {
+                    final Node<K,V> added = node;
+                    afterWrite(() -> schedule(added));
+                    return null;
+                }
+            }
+            V oldValue; boolean expired;
+            synchronized (prior) {
+                // 已经被删除或过期，重新插入
+                if (prior.retired)
+                    continue;
+                oldValue = prior.value;
+                expired = prior.deadline - now <= 0L;
+                prior.value = value;
+                prior.ttl = ttl;
+                prior.deadline = deadline;
+            }
+            final Node<K,V> updated = prior;
+            afterWrite(() -> schedule(updated));
+            if (expired) {
+                expiredCount.increment();
+                notifyRemoval(key, oldValue, RemovalCause.EXPIRED);
+                return null;
+            }
+            notifyRemoval(key, oldValue, RemovalCause.REPLACED);
+            return oldValue;
+        }
+    }
+
+    /**
+     * 读操作检查node是否到期，没有到期并且expireAfterAccess时把到期时间延后到now + ttl；返回false表示已经到期或被删除。
+     * 延后在node锁中进行，与put()的更新和removeIfExpired()的到期检查互斥：不会覆盖put()刚写入的ttl和到期时间，
+     * 也不会延后一个已经判定为到期的元素；时间轮不加node锁读取deadline，读到旧值只会让元素提前被检查一次
+     */
+    final boolean access(Node<K,V> node, long now) {
+        if (!expireAfterAccess)
+            return node.deadline - now > 0L;
+        synchronized (node) {
+            if (node.retired || node.deadline - now <= 0L)
+                return false;
+            node.deadline = now + node.ttl;
+            return true;
+        }
+    }
+
+    /**
+     * 读操作发现node到期时删除node并从时间轮中删除
+     */
+    final void expireNow(Node<K,V> node, long now) {
+        if (removeIfExpired(node, now))
+            afterWrite(() -> timerWheel.deschedule(node));
+        else
+            afterRead(now);
+    }
+
+    /**
+     * 时间轮的桶到期时调用，node已经从时间轮中摘下；返回false表示node没有到期，需要重新放入时间轮
+     */
+    final boolean evictExpired(Node<K,V> node) {
+        return removeIfExpired(node, timerWheel.nanos) || node.retired;
+    }
+
+    /**
+     * node仍然在data中并且已经到期时删除并通知，在node锁中重新检查到期时间，避免删除刚被put()更新的元素
+     */
+    final boolean removeIfExpired(Node<K,V> node, long now) {
+        boolean[] removed = new boolean[1];
+        data.computeIfPresent(node.key, (k, n) -> {
+            if (n != node)
+                return n;
+            synchronized (n) {
+                if (n.deadline - now > 0L)
+                    return n;
+                n.retired = true;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (!removed[0])
+            return false;
+        expiredCount.increment();
+        notifyRemoval(node.key, node.value, RemovalCause.EXPIRED);
+        return true;
+    }
+
+    /**
+     * 把新增或更新的node放入时间轮，在执行前已经被删除的node不再放入
+     */
+    final void schedule(Node<K,V> node) {
+        if (!node.retired)
+            timerWheel.reschedule(node);
+    }
+
+    /**
+     * 在executor中通知removalListener，executor拒绝时在当前线程中通知
+     */
+    final void notifyRemoval(K key, V value, RemovalCause cause) {
+        RemovalListener<? super K, ? super V> listener = removalListener;
+        if (listener == null)
+            return;
+        Runnable task = () -> listener.onRemoval(key, value, cause);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /* ---------------- Buffers -------------- */
+
+    /**
+     * 距离上次推进时间轮超过一个最小的桶时尝试推进
+     */
+    final void afterRead(long now) {
+        if (now - timerWheel.nanos >= TimerWheel.SPANS[0])
+            tryMaintenance();
+    }
+
+    /**
+     * 放入写任务并尝试处理缓冲区，积压过多时阻塞等待
+     */
+    final void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        if (pendingWrites.incrementAndGet() > WRITE_BUFFER_MAX) {
+            expirationLock.lock();
+            try {
+                maintenance();
+            } finally {
+                expirationLock.unlock();
+            }
+        }
+        tryMaintenance();
+    }
+
+    /**
+     * 获取expirationLock成功时处理缓冲区；释放锁后如果又有新的写任务则重试，
+     * 保证获取锁失败的写线程放入的任务一定会被处理
+     */
+    final void tryMaintenance() {
+        do {
+            if (!expirationLock.tryLock())
+                return;
+            try {
+                maintenance();
+            } finally {
+                expirationLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    /**
+     * 执行写缓冲中的任务后推进时间轮，必须持有expirationLock
+     */
+    final void maintenance() {
+        Runnable task;
+        for (int i = 0; i < WRITE_BUFFER_MAX && (task = writeBuffer.poll()) != null; i++) {
+            pendingWrites.decrementAndGet();
+            task.run();
+        }
+        timerWheel.advance(now(), evictor);
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    static final class Node<K,V> {
+        final K key;
+        volatile V value;
+
+        /**
+         * 存活时间与到期时间(相对于origin的纳秒数)，只在持有node锁时修改(写入和读操作延后到期时间)
+         */
+        volatile long ttl;
+        volatile long deadline;
+
+        /**
+         * 已经从data中删除，在持有node锁时设置
+         */
+        volatile boolean retired;
+
+        // 时间轮中的链表指针，只在持有expirationLock时访问
+        Node<K,V> prevInWheel, nextInWheel;
+
+        Node(K key, V value, long ttl, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 时间轮中每个桶的哨兵节点
+         */
+        static <K,V> Node<K,V> sentinel() {
+            Node<K,V> sentinel = new Node<>(null, null, 0L, 0L);
+            sentinel.prevInWheel = sentinel.nextInWheel = sentinel;
+            return sentinel;
+        }
+    }
+}
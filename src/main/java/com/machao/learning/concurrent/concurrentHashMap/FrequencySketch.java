@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Modified: ported from Caffeine's com.github.benmanes.caffeine.cache.FrequencySketch
+ * (https://github.com/ben-manes/caffeine) for BoundedCache, comments translated,
+ * hash spreading and table sizing adapted to this package.
+ */
+package com.machao.learning.concurrent.concurrentHashMap;
+
+/**
+ * TinyLFU使用的访问频率估计(4位计数的Count-Min Sketch)
+ *
+ * 每个long保存16个4位计数器，每个元素在4个不同的long中各占一个计数器，频率取4个计数器的最小值，上限为15；
+ * 增加的次数达到sampleSize(10倍容量)时所有计数器减半(老化)，使频率反映最近的访问；
+ * 非线程安全，只在BoundedCache持有evictionLock时访问。
+ * 移植自Caffeine的FrequencySketch(Apache License 2.0，见文件头)。
+ */
+final class FrequencySketch {
+
+    static final long[] SEED = { // A mixture of seeds from FNV-1a, CityHash, and Murmur3
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * 计数器表的最大长度
+     */
+    static final int MAXIMUM_TABLE_SIZE = 1 << 26;
+
+    long[] table;
+    int tableMask;
+    int sampleSize;
+    int size;
+
+    FrequencySketch(long maximumSize) {
+        ensureCapacity(maximumSize);
+    }
+
+    /**
+     * 按maximumSize个元素调整计数器表的长度，长度只增不减，扩大时清空之前的计数
+     */
+    void ensureCapacity(long maximumSize) {
+        int maximum = (int)Math.min(Math.max(maximumSize, 1L), MAXIMUM_TABLE_SIZE);
+        if (table != null && table.length >= maximum)
+            return;
+        table = new long[ConcurrentHashMap.tableSizeFor(maximum)];
+        tableMask = table.length - 1;
+        sampleSize = (int)Math.min(10L * maximum, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * 返回e的估计访问频率，最大为15
+     */
+    int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加e的访问频率，增加次数达到sampleSize时老化
+     */
+    void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            added |= incrementAt(index, start + i);
+        }
+        if (added && (++size == sampleSize))
+            reset();
+    }
+
+    /**
+     * 第i个long中的第j个计数器加1，已经是15时不变
+     */
+    boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    /**
+     * 第i个hash函数对应的long下标
+     */
+    int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int)hash) & tableMask;
+    }
+
+    /**
+     * 对hashCode再做一次扰动，避免hashCode质量差时计数器集中
+     */
+    static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,40 @@
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分段计数选择计数单元用的线程探针
+ *
+ * ThreadLocalRandom.getProbe()/advanceProbe()只对java.util.concurrent包可见，这里用ThreadLocal保存每个线程自己的探针：
+ * 第一次使用时由ThreadLocalRandom生成非0的初始值，CAS失败时调用advance()按xorshift换一个值，使竞争的线程分散到不同的计数单元。
+ * 只在计数出现竞争时才会访问。
+ */
+final class ThreadProbe {
+
+    /**
+     * 用int[1]保存，advance()修改时不需要装箱
+     */
+    private static final ThreadLocal<int[]> PROBE =
+        ThreadLocal.withInitial(() -> new int[] { ThreadLocalRandom.current().nextInt() | 1 });
+
+    private ThreadProbe() {
+    }
+
+    /**
+     * 当前线程的探针，不会是0
+     */
+    static int get() {
+        return PROBE.get()[0];
+    }
+
+    /**
+     * 换一个探针值并保存，返回新的值
+     */
+    static int advance(int h) {
+        h ^= h << 13;   // xorshift
+        h ^= h >>> 17;
+        h ^= h << 5;
+        PROBE.get()[0] = h;
+        return h;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Modified: ported from Caffeine's com.github.benmanes.caffeine.cache.TimerWheel
+ * (https://github.com/ben-manes/caffeine) for ExpiringMap, comments translated,
+ * node links and the expiration callback adapted to ExpiringMap.Node.
+ */
+package com.machao.learning.concurrent.concurrentHashMap;
+
+import java.util.function.Predicate;
+
+import com.machao.learning.concurrent.concurrentHashMap.ExpiringMap.Node;
+
+/**
+ * ExpiringMap使用的分层时间轮
+ *
+ * 共5层，每层是一个桶数组，每个桶是以哨兵节点开头的循环双向链表：
+ * 第0层64个桶，每个桶约1.07秒；第1层64个桶，每个桶约1.14分钟；第2层32个桶，每个桶约1.22小时；
+ * 第3层4个桶，每个桶约1.63天；第4层只有1个桶，保存更晚过期的元素。
+ * 元素按到期时间与当前时间的距离放入能容纳它的最细的一层，时间推进时只处理经过的桶：
+ * 已到期的元素交给evictor删除，未到期的元素(被访问或更新后到期时间延后，或者来自较粗的层)重新放入合适的桶，
+ * 因此推进的开销与到期的元素数量成正比，不需要扫描全部元素；
+ * 非线程安全，只在ExpiringMap持有expirationLock时修改。
+ * 移植自Caffeine的TimerWheel(Apache License 2.0，见文件头)。
+ */
+final class TimerWheel<K,V> {
+
+    /**
+     * 每层的桶数量，必须是2的幂
+     */
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+    /**
+     * 每层一个桶对应的时长(纳秒)，取2的幂以便用移位计算桶下标
+     */
+    static final long[] SPANS = {
+        1L << 30, // 1.07s
+        1L << 36, // 1.14m
+        1L << 42, // 1.22h
+        1L << 47, // 1.63d
+        1L << 49, // 6.52d
+    };
+
+    static final int[] SHIFT = {
+        Long.numberOfTrailingZeros(SPANS[0]),
+        Long.numberOfTrailingZeros(SPANS[1]),
+        Long.numberOfTrailingZeros(SPANS[2]),
+        Long.numberOfTrailingZeros(SPANS[3]),
+        Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    final Node<K,V>[][] wheel;
+
+    /**
+     * 时间轮的当前时间，只在持有锁时写入；volatile使其它线程可以判断是否需要推进
+     */
+    volatile long nanos;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos) {
+        this.nanos = nanos;
+        this.wheel = (Node<K,V>[][])new Node<?,?>[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = (Node<K,V>[])new Node<?,?>[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++)
+                wheel[i][j] = Node.sentinel();
+        }
+    }
+
+    /**
+     * 按node的到期时间放入对应的桶
+     */
+    void schedule(Node<K,V> node) {
+        link(findBucket(node.deadline), node);
+    }
+
+    /**
+     * 到期时间改变后移到新的桶
+     */
+    void reschedule(Node<K,V> node) {
+        if (node.nextInWheel != null)
+            unlink(node);
+        schedule(node);
+    }
+
+    /**
+     * 从时间轮中删除node，不在时间轮中时什么也不做
+     */
+    void deschedule(Node<K,V> node) {
+        if (node.nextInWheel != null)
+            unlink(node);
+    }
+
+    /**
+     * 推进到currentNanos，处理各层经过的桶：已到期的元素由evictor删除，evictor返回false(没有删除)时重新放入时间轮
+     */
+    void advance(long currentNanos, Predicate<Node<K,V>> evictor) {
+        long previousNanos = nanos;
+        if (currentNanos <= previousNanos)
+            return;
+        nanos = currentNanos;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousNanos >>> SHIFT[i];
+            long currentTicks = currentNanos >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            // 较细的层没有走过一个桶时，较粗的层也不会
+            if (delta <= 0L)
+                break;
+            expire(i, previousTicks, delta, evictor);
+        }
+    }
+
+    /**
+     * 处理第index层从previousTicks开始的delta + 1个桶(最多一圈)；
+     * 先把桶整个摘下再逐个处理，重新放入的元素可能回到同一个桶
+     */
+    void expire(int index, long previousTicks, long delta, Predicate<Node<K,V>> evictor) {
+        Node<K,V>[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+        int steps = (int)Math.min(delta + 1, timerWheel.length);
+        int start = (int)(previousTicks & mask);
+        long now = nanos;
+        for (int i = start; i < start + steps; i++) {
+            Node<K,V> sentinel = timerWheel[i & mask];
+            Node<K,V> node = sentinel.nextInWheel;
+            sentinel.prevInWheel = sentinel.nextInWheel = sentinel;
+            while (node != sentinel) {
+                Node<K,V> next = node.nextInWheel;
+                node.prevInWheel = node.nextInWheel = null;
+                // 已经删除的元素直接丢弃
+                if (!node.retired && (node.deadline - now > 0L || !evictor.test(node)))
+                    schedule(node);
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 返回time对应的桶的哨兵节点；已经到期的时间按当前时间计算，在下一次推进时处理
+     */
+    Node<K,V> findBucket(long time) {
+        long now = nanos;
+        if (time - now < 0L)
+            time = now;
+        long duration = time - now;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int)(ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    /**
+     * 插入到桶的末尾
+     */
+    static <K,V> void link(Node<K,V> sentinel, Node<K,V> node) {
+        Node<K,V> last = sentinel.prevInWheel;
+        node.prevInWheel = last;
+        node.nextInWheel = sentinel;
+        last.nextInWheel = node;
+        sentinel.prevInWheel = node;
+    }
+
+    static <K,V> void unlink(Node<K,V> node) {
+        Node<K,V> prev = node.prevInWheel, next = node.nextInWheel;
+        prev.nextInWheel = next;
+        next.prevInWheel = prev;
+        node.prevInWheel = node.nextInWheel = null;
+    }
+}
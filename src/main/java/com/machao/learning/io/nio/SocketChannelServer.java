@@ -13,6 +13,8 @@ public class SocketChannelServer {
 
 	public static void main(String[] args) throws IOException {
 		ThreadPoolExecutor executor = new ThreadPoolExecutor(3, 10, 1000, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(100));
+		// 处理连接是IO密集的，队列未满时也先把线程数增加到10
+		executor.setEagerThreadGrowth(true);
 		
 		ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
 		serverSocketChannel.bind(new InetSocketAddress(1234));
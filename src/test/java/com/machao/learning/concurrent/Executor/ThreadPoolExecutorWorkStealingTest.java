@@ -0,0 +1,98 @@
+package com.machao.learning.concurrent.Executor;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+/**
+ * 工作窃取模式的ThreadPoolExecutor：worker退出与shutdownNow()竞争时任务不会丢失
+ */
+public class ThreadPoolExecutorWorkStealingTest extends TestCase {
+
+    static final int ROUNDS = 200;
+    static final int PARENTS = 16;
+    static final int CHILDREN = 8;
+
+    /**
+     * 父任务在worker中提交子任务(放入worker自己的local)后抛出异常，worker带着非空的local退出；
+     * 同时在随机的时刻调用shutdownNow()。每个提交成功的任务要么执行、要么由shutdownNow()返回，并且只有一种
+     */
+    public void testShutdownNowRacingWorkerExit() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            final int capacity = PARENTS * (CHILDREN + 1);
+            final AtomicIntegerArray accepted = new AtomicIntegerArray(capacity);
+            final AtomicIntegerArray ran = new AtomicIntegerArray(capacity);
+            final AtomicInteger ids = new AtomicInteger(PARENTS);
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                2, 4, 1L, TimeUnit.MILLISECONDS,
+                // 容量很小，退出时的转移会用到orphanedTasks
+                new ArrayBlockingQueue<Runnable>(2),
+                r -> {
+                    Thread t = new Thread(r);
+                    t.setUncaughtExceptionHandler((th, e) -> { });
+                    return t;
+                },
+                (r, e) -> { throw new RejectedExecutionException(); },
+                true);
+
+            for (int i = 0; i < PARENTS; i++) {
+                Task parent = new Task(i, ran) {
+                    public void run() {
+                        super.run();
+                        for (int k = 0; k < CHILDREN; k++) {
+                            Task child = new Task(ids.getAndIncrement(), ran);
+                            try {
+                                pool.execute(child);
+                                accepted.set(child.id, 1);
+                            } catch (RejectedExecutionException ignore) {
+                            }
+                        }
+                        throw new IllegalStateException("worker exits with local tasks");
+                    }
+                };
+                try {
+                    pool.execute(parent);
+                    accepted.set(parent.id, 1);
+                } catch (RejectedExecutionException ignore) {
+                }
+            }
+
+            int spins = ThreadLocalRandom.current().nextInt(2000);
+            for (int k = 0; k < spins; k++)
+                Thread.yield();
+            List<Runnable> returned = pool.shutdownNow();
+            assertTrue(pool.awaitTermination(10L, TimeUnit.SECONDS));
+
+            AtomicIntegerArray drained = new AtomicIntegerArray(capacity);
+            for (Runnable r : returned)
+                assertEquals(0, drained.getAndIncrement(((Task)r).id));
+            for (int id = 0; id < ids.get(); id++) {
+                if (accepted.get(id) == 1)
+                    assertEquals("task " + id + " in round " + round,
+                                 1, ran.get(id) + drained.get(id));
+                else
+                    assertEquals(0, ran.get(id) + drained.get(id));
+            }
+        }
+    }
+
+    static class Task implements Runnable {
+        final int id;
+        final AtomicIntegerArray ran;
+
+        Task(int id, AtomicIntegerArray ran) {
+            this.id = id;
+            this.ran = ran;
+        }
+
+        public void run() {
+            ran.incrementAndGet(id);
+        }
+    }
+}